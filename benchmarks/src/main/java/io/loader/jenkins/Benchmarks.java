@@ -0,0 +1,36 @@
+package io.loader.jenkins;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks like the JMH launcher does, with the GC profiler always on
+ * so allocation rates and collection counts show up next to the scores.
+ * Takes the usual JMH options, e.g. a benchmark name pattern or {@code -h}.
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws RunnerException {
+        CommandLineOptions options;
+        try {
+            options = new CommandLineOptions(args);
+        } catch (CommandLineOptionException ex) {
+            System.err.println("Error parsing command line: " + ex.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (options.shouldHelp()) {
+            try {
+                options.showHelp();
+            } catch (java.io.IOException ex) {
+                // nothing to show
+            }
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+    }
+}
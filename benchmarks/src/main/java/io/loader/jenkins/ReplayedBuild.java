@@ -0,0 +1,131 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.ApiRecorder;
+import io.loader.jenkins.api.ApiReplay;
+import io.loader.jenkins.api.ApiSimulator;
+import io.loader.jenkins.api.LoaderAPI;
+import io.loader.jenkins.api.PollingStrategy;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs the tests of a build again from the API calls it recorded, see
+ * {@link LoaderPublisher#RECORDING_FILE}, and reports how long that took and what
+ * the tests ended with. Without a recording, one is made first from a build run
+ * against an {@link ApiSimulator}, and both runs' results are printed side by side.
+ *
+ * Configured with system properties:
+ * <pre>
+ * java -cp benchmarks.jar -Drecording=builds/42/loaderio/api-calls.rec -DreplaySpeed=10 io.loader.jenkins.ReplayedBuild
+ * </pre>
+ * {@code recording}, {@code replaySpeed} (0 answers every call at once), {@code testsPerBuild},
+ * {@code pollInterval} (ms) and every {@code simulator.*} property of
+ * {@link ApiSimulator.Script#fromSystemProperties()}.
+ */
+public class ReplayedBuild {
+
+    static final String RECORDING = System.getProperty("recording");
+    static final double REPLAY_SPEED = Double.parseDouble(System.getProperty("replaySpeed", "10"));
+    static final int TESTS_PER_BUILD = Integer.getInteger("testsPerBuild", 2);
+    static final int POLL_INTERVAL_MS = Integer.getInteger("pollInterval", 1000);
+
+    public static void main(String[] args) throws Exception {
+        PrintStream report = System.out;
+        PollingStrategy strategy = PollingStrategy.forName(PollingStrategy.ADAPTIVE, POLL_INTERVAL_MS,
+                30 * POLL_INTERVAL_MS);
+        File file;
+        List<TestRun> recorded = null;
+        if (RECORDING != null) {
+            file = new File(RECORDING);
+        } else {
+            file = File.createTempFile("api-calls", ".rec");
+            file.deleteOnExit();
+            recorded = record(file, strategy, report);
+        }
+
+        List<ApiReplay.Exchange> exchanges = ApiReplay.read(file);
+        if (exchanges.isEmpty()) {
+            report.println(file + " has no calls");
+            return;
+        }
+        ApiReplay replay = new ApiReplay(exchanges, REPLAY_SPEED);
+        List<TestRun> runs = new ArrayList<TestRun>();
+        RunLog log = new RunLog(report);
+        for (String testId : startedTests(exchanges)) {
+            runs.add(new TestRun(new LoadTest(testId, 0, 0, 0, 0), log.forTest(testId)));
+        }
+        long started = System.currentTimeMillis();
+        LoaderAPI api = new LoaderAPI("replayed-key");
+        api.replayFrom(replay);
+        TestWaves.run(runs, 0, api, strategy, log);
+        long elapsed = System.currentTimeMillis() - started;
+
+        int last = exchanges.get(exchanges.size() - 1).getSentAtMillis() - exchanges.get(0).getSentAtMillis();
+        report.println(String.format("Recording: %d calls over %.1f sec, %.1f KB", exchanges.size(), last / 1000.0,
+                file.length() / 1024.0));
+        report.println(String.format("Replayed %d tests at speed %s in %.1f sec", runs.size(), REPLAY_SPEED,
+                elapsed / 1000.0));
+        for (int i = 0; i < runs.size(); i++) {
+            TestRun run = runs.get(i);
+            report.println("  " + run.getTestId() + ": " + outcome(run)
+                    + (recorded != null && i < recorded.size() ? ", recorded " + outcome(recorded.get(i)) : ""));
+        }
+    }
+
+    // one build's tests against the simulator, with its calls saved to file
+    private static List<TestRun> record(File file, PollingStrategy strategy, PrintStream report) throws Exception {
+        ApiSimulator.Script script = ApiSimulator.Script.fromSystemProperties();
+        script.testDurationSeconds = Integer.getInteger("simulator.testDuration", 10);
+        ApiSimulator simulator = new ApiSimulator(script);
+        simulator.start(0);
+        LoaderAPI.setBaseUri(simulator.getBaseUri());
+        List<TestRun> runs = new ArrayList<TestRun>();
+        RunLog log = new RunLog(report);
+        for (int t = 0; t < TESTS_PER_BUILD; t++) {
+            String testId = simulator.getTestId(t);
+            runs.add(new TestRun(new LoadTest(testId, 0, 0, 0, 0), log.forTest(testId)));
+        }
+        ApiRecorder recorder = ApiRecorder.create(file);
+        LoaderAPI api = new LoaderAPI("simulated-key");
+        api.recordTo(recorder);
+        long started = System.currentTimeMillis();
+        try {
+            TestWaves.run(runs, 0, api, strategy, log);
+        } finally {
+            recorder.close();
+            simulator.stop();
+        }
+        report.println(String.format("Recorded %d tests against the simulator in %.1f sec, %d calls",
+                runs.size(), (System.currentTimeMillis() - started) / 1000.0, recorder.getExchanges()));
+        return runs;
+    }
+
+    // in the order they were started
+    private static Set<String> startedTests(List<ApiReplay.Exchange> exchanges) {
+        Set<String> testIds = new LinkedHashSet<String>();
+        for (ApiReplay.Exchange exchange : exchanges) {
+            String path = exchange.getPath();
+            int run = path.indexOf("/run");
+            if ("PUT".equals(exchange.getMethod()) && path.startsWith("tests/") && run > 0) {
+                testIds.add(path.substring("tests/".length(), run));
+            }
+        }
+        return testIds;
+    }
+
+    private static String outcome(TestRun run) {
+        if (run.failure != null) {
+            return run.failure;
+        }
+        if (run.summary == null) {
+            return "no summary";
+        }
+        return String.format("avg %dms, errors %.2f%%, %d successful", run.summary.avgResponseTime,
+                run.summary.avgErrorRate, run.summary.successCount);
+    }
+}
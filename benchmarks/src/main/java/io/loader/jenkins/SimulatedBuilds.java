@@ -0,0 +1,169 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.ApiMetrics;
+import io.loader.jenkins.api.ApiSimulator;
+import io.loader.jenkins.api.LoaderAPI;
+import io.loader.jenkins.api.PollingStrategy;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many builds' worth of loader.io tests at once against an {@link ApiSimulator}
+ * and reports what they cost the JVM: CPU time, threads and heap per concurrent run.
+ * Each build gets a thread, like an executor, and runs its tests the way
+ * {@link LoaderPublisher} does, minus the build records.
+ *
+ * Configured with system properties:
+ * <pre>
+ * java -cp benchmarks.jar -Dbuilds=500 -DtestsPerBuild=2 -Dsimulator.testDuration=30 io.loader.jenkins.SimulatedBuilds
+ * </pre>
+ * {@code builds}, {@code testsPerBuild}, {@code waveSize}, {@code pollInterval} (ms),
+ * {@code polling} ({@code fixed} or {@code adaptive}), {@code keys} (distinct API keys,
+ * builds share them round robin) and every {@code simulator.*} property of
+ * {@link ApiSimulator.Script#fromSystemProperties()}.
+ */
+public class SimulatedBuilds {
+
+    static final int BUILDS = Integer.getInteger("builds", 200);
+    static final int TESTS_PER_BUILD = Integer.getInteger("testsPerBuild", 1);
+    static final int WAVE_SIZE = Integer.getInteger("waveSize", 0);
+    static final int POLL_INTERVAL_MS = Integer.getInteger("pollInterval", 1000);
+    static final String POLLING = System.getProperty("polling", PollingStrategy.FIXED);
+    // one key per build by default, so the per key rate limit isn't what is measured
+    static final int KEYS = Integer.getInteger("keys", BUILDS);
+    static final long SAMPLE_INTERVAL_MS = 500;
+
+    public static void main(String[] args) throws Exception {
+        PrintStream report = System.out;
+        // the builds log to stdout, keep the report readable
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+
+        ApiSimulator simulator = new ApiSimulator(ApiSimulator.Script.fromSystemProperties());
+        simulator.start(0);
+        LoaderAPI.setBaseUri(simulator.getBaseUri());
+        final PollingStrategy strategy = PollingStrategy.forName(POLLING, POLL_INTERVAL_MS, 30 * POLL_INTERVAL_MS);
+        report.println("Simulator at " + simulator.getBaseUri() + ", " + BUILDS + " builds of " + TESTS_PER_BUILD
+                + " tests, " + simulator.getScript().testDurationSeconds + " sec each, polling " + strategy);
+
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        int threadsBefore = threads.getThreadCount();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        long cpuBefore = processCpuTime(os);
+        long started = System.currentTimeMillis();
+
+        ExecutorService executors = Executors.newFixedThreadPool(BUILDS);
+        final CountDownLatch done = new CountDownLatch(BUILDS);
+        final AtomicInteger failedRuns = new AtomicInteger();
+        final AtomicInteger passedRuns = new AtomicInteger();
+        final ConcurrentMap<String, AtomicInteger> failures = new ConcurrentHashMap<String, AtomicInteger>();
+        final RunLog log = new RunLog(System.out);
+        for (int b = 0; b < BUILDS; b++) {
+            final int build = b;
+            executors.execute(new Runnable() {
+                public void run() {
+                    try {
+                        List<TestRun> runs = new ArrayList<TestRun>();
+                        for (int t = 0; t < TESTS_PER_BUILD; t++) {
+                            runs.add(new TestRun(new LoadTest(String.format("build%05dtest%d", build, t), 50, 10, 5000, 2000),
+                                    log));
+                        }
+                        LoaderAPI api = new LoaderAPI("simulated-key-" + (build % KEYS));
+                        TestWaves.run(runs, WAVE_SIZE, api, strategy, log);
+                        for (TestRun run : runs) {
+                            if (run.failure == null && !run.isAborted()) {
+                                run.evaluate();
+                                passedRuns.incrementAndGet();
+                            } else {
+                                failedRuns.incrementAndGet();
+                                count(failures, run.failure != null ? run.failure : run.abortReason);
+                            }
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        int peakThreads = 0;
+        long peakHeap = 0;
+        while (!done.await(SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+            peakThreads = Math.max(peakThreads, threads.getThreadCount());
+            peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+        }
+        long elapsed = System.currentTimeMillis() - started;
+        long cpu = processCpuTime(os) - cpuBefore;
+        executors.shutdown();
+        simulator.stop();
+
+        int runs = BUILDS * TESTS_PER_BUILD;
+        // executor threads are the builds themselves, not what the plugin adds
+        int pluginThreads = Math.max(0, peakThreads - threadsBefore - BUILDS - 1);
+        report.println(String.format("%d runs in %.1f sec: %d evaluated, %d failed",
+                runs, elapsed / 1000.0, passedRuns.get(), failedRuns.get()));
+        for (Map.Entry<String, AtomicInteger> failure : failures.entrySet()) {
+            report.println("  " + failure.getValue() + " x " + failure.getKey());
+        }
+        report.println(String.format("API: %d requests (%.1f per run), %d errors, %d throttled",
+                simulator.getRequests(), simulator.getRequests() / (double) runs,
+                simulator.getErrors(), simulator.getThrottled()));
+        ApiMetrics metrics = ApiMetrics.get();
+        report.println(String.format("Plugin: %d status polls (%d wasted), %d retries, %d requests not sent",
+                metrics.getStatusPolls(), metrics.getWastedStatusPolls(), metrics.getRetries(), metrics.getRejected()));
+        if (cpu >= 0) {
+            report.println(String.format("CPU: %.0f ms total, %.2f ms per run, %.1f%% of one core",
+                    cpu / 1e6, cpu / 1e6 / runs, cpu / 1e4 / elapsed));
+        }
+        report.println(String.format("Threads: %d before, %d peak, %d added by the plugin (%.3f per run)",
+                threadsBefore, peakThreads, pluginThreads, pluginThreads / (double) runs));
+        report.println(String.format("Heap: %.1f MB before, %.1f MB peak, %.1f KB per run",
+                heapBefore / 1048576.0, peakHeap / 1048576.0, Math.max(0, peakHeap - heapBefore) / 1024.0 / runs));
+        report.println("The simulator runs in the same JVM, CPU and threads include serving the simulated API");
+    }
+
+    private static void count(ConcurrentMap<String, AtomicInteger> counts, String key) {
+        AtomicInteger count = counts.get(key);
+        if (count == null) {
+            AtomicInteger created = new AtomicInteger();
+            count = counts.putIfAbsent(key, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    // -1 when the JVM doesn't tell
+    private static long processCpuTime(OperatingSystemMXBean os) {
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+}
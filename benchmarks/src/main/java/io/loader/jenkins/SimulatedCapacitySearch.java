@@ -0,0 +1,87 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.ApiSimulator;
+import io.loader.jenkins.api.LoaderAPI;
+import io.loader.jenkins.api.PollingStrategy;
+
+import java.io.PrintStream;
+
+/**
+ * Runs a {@link CapacitySearch} against an {@link ApiSimulator} whose results get
+ * worse past {@code simulator.kneeClients}, and reports the runs it took and the
+ * capacity it found, next to the one the simulator's script implies.
+ *
+ * Configured with system properties:
+ * <pre>
+ * java -cp benchmarks.jar -Dsimulator.kneeClients=300 -DmaxClients=5000 io.loader.jenkins.SimulatedCapacitySearch
+ * </pre>
+ * {@code minClients}, {@code maxClients}, {@code maxResponseTime} (ms), {@code maxErrorRate} (%),
+ * {@code tolerance} (%), {@code maxRuns} and every {@code simulator.*} property of
+ * {@link ApiSimulator.Script#fromSystemProperties()}; tests are short unless those say otherwise.
+ */
+public class SimulatedCapacitySearch {
+
+    static final int MIN_CLIENTS = Integer.getInteger("minClients", CapacitySearch.DEFAULT_MIN_CLIENTS);
+    static final int MAX_CLIENTS = Integer.getInteger("maxClients", CapacitySearch.DEFAULT_MAX_CLIENTS);
+    static final int MAX_RESPONSE_TIME = Integer.getInteger("maxResponseTime", CapacitySearch.DEFAULT_MAX_RESPONSE_TIME);
+    static final int MAX_ERROR_RATE = Integer.getInteger("maxErrorRate", CapacitySearch.DEFAULT_MAX_ERROR_RATE);
+    static final int TOLERANCE = Integer.getInteger("tolerance", CapacitySearch.DEFAULT_TOLERANCE);
+    static final int MAX_RUNS = Integer.getInteger("maxRuns", CapacitySearch.DEFAULT_MAX_RUNS);
+
+    public static void main(String[] args) throws Exception {
+        PrintStream report = System.out;
+        ApiSimulator.Script script = ApiSimulator.Script.fromSystemProperties();
+        script.testDurationSeconds = Integer.getInteger("simulator.testDuration", 1);
+        script.pendingMillis = Integer.getInteger("simulator.pending", 100);
+        script.summaryDelayMillis = Integer.getInteger("simulator.summaryDelay", 100);
+        script.kneeClients = Integer.getInteger("simulator.kneeClients", 300);
+        ApiSimulator simulator = new ApiSimulator(script);
+        simulator.start(0);
+        LoaderAPI.setBaseUri(simulator.getBaseUri());
+
+        String testId = simulator.getTestId(0);
+        LoadTest test = new LoadTest(testId, 100, 100, 0, 0);
+        CapacitySearch search = new CapacitySearch(MIN_CLIENTS, MAX_CLIENTS, MAX_RESPONSE_TIME, MAX_ERROR_RATE,
+                TOLERANCE, MAX_RUNS);
+        RunLog log = new RunLog(report);
+        if (search.validateParameters(log) != hudson.model.Result.SUCCESS) {
+            simulator.stop();
+            return;
+        }
+        PollingStrategy strategy = PollingStrategy.forName(PollingStrategy.ADAPTIVE, 200, 1000);
+        CapacityRuns probe = new CapacityRuns(test, new LoaderAPI("simulated-key"), strategy, log, null);
+        int before = probe.currentClients();
+        long started = System.currentTimeMillis();
+        CapacitySearch.Outcome outcome;
+        try {
+            outcome = search.search(probe, log);
+        } finally {
+            probe.restore(before);
+        }
+        long elapsed = System.currentTimeMillis() - started;
+        simulator.stop();
+
+        report.println(String.format("%d runs in %.1f sec, capacity %d clients%s, result %s",
+                outcome.getSamples().size(), elapsed / 1000.0, outcome.getCapacity(),
+                outcome.getLimit() > 0 ? ", breached at " + outcome.getLimit() : "", outcome.getResult()));
+        report.println("Simulator: objective holds up to " + expectedCapacity(script) + " clients, test set back to "
+                + simulator.getClients(testId) + " clients (" + before + " before)");
+    }
+
+    // the largest load the simulator's formulas keep within the objective, see ApiSimulator#summary
+    private static int expectedCapacity(ApiSimulator.Script script) {
+        int clients = MIN_CLIENTS;
+        while (clients < MAX_CLIENTS && holds(script, clients + 1)) {
+            clients++;
+        }
+        return holds(script, clients) ? clients : 0;
+    }
+
+    private static boolean holds(ApiSimulator.Script script, int clients) {
+        int knee = script.kneeClients;
+        double overload = knee > 0 && clients > knee ? clients / (double) knee : 1;
+        int avg = (int) (script.avgResponseTime * overload * overload);
+        double errorRate = Math.min(100, script.avgErrorRate * overload * overload * overload);
+        return avg * 5 / 2 <= MAX_RESPONSE_TIME && errorRate <= MAX_ERROR_RATE;
+    }
+}
@@ -0,0 +1,105 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.SummaryData;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import hudson.model.Result;
+import net.sf.json.JSONObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluation of the {@link GatingRules} of a {@link LoadTest}: on a summary, as done
+ * once per test at the end of a build, and on interim results, as done on every
+ * poll of a test with rules over a window or a fail-fast test. The cost of an
+ * interim result shouldn't depend on how long the window is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThresholdBenchmark {
+
+    // seconds, of the windowed rules
+    @Param({"60", "600"})
+    public int window;
+
+    private GateEvaluator averagesOnly;
+    private GateEvaluator withRules;
+    private GateEvaluator incremental;
+    private SummaryData summary;
+    // cumulative, moved on by every offer
+    private SummaryData interim;
+    private long elapsedMillis;
+    private RunLog log;
+
+    @Setup
+    public void setUp() throws Exception {
+        averagesOnly = new GateEvaluator(new LoadTest("test", 50, 10, 2000, 1000).getGatingRules());
+        withRules = new GateEvaluator(GatingRules.parse(rules(window)));
+        incremental = new GateEvaluator(GatingRules.parse(rules(window)));
+        // within every rule, so all of them are checked
+        String json = "{\"avg_response_time\": 420, \"avg_error_rate\": 0.4,"
+                + " \"p95_response_time\": 610, \"p99_response_time\": 980, \"requests_per_second\": 250.5,"
+                + " \"success\": 75000, \"error\": 300, \"timeout_error\": 2, \"data_sent\": 9000000,"
+                + " \"data_received\": 60000000, \"response_time_histogram\": [[120, 30000], [400, 30000],"
+                + " [900, 12000], [2500, 3300]], \"status\": \"ready\"}";
+        summary = new SummaryData(JSONObject.fromObject(json));
+        interim = new SummaryData(JSONObject.fromObject(json));
+        log = new RunLog(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    private static String rules(int window) {
+        return "fail: error_rate > 50\n"
+                + "unstable: error_rate > 10 or avg_response_time > 1000\n"
+                + "fail: p95_response_time > 1500 or p99_response_time > 3000\n"
+                + "unstable: requests_per_second < 100 and timeouts > 10\n"
+                + "unstable: apdex(500) < 0.7\n"
+                + "fail: requests_per_second < 50 over " + window + "s\n"
+                + "unstable: apdex(500) < 0.8 over " + window + "s or error_rate > 5 over " + window + "s\n"
+                + "unstable: bytes_received_per_second < 1000 over " + window + "s\n";
+    }
+
+    @Benchmark
+    public Result evaluateAverages() {
+        return averagesOnly.evaluate(summary, 300 * 1000L, log);
+    }
+
+    @Benchmark
+    public Result evaluateRules() {
+        return withRules.evaluate(summary, 300 * 1000L, log);
+    }
+
+    // one poll a second: 250 requests, one error, data and response times added
+    @Benchmark
+    public String offerInterim() {
+        elapsedMillis += 1000;
+        interim.successCount += 249;
+        interim.errorCount += 1;
+        interim.dataSent += 30000;
+        interim.dataReceived += 200000;
+        interim.histogram.record(400, 250);
+        return incremental.offer(elapsedMillis, interim);
+    }
+}
@@ -0,0 +1,81 @@
+package io.loader.jenkins.api;
+
+import java.io.UnsupportedEncodingException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+
+/**
+ * Response bodies shaped like the ones of the loader.io API.
+ */
+final class ApiFixtures {
+
+    private ApiFixtures() {
+    }
+
+    static String testList(int size) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"test_id\": \"").append(String.format("%032x", i))
+                .append("\", \"name\": \"Checkout flow ").append(i)
+                .append("\", \"domain\": \"shop").append(i % 50).append(".example.com\"")
+                .append(", \"status\": \"active\", \"test_type\": \"cycling\", \"duration\": 60")
+                .append(", \"initial\": 0, \"total\": 250, \"urls\": [{\"url\": \"http://shop.example.com/cart\","
+                        + " \"request_type\": \"GET\", \"headers\": {}, \"request_params\": {}}]}");
+        }
+        return json.append(']').toString();
+    }
+
+    static String test(String testId) {
+        return "{\"test_id\": \"" + testId + "\", \"name\": \"Checkout flow\", \"domain\": \"shop.example.com\","
+                + " \"status\": \"complete\", \"test_type\": \"cycling\", \"duration\": 60, \"initial\": 0,"
+                + " \"total\": 250, \"timeout\": 10000, \"callback\": null}";
+    }
+
+    static String summary(boolean histogram) {
+        StringBuilder json = new StringBuilder("{\"status\": \"ready\", \"avg_response_time\": 212,"
+                + " \"avg_error_rate\": 0.35, \"min_response_time\": 31, \"max_response_time\": 4120,"
+                + " \"p50_response_time\": 180, \"p90_response_time\": 390, \"p95_response_time\": 512,"
+                + " \"p99_response_time\": 1250, \"requests_per_second\": 412.7, \"success\": 24580,"
+                + " \"error\": 86, \"timeout_error\": 12, \"network_error\": 3,"
+                + " \"data_sent\": 3145728, \"data_received\": 52428800");
+        if (histogram) {
+            // one bucket per 10 ms up to 4 s, like a long, busy test
+            json.append(", \"response_time_histogram\": [");
+            for (int ms = 30; ms <= 4120; ms += 10) {
+                if (ms > 30) {
+                    json.append(',');
+                }
+                json.append('[').append(ms).append(',').append(1 + (100000 / (1 + Math.abs(ms - 180)))).append(']');
+            }
+            json.append(']');
+        }
+        return json.append('}').toString();
+    }
+
+    static String error() {
+        return "{\"message\": \"error\", \"errors\": [\"wrong api key(0123456789abcdef)\"]}";
+    }
+
+    // the entity is repeatable, the same response can be decoded again and again
+    static HttpResponse response(int code, String body) {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, code, code == 200 ? "OK" : "Error");
+        ByteArrayEntity entity = new ByteArrayEntity(bytes(body));
+        entity.setContentType("application/json");
+        response.setEntity(entity);
+        return response;
+    }
+
+    static byte[] bytes(String body) {
+        try {
+            return body.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package io.loader.jenkins.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole API calls, from {@link LoaderAPI} through the rate limiter, the pooled
+ * client and the decoders, against a stub of the API on a loopback port.
+ * The per key rate limit is lifted so the client itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+        // the stub writes headers and body separately, don't let Nagle hold the body back
+        "-Dsun.net.httpserver.nodelay=true",
+        "-Dio.loader.jenkins.api.LoaderAPI.requestsPerSecond=1000000000",
+        "-Dio.loader.jenkins.api.LoaderAPI.burst=1000000000"})
+public class ClientBenchmark {
+    static final String TEST_ID = "0123456789abcdef0123456789abcdef";
+    static final int BATCH = 16;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private LoaderAPI api;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        final byte[] test = ApiFixtures.bytes(ApiFixtures.test(TEST_ID));
+        final byte[] summary = ApiFixtures.bytes(ApiFixtures.summary(true));
+        final byte[] list = ApiFixtures.bytes(ApiFixtures.testList(100));
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        server.createContext("/v2/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                byte[] body = path.contains("/results/") ? summary : path.endsWith("/tests") ? list : test;
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        serverThreads = Executors.newFixedThreadPool(8);
+        server.setExecutor(serverThreads);
+        server.start();
+
+        api = new LoaderAPI("benchmark", "http://127.0.0.1:" + server.getAddress().getPort() + "/v2/");
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Benchmark
+    public TestData getTest() {
+        return api.getTest(TEST_ID);
+    }
+
+    @Benchmark
+    public SummaryData getTestSummaryData() {
+        return api.getTestSummaryData(TEST_ID, "result");
+    }
+
+    @Benchmark
+    public Object getTestList() {
+        return api.getTestList();
+    }
+
+    // what the status poller does when many builds watch tests at once
+    @Benchmark
+    public int getTestAsyncBatch() throws InterruptedException, ExecutionException {
+        List<ApiFuture<TestData>> polls = new ArrayList<ApiFuture<TestData>>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            polls.add(api.getTestAsync(TEST_ID));
+        }
+        int done = 0;
+        for (ApiFuture<TestData> poll : polls) {
+            if (poll.get() != null) {
+                done++;
+            }
+        }
+        return done;
+    }
+}
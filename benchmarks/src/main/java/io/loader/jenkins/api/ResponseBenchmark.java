@@ -0,0 +1,66 @@
+package io.loader.jenkins.api;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building a {@link LoaderAPI.Result} from a response, which is where the body
+ * of every API call is decoded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseBenchmark {
+
+    private HttpResponse test;
+    private HttpResponse summary;
+    private HttpResponse summaryWithHistogram;
+    private HttpResponse error;
+
+    @Setup
+    public void setUp() {
+        test = ApiFixtures.response(200, ApiFixtures.test("0123456789abcdef0123456789abcdef"));
+        summary = ApiFixtures.response(200, ApiFixtures.summary(false));
+        summaryWithHistogram = ApiFixtures.response(200, ApiFixtures.summary(true));
+        error = ApiFixtures.response(401, ApiFixtures.error());
+    }
+
+    @Benchmark
+    public TestData testData() {
+        return new LoaderAPI.Result<TestData>(test, Decoders.TEST_DATA).data;
+    }
+
+    @Benchmark
+    public SummaryData summaryData() {
+        return new LoaderAPI.Result<SummaryData>(summary, Decoders.SUMMARY_DATA).data;
+    }
+
+    @Benchmark
+    public SummaryData summaryDataWithHistogram() {
+        return new LoaderAPI.Result<SummaryData>(summaryWithHistogram, Decoders.SUMMARY_DATA).data;
+    }
+
+    @Benchmark
+    public String errorResult() {
+        return new LoaderAPI.Result<TestData>(error, Decoders.TEST_DATA).errorMessage;
+    }
+
+    @Benchmark
+    public String failedResult() {
+        return new LoaderAPI.Result<TestData>("Rate limit of the API key reached, request not sent").errorMessage;
+    }
+}
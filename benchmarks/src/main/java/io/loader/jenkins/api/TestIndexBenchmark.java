@@ -0,0 +1,65 @@
+package io.loader.jenkins.api;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What the test picker costs: building the {@link TestIndex} of an account after
+ * a sync, and the searches made while typing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TestIndexBenchmark {
+
+    @Param({"10", "10000"})
+    public int tests;
+
+    private List<TestIndex.Entry> entries;
+    private TestIndex index;
+    private String testId;
+
+    @Setup
+    public void setUp() {
+        entries = new LoaderAPI.Result<List<TestIndex.Entry>>(ApiFixtures.response(200, ApiFixtures.testList(tests)),
+                Decoders.TESTS).data;
+        index = new TestIndex(entries);
+        testId = String.format("%032x", tests / 2);
+    }
+
+    @Benchmark
+    public TestIndex build() {
+        return new TestIndex(entries);
+    }
+
+    // matches every test, only the first page is collected
+    @Benchmark
+    public TestIndex.Page searchWide() {
+        return index.search("checkout", 0, 20);
+    }
+
+    @Benchmark
+    public TestIndex.Page searchNarrow() {
+        return index.search("shop4", 0, 20);
+    }
+
+    @Benchmark
+    public TestIndex.Entry byId() {
+        return index.get(testId);
+    }
+}
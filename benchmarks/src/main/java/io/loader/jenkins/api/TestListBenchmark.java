@@ -0,0 +1,59 @@
+package io.loader.jenkins.api;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.json.JSON;
+import net.sf.json.JSONSerializer;
+
+import org.apache.http.HttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The test list of an account, decoded the way {@link LoaderAPI#getTestList()}
+ * streams it and the way {@link LoaderAPI#getTests()} builds a json-lib tree of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TestListBenchmark {
+
+    @Param({"10", "10000"})
+    public int tests;
+
+    private HttpResponse list;
+
+    @Setup
+    public void setUp() {
+        list = ApiFixtures.response(200, ApiFixtures.testList(tests));
+    }
+
+    @Benchmark
+    public Map<String, String> testList() {
+        return new LoaderAPI.Result<Map<String, String>>(list, Decoders.TEST_LIST).data;
+    }
+
+    // what getListData() does with the body
+    @Benchmark
+    public JSON listData() {
+        return JSONSerializer.toJSON(new LoaderAPI.Result<String>(list, Decoders.TEXT).data);
+    }
+
+    @Benchmark
+    public Integer listSize() {
+        return new LoaderAPI.Result<Integer>(list, Decoders.LIST_SIZE).data;
+    }
+}
@@ -0,0 +1,461 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.LatencyHistogram;
+import io.loader.jenkins.api.SummaryData;
+import io.loader.jenkins.api.TestIndex;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import hudson.model.Job;
+import hudson.model.Result;
+
+/**
+ * Rolling window of the last successful runs of one test, with running sums so
+ * a new run is compared against it in constant time whatever the window size.
+ *
+ * The sums and the merged histogram of the window are saved as they are, with
+ * the build numbers of the window; each run is saved in its own file next to
+ * them, only read again to take it out of the sums when it leaves the window.
+ * Comparing reads the sums, adding a run writes it and the sums and reads the
+ * run it drops.
+ *
+ * A run regresses when it is both significantly worse than the window and worse
+ * by more than the tolerance: significance alone flags harmless shifts on large
+ * tests, the tolerance alone flaps on noisy ones. Checks, each one-sided:
+ * <ul>
+ * <li>average and p95 response time: Student's t prediction interval of the builds in the window,</li>
+ * <li>response time distribution: Kolmogorov-Smirnov against the window's merged histogram,</li>
+ * <li>errors: two-proportion z-test on the request counts, or a t-test on the error rates
+ *     when loader.io doesn't report counts.</li>
+ * </ul>
+ * Significant at 95% makes the build unstable, at 99.9% failed.
+ */
+class Baseline {
+    static final int VERSION = 2;
+    // fewer builds than this only feed the window
+    static final int MIN_BUILDS = 3;
+
+    static final double UNSTABLE_ALPHA = 0.05;
+    static final double FAILURE_ALPHA = 0.001;
+
+    // one-sided Student's t critical values for 1..30 degrees of freedom
+    private static final double[] T_UNSTABLE = { 6.314, 2.920, 2.353, 2.132, 2.015, 1.943, 1.895, 1.860, 1.833,
+            1.812, 1.796, 1.782, 1.771, 1.761, 1.753, 1.746, 1.740, 1.734, 1.729, 1.725, 1.721, 1.717, 1.714,
+            1.711, 1.708, 1.706, 1.703, 1.701, 1.699, 1.697 };
+    private static final double[] T_FAILURE = { 318.31, 22.327, 10.215, 7.173, 5.893, 5.208, 4.785, 4.501, 4.297,
+            4.144, 4.025, 3.930, 3.852, 3.787, 3.733, 3.686, 3.646, 3.610, 3.579, 3.552, 3.527, 3.505, 3.485,
+            3.467, 3.450, 3.435, 3.421, 3.408, 3.396, 3.385 };
+    private static final double Z_UNSTABLE = 1.645;
+    private static final double Z_FAILURE = 3.090;
+
+    private final File file;
+    // build numbers of the runs in the window, oldest first
+    private final LinkedList<Integer> window = new LinkedList<Integer>();
+
+    // running sums over the window
+    private final Stat avgResponseTime = new Stat();
+    private final Stat p95ResponseTime = new Stat();
+    private final Stat errorRate = new Stat();
+    private long requests;
+    private long errors;
+    // builds that reported counts, requests and errors are only comparable if all did
+    private int counted;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    private Baseline(File file) {
+        this.file = file;
+    }
+
+    static File fileFor(Job<?, ?> job, String testId) {
+        return new File(new File(job.getRootDir(), "loaderio-baseline"), TestIndex.checkedId(testId) + ".bin");
+    }
+
+    // the saved run of a build in the window of file
+    private static File runFile(File file, int buildNumber) {
+        String name = file.getName();
+        return new File(new File(file.getParentFile(), name.substring(0, name.lastIndexOf('.'))), buildNumber + ".run");
+    }
+
+    /**
+     * @return the saved window, empty if there is none yet or it can't be read
+     */
+    static Baseline load(File file) throws IOException {
+        Baseline baseline = new Baseline(file);
+        if (!file.exists()) {
+            return baseline;
+        }
+        ByteBuffer in;
+        synchronized (Baseline.class) {
+            in = ByteBuffer.wrap(read(file));
+        }
+        if (in.remaining() < 8) {
+            return baseline;
+        }
+        int version = in.getInt();
+        if (version == VERSION) {
+            baseline.readSums(in);
+        }
+        return baseline;
+    }
+
+    /**
+     * Adds a successful run to the saved window, dropping the oldest beyond {@code size}.
+     * Reloads first so concurrent builds of the job don't lose each other's runs.
+     */
+    static void record(File file, int size, int buildNumber, SummaryData summary) throws IOException {
+        synchronized (Baseline.class) {
+            Baseline baseline = load(file);
+            Entry entry = new Entry(buildNumber, summary);
+            entry.save(runFile(file, buildNumber));
+            baseline.push(entry);
+            List<Integer> dropped = new ArrayList<Integer>();
+            while (baseline.window.size() > Math.max(1, size)) {
+                int oldest = baseline.window.getFirst();
+                File run = runFile(file, oldest);
+                if (!run.exists()) {
+                    // lost, the sums can't be trusted without it
+                    baseline = rebuild(file, baseline.window, size);
+                    break;
+                }
+                baseline.pop(Entry.readFrom(ByteBuffer.wrap(read(run))));
+                dropped.add(oldest);
+            }
+            baseline.save();
+            // once the sums no longer count them
+            for (int build : dropped) {
+                runFile(file, build).delete();
+            }
+        }
+    }
+
+    // the sums of the last builds of the window whose runs are still there
+    private static Baseline rebuild(File file, List<Integer> builds, int size) throws IOException {
+        Baseline baseline = new Baseline(file);
+        int first = Math.max(0, builds.size() - Math.max(1, size));
+        for (int i = 0; i < builds.size(); i++) {
+            File run = runFile(file, builds.get(i));
+            if (i < first) {
+                run.delete();
+            } else if (run.exists()) {
+                baseline.push(Entry.readFrom(ByteBuffer.wrap(read(run))));
+            }
+        }
+        return baseline;
+    }
+
+    int size() {
+        return window.size();
+    }
+
+    private void push(Entry entry) {
+        window.addLast(entry.buildNumber);
+        avgResponseTime.add(entry.avgResponseTime);
+        if (entry.p95ResponseTime >= 0) {
+            p95ResponseTime.add(entry.p95ResponseTime);
+        }
+        errorRate.add(entry.errorRate);
+        if (entry.requests > 0) {
+            requests += entry.requests;
+            errors += entry.errors;
+            counted++;
+        }
+        if (entry.histogram != null) {
+            histogram.add(entry.histogram);
+        }
+    }
+
+    private void pop(Entry entry) {
+        window.removeFirst();
+        avgResponseTime.remove(entry.avgResponseTime);
+        if (entry.p95ResponseTime >= 0) {
+            p95ResponseTime.remove(entry.p95ResponseTime);
+        }
+        errorRate.remove(entry.errorRate);
+        if (entry.requests > 0) {
+            requests -= entry.requests;
+            errors -= entry.errors;
+            counted--;
+        }
+        if (entry.histogram != null) {
+            histogram.subtract(entry.histogram);
+        }
+    }
+
+    private void readSums(ByteBuffer in) {
+        int size = in.getInt();
+        for (int i = 0; i < size; i++) {
+            window.add(in.getInt());
+        }
+        avgResponseTime.readFrom(in);
+        p95ResponseTime.readFrom(in);
+        errorRate.readFrom(in);
+        requests = in.getLong();
+        errors = in.getLong();
+        counted = in.getInt();
+        histogram.add(LatencyHistogram.readFrom(in));
+    }
+
+    private void save() throws IOException {
+        replace(file, new Writer() {
+            public void writeTo(DataOutputStream out) throws IOException {
+                out.writeInt(VERSION);
+                out.writeInt(window.size());
+                for (int build : window) {
+                    out.writeInt(build);
+                }
+                avgResponseTime.writeTo(out);
+                p95ResponseTime.writeTo(out);
+                errorRate.writeTo(out);
+                out.writeLong(requests);
+                out.writeLong(errors);
+                out.writeInt(counted);
+                histogram.writeTo(out);
+            }
+        });
+    }
+
+    private interface Writer {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    // through a temporary file, so a reader never sees half of it
+    private static void replace(File file, Writer writer) throws IOException {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        File tmp = new File(dir, file.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            writer.writeTo(out);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+            throw new IOException("Can't replace " + file);
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] content = new byte[(int) raf.length()];
+            raf.readFully(content);
+            return content;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @param tolerance smallest regression worth reporting, in percent of the baseline
+     */
+    Result compare(SummaryData current, int tolerance, RunLog log) {
+        if (window.size() < MIN_BUILDS) {
+            log.info("Baseline has " + window.size() + " of " + MIN_BUILDS + " builds needed, not compared yet");
+            return Result.SUCCESS;
+        }
+        double factor = 1 + tolerance / 100.0;
+        Result result = Result.SUCCESS;
+        result = LoadTest.worst(result, predict("average response time", current.avgResponseTime,
+                avgResponseTime, factor, log));
+        if (current.p95ResponseTime >= 0 && p95ResponseTime.count >= MIN_BUILDS) {
+            result = LoadTest.worst(result, predict("p95 response time", current.p95ResponseTime,
+                    p95ResponseTime, factor, log));
+        }
+        if (current.histogram != null && !current.histogram.isEmpty() && !histogram.isEmpty()) {
+            result = LoadTest.worst(result, compareDistribution(current.histogram, factor, log));
+        }
+        long currentRequests = current.successCount + current.errorCount;
+        if (current.successCount >= 0 && current.errorCount >= 0 && currentRequests > 0
+                && counted == window.size()) {
+            result = LoadTest.worst(result, compareErrors(current.errorCount, currentRequests, tolerance, log));
+        } else {
+            double rate = current.avgErrorRate;
+            if (rate - errorRate.mean() > minErrorIncrease(errorRate.mean(), tolerance)) {
+                result = LoadTest.worst(result, predict("error percentage", rate, errorRate, 1, log));
+            }
+        }
+        return result;
+    }
+
+    // t statistic of one new observation against the builds of the window
+    private Result predict(String name, double value, Stat stat, double factor, RunLog log) {
+        double mean = stat.mean();
+        if (value <= mean * factor) {
+            return Result.SUCCESS;
+        }
+        // identical builds would make any change infinitely significant
+        double sd = Math.max(stat.standardDeviation(), Math.max(mean * 0.01, 1));
+        double t = (value - mean) / (sd * Math.sqrt(1 + 1.0 / stat.count));
+        int df = stat.count - 1;
+        Result result = level(t, tCritical(T_UNSTABLE, df), tCritical(T_FAILURE, df));
+        report(result, name, String.format("%.1f vs %.1f over %d builds (t = %.2f)", value, mean, stat.count, t), log);
+        return result;
+    }
+
+    private Result compareDistribution(LatencyHistogram current, double factor, RunLog log) {
+        double currentP95 = current.getValueAtPercentile(95);
+        double baselineP95 = histogram.getValueAtPercentile(95);
+        if (currentP95 <= baselineP95 * factor) {
+            return Result.SUCCESS;
+        }
+        double d = histogram.maxCumulativeLead(current);
+        double n = current.getTotalCount();
+        double m = histogram.getTotalCount();
+        double scale = Math.sqrt((n + m) / (2 * n * m));
+        Result result = level(d, Math.sqrt(-Math.log(UNSTABLE_ALPHA)) * scale, Math.sqrt(-Math.log(FAILURE_ALPHA)) * scale);
+        report(result, "response time distribution",
+                String.format("p95 %.0f vs %.0f ms (KS D = %.3f)", currentP95, baselineP95, d), log);
+        return result;
+    }
+
+    private Result compareErrors(long currentErrors, long currentRequests, int tolerance, RunLog log) {
+        double p1 = (double) currentErrors / currentRequests;
+        double p2 = (double) errors / requests;
+        if ((p1 - p2) * 100 <= minErrorIncrease(p2 * 100, tolerance)) {
+            return Result.SUCCESS;
+        }
+        double pooled = (double) (currentErrors + errors) / (currentRequests + requests);
+        double se = Math.sqrt(pooled * (1 - pooled) * (1.0 / currentRequests + 1.0 / requests));
+        double z = se > 0 ? (p1 - p2) / se : 0;
+        Result result = level(z, Z_UNSTABLE, Z_FAILURE);
+        report(result, "error percentage", String.format("%.2f%% vs %.2f%% (z = %.2f)", p1 * 100, p2 * 100, z), log);
+        return result;
+    }
+
+    // in percentage points; relative to the baseline, but a near zero baseline still needs a real increase
+    private static double minErrorIncrease(double baselineRate, int tolerance) {
+        return Math.max(baselineRate * tolerance / 100.0, 0.1);
+    }
+
+    private static Result level(double statistic, double unstable, double failure) {
+        if (statistic > failure) {
+            return Result.FAILURE;
+        }
+        return statistic > unstable ? Result.UNSTABLE : Result.SUCCESS;
+    }
+
+    private static double tCritical(double[] table, int df) {
+        // past the table the values barely move, the last one is slightly conservative
+        return table[Math.max(1, Math.min(df, table.length)) - 1];
+    }
+
+    private static void report(Result result, String name, String detail, RunLog log) {
+        if (result == Result.SUCCESS) {
+            log.info("Baseline: " + name + " higher but not significantly, " + detail);
+        } else {
+            log.info("Test ended with " + result + " on baseline regression of " + name + ", " + detail);
+        }
+    }
+
+    private static class Stat {
+        int count;
+        double sum;
+        double sumOfSquares;
+
+        void add(double value) {
+            count++;
+            sum += value;
+            sumOfSquares += value * value;
+        }
+
+        void remove(double value) {
+            count--;
+            sum -= value;
+            sumOfSquares -= value * value;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(count);
+            out.writeDouble(sum);
+            out.writeDouble(sumOfSquares);
+        }
+
+        void readFrom(ByteBuffer in) {
+            count = in.getInt();
+            sum = in.getDouble();
+            sumOfSquares = in.getDouble();
+        }
+
+        double mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        double standardDeviation() {
+            if (count < 2) {
+                return 0;
+            }
+            double variance = (sumOfSquares - sum * sum / count) / (count - 1);
+            return Math.sqrt(Math.max(0, variance));
+        }
+    }
+
+    private static class Entry {
+        final int buildNumber;
+        final int avgResponseTime;
+        final int p95ResponseTime;
+        final double errorRate;
+        final long requests;
+        final long errors;
+        final LatencyHistogram histogram;
+
+        Entry(int buildNumber, SummaryData summary) {
+            this(buildNumber, summary.avgResponseTime, summary.p95ResponseTime, summary.avgErrorRate,
+                    summary.successCount >= 0 && summary.errorCount >= 0 ? summary.successCount + summary.errorCount : 0,
+                    Math.max(0, summary.errorCount), summary.histogram);
+        }
+
+        Entry(int buildNumber, int avgResponseTime, int p95ResponseTime, double errorRate,
+                long requests, long errors, LatencyHistogram histogram) {
+            this.buildNumber = buildNumber;
+            this.avgResponseTime = avgResponseTime;
+            this.p95ResponseTime = p95ResponseTime;
+            this.errorRate = errorRate;
+            this.requests = requests;
+            this.errors = errors;
+            this.histogram = histogram;
+        }
+
+        void save(File file) throws IOException {
+            replace(file, new Writer() {
+                public void writeTo(DataOutputStream out) throws IOException {
+                    Entry.this.writeTo(out);
+                }
+            });
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(buildNumber);
+            out.writeInt(avgResponseTime);
+            out.writeInt(p95ResponseTime);
+            out.writeDouble(errorRate);
+            out.writeLong(requests);
+            out.writeLong(errors);
+            out.writeBoolean(histogram != null);
+            if (histogram != null) {
+                histogram.writeTo(out);
+            }
+        }
+
+        static Entry readFrom(ByteBuffer in) {
+            int buildNumber = in.getInt();
+            int avgResponseTime = in.getInt();
+            int p95ResponseTime = in.getInt();
+            double errorRate = in.getDouble();
+            long requests = in.getLong();
+            long errors = in.getLong();
+            LatencyHistogram histogram = in.get() != 0 ? LatencyHistogram.readFrom(in) : null;
+            return new Entry(buildNumber, avgResponseTime, p95ResponseTime, errorRate, requests, errors, histogram);
+        }
+    }
+}
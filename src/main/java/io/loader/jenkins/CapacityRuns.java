@@ -0,0 +1,109 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.LoaderAPI;
+import io.loader.jenkins.api.PollingStrategy;
+import io.loader.jenkins.api.SummaryData;
+import io.loader.jenkins.api.TestData;
+import io.loader.jenkins.api.TestIndex;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The runs of one {@link CapacitySearch}: each sets the clients of the test
+ * through the API, then starts, waits on and summarizes it like {@link TestWaves}.
+ * The results of every run are saved until the search tells which one to keep.
+ */
+final class CapacityRuns implements CapacitySearch.Probe {
+    private final LoadTest test;
+    private final LoaderAPI loaderApi;
+    private final PollingStrategy strategy;
+    private final RunLog log;
+    // build directory the results are saved in, null to save none
+    private final File rootDir;
+    private final Map<Integer, TestRun> runs = new HashMap<Integer, TestRun>();
+    private final Map<Integer, File> snapshots = new HashMap<Integer, File>();
+    // whether the clients of the test were changed
+    private boolean updated;
+
+    CapacityRuns(LoadTest test, LoaderAPI loaderApi, PollingStrategy strategy, RunLog log, File rootDir) {
+        this.test = test;
+        this.loaderApi = loaderApi;
+        this.strategy = strategy;
+        this.log = log;
+        this.rootDir = rootDir;
+    }
+
+    static String snapshotPath(String testId, int clients) {
+        return "loaderio/" + TestIndex.checkedId(testId) + "-" + clients + ".snapshot";
+    }
+
+    public SummaryData run(int clients) throws InterruptedException {
+        if (!loaderApi.updateTestClients(test.getTestId(), clients)) {
+            log.info(TestRun.withReason("Can't set the test to " + clients + " clients", loaderApi));
+            return null;
+        }
+        updated = true;
+        TestRun run = new TestRun(test, log);
+        if (rootDir != null) {
+            run.recordTo(new File(rootDir, snapshotPath(test.getTestId(), clients)));
+        }
+        TestWaves.run(Collections.singletonList(run), 0, loaderApi, strategy, log);
+        File snapshot = run.finishSnapshot();
+        if (run.failure != null) {
+            return null;
+        }
+        runs.put(clients, run);
+        if (snapshot != null) {
+            snapshots.put(clients, snapshot);
+        }
+        return run.summary;
+    }
+
+    /**
+     * Clients the test currently ends with, -1 if the API doesn't tell.
+     */
+    int currentClients() {
+        TestData data = loaderApi.getTest(test.getTestId());
+        return data == null ? -1 : data.total;
+    }
+
+    /**
+     * Puts the test back as it was before the search, if that is known.
+     */
+    void restore(int clients) {
+        if (clients <= 0 || !updated) {
+            return;
+        }
+        if (!loaderApi.updateTestClients(test.getTestId(), clients)) {
+            log.info("Can't set the test back to " + clients + " clients");
+        }
+    }
+
+    /**
+     * @return the run made with {@code clients}, {@code null} if there is none
+     */
+    TestRun getRun(int clients) {
+        return runs.get(clients);
+    }
+
+    /**
+     * Deletes the results saved for every run but the one made with {@code clients}.
+     *
+     * @return the results kept, relative to the build directory, {@code null} if none
+     */
+    String keepSnapshot(int clients) {
+        String kept = null;
+        for (Map.Entry<Integer, File> snapshot : snapshots.entrySet()) {
+            if (snapshot.getKey() == clients) {
+                kept = snapshotPath(test.getTestId(), clients);
+            } else if (!snapshot.getValue().delete()) {
+                log.info("Can't delete " + snapshot.getValue());
+            }
+        }
+        snapshots.clear();
+        return kept;
+    }
+}
@@ -0,0 +1,349 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.Metric;
+import io.loader.jenkins.api.SummaryData;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.model.Result;
+import hudson.util.FormValidation;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Finds how many clients a {@link LoadTest} can run with before its target
+ * breaches a response time and error percentage objective.
+ *
+ * The client count is doubled from {@link #getMinClients()} until a run breaches
+ * the objective or {@link #getMaxClients()} is reached, then the range between the
+ * last run that held and the first one that didn't is halved until it is within
+ * the tolerance. At most {@link #getMaxRuns()} runs are made, each a full test.
+ */
+public class CapacitySearch extends AbstractDescribableImpl<CapacitySearch> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final int DEFAULT_MIN_CLIENTS = 10;
+
+    static final int DEFAULT_MAX_CLIENTS = 1000;
+
+    static final int DEFAULT_MAX_RESPONSE_TIME = 1000;
+
+    static final int DEFAULT_MAX_ERROR_RATE = 1;
+
+    static final int DEFAULT_TOLERANCE = 10;
+
+    static final int DEFAULT_MAX_RUNS = 8;
+
+    private int minClients = DEFAULT_MIN_CLIENTS;
+
+    private int maxClients = DEFAULT_MAX_CLIENTS;
+
+    // ms, on the 95th percentile, the average when loader.io doesn't report it
+    private int maxResponseTime = DEFAULT_MAX_RESPONSE_TIME;
+
+    // percent
+    private int maxErrorRate = DEFAULT_MAX_ERROR_RATE;
+
+    // percent of the capacity found, the search stops once the knee is known this closely
+    private int tolerance = DEFAULT_TOLERANCE;
+
+    private int maxRuns = DEFAULT_MAX_RUNS;
+
+    @DataBoundConstructor
+    public CapacitySearch(int minClients, int maxClients, int maxResponseTime, int maxErrorRate,
+            int tolerance, int maxRuns) {
+        this.minClients = minClients;
+        this.maxClients = maxClients;
+        this.maxResponseTime = maxResponseTime;
+        this.maxErrorRate = maxErrorRate;
+        this.tolerance = tolerance;
+        this.maxRuns = maxRuns;
+    }
+
+    /**
+     * Runs the test at a given client count.
+     */
+    interface Probe {
+        /**
+         * @return the summary of the run, {@code null} if it couldn't run to the end
+         */
+        SummaryData run(int clients) throws InterruptedException;
+    }
+
+    Result validateParameters(RunLog log) {
+        Result result = Result.SUCCESS;
+        if (minClients <= 0 || maxClients < minClients) {
+            log.info("ERROR! clients should be greater than 0, the maximum at least the minimum");
+            result = Result.NOT_BUILT;
+        }
+        if (maxResponseTime <= 0) {
+            log.info("ERROR! response time objective should be greater than 0");
+            result = Result.NOT_BUILT;
+        }
+        if (maxErrorRate < 0 || maxErrorRate > 100) {
+            log.info("ERROR! error percentage objective should be between 0 to 100");
+            result = Result.NOT_BUILT;
+        }
+        if (tolerance <= 0 || maxRuns <= 0) {
+            log.info("ERROR! tolerance and runs should be greater than 0");
+            result = Result.NOT_BUILT;
+        }
+        if (result == Result.SUCCESS) {
+            log.info("Searching capacity between " + minClients + " and " + maxClients + " clients, within "
+                    + tolerance + "% and " + maxRuns + " runs, for 95th percentile response time up to "
+                    + maxResponseTime + "ms and errors up to " + maxErrorRate + "%");
+        }
+        return result;
+    }
+
+    /**
+     * Ramps the client count up until the objective is breached, then bisects
+     * between the last run that held and the first that didn't.
+     */
+    Outcome search(Probe probe, RunLog log) throws InterruptedException {
+        Outcome outcome = new Outcome();
+        int clients = minClients;
+        // ramp
+        while (outcome.samples.size() < maxRuns) {
+            Sample sample = probe(probe, clients, log);
+            if (sample == null) {
+                outcome.failed = true;
+                return outcome;
+            }
+            outcome.add(sample);
+            if (!sample.passed) {
+                break;
+            }
+            if (clients >= maxClients) {
+                log.info("Objective held up to the maximum of " + maxClients + " clients");
+                return outcome;
+            }
+            clients = (int) Math.min(maxClients, clients * 2L);
+        }
+        if (outcome.capacity == 0) {
+            log.info("Objective breached at the minimum of " + minClients + " clients");
+            return outcome;
+        }
+        // bisect
+        while (!isWithinTolerance(outcome) && outcome.samples.size() < maxRuns) {
+            clients = outcome.capacity + (outcome.limit - outcome.capacity) / 2;
+            Sample sample = probe(probe, clients, log);
+            if (sample == null) {
+                outcome.failed = true;
+                return outcome;
+            }
+            outcome.add(sample);
+        }
+        if (outcome.limit == 0) {
+            log.info("Stopped after " + maxRuns + " runs, objective held up to " + outcome.capacity + " clients");
+        } else if (!isWithinTolerance(outcome)) {
+            log.info("Stopped after " + maxRuns + " runs, the knee is between " + outcome.capacity
+                    + " and " + outcome.limit + " clients");
+        }
+        return outcome;
+    }
+
+    private boolean isWithinTolerance(Outcome outcome) {
+        if (outcome.limit == 0) {
+            // nothing breached yet
+            return false;
+        }
+        long gap = outcome.limit - outcome.capacity;
+        return gap <= 1 || gap * 100 <= (long) outcome.capacity * tolerance;
+    }
+
+    private Sample probe(Probe probe, int clients, RunLog log) throws InterruptedException {
+        log.info("Running with " + clients + " clients");
+        SummaryData summary = probe.run(clients);
+        if (summary == null) {
+            return null;
+        }
+        double p95 = summary.get(Metric.P95_RESPONSE_TIME);
+        Sample sample = new Sample(clients, Double.isNaN(p95) ? summary.avgResponseTime : p95, !Double.isNaN(p95),
+                summary.avgErrorRate);
+        sample.passed = sample.responseTime - maxResponseTime <= LoadTest.thresholdTolerance
+                && sample.errorRate - maxErrorRate <= LoadTest.thresholdTolerance;
+        log.info(clients + " clients: " + (sample.isPercentile() ? "95th percentile " : "average ")
+                + sample.getResponseTime() + "ms, errors " + sample.errorRate + "%, objective "
+                + (sample.passed ? "held" : "breached"));
+        return sample;
+    }
+
+    public int getMinClients() {
+        return minClients;
+    }
+
+    public int getMaxClients() {
+        return maxClients;
+    }
+
+    public int getMaxResponseTime() {
+        return maxResponseTime;
+    }
+
+    public int getMaxErrorRate() {
+        return maxErrorRate;
+    }
+
+    public int getTolerance() {
+        return tolerance;
+    }
+
+    public int getMaxRuns() {
+        return maxRuns;
+    }
+
+    /**
+     * What a search found, kept with the build.
+     */
+    public static final class Outcome implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        // most clients the objective held with, 0 if it never did
+        int capacity;
+        // fewest clients the objective was breached with, 0 if it never was
+        int limit;
+        // a run didn't end, the capacity is a lower bound at best
+        boolean failed;
+        final List<Sample> samples = new ArrayList<Sample>();
+
+        void add(Sample sample) {
+            samples.add(sample);
+            if (sample.passed) {
+                capacity = Math.max(capacity, sample.clients);
+            } else if (limit == 0 || sample.clients < limit) {
+                limit = sample.clients;
+            }
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        /**
+         * Runs in the order they were made.
+         */
+        public List<Sample> getSamples() {
+            return Collections.unmodifiableList(samples);
+        }
+
+        /**
+         * SUCCESS once a capacity is known, UNSTABLE if even the smallest load breached the objective.
+         */
+        Result getResult() {
+            if (failed) {
+                return Result.FAILURE;
+            }
+            return capacity > 0 ? Result.SUCCESS : Result.UNSTABLE;
+        }
+    }
+
+    /**
+     * One run of a search.
+     */
+    public static final class Sample implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int clients;
+        final double responseTime;
+        // false when loader.io didn't report percentiles and the average was used
+        final boolean percentile;
+        final double errorRate;
+        boolean passed;
+
+        Sample(int clients, double responseTime, boolean percentile, double errorRate) {
+            this.clients = clients;
+            this.responseTime = responseTime;
+            this.percentile = percentile;
+            this.errorRate = errorRate;
+        }
+
+        public int getClients() {
+            return clients;
+        }
+
+        public long getResponseTime() {
+            return Math.round(responseTime);
+        }
+
+        public boolean isPercentile() {
+            return percentile;
+        }
+
+        public double getErrorRate() {
+            return errorRate;
+        }
+
+        public boolean isPassed() {
+            return passed;
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<CapacitySearch> {
+
+        @Override
+        public String getDisplayName() {
+            return "Capacity search";
+        }
+
+        public FormValidation doCheckMinClients(@QueryParameter String value) {
+            return checkPositive(value);
+        }
+
+        public FormValidation doCheckMaxClients(@QueryParameter String value) {
+            return checkPositive(value);
+        }
+
+        public FormValidation doCheckMaxResponseTime(@QueryParameter String value) {
+            return checkPositive(value);
+        }
+
+        public FormValidation doCheckTolerance(@QueryParameter String value) {
+            return checkPositive(value);
+        }
+
+        public FormValidation doCheckMaxRuns(@QueryParameter String value) {
+            return checkPositive(value);
+        }
+
+        public FormValidation doCheckMaxErrorRate(@QueryParameter String value) {
+            int rate = parse(value);
+            if (rate >= 0 && rate <= 100) {
+                return FormValidation.ok();
+            }
+            return FormValidation.error("Should be a percentage between 0 and 100");
+        }
+
+        private static FormValidation checkPositive(String value) {
+            if (parse(value) > 0) {
+                return FormValidation.ok();
+            }
+            return FormValidation.error("Should be a number greater than 0");
+        }
+
+        // -1 if not a number
+        private static int parse(String value) {
+            try {
+                return value == null ? -1 : Integer.parseInt(value.trim());
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+    }
+}
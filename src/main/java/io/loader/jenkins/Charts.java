@@ -0,0 +1,71 @@
+package io.loader.jenkins;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.Plot;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.AbstractRenderer;
+import org.jfree.ui.RectangleEdge;
+import org.jfree.ui.RectangleInsets;
+
+/**
+ * Look shared by the charts of the plugin, the project trend and the timelines of a build.
+ */
+final class Charts {
+
+    private Charts() {
+    }
+
+    /**
+     * White background, legend below, black range gridlines from 0 and thick lines,
+     * on a line chart of categories or of x/y values.
+     */
+    static void style(JFreeChart chart) {
+        chart.setBackgroundPaint(Color.white);
+        chart.getLegend().setPosition(RectangleEdge.BOTTOM);
+
+        Plot plot = chart.getPlot();
+        plot.setBackgroundPaint(Color.WHITE);
+        plot.setOutlinePaint(null);
+        plot.setInsets(new RectangleInsets(5.0, 0, 0, 5.0));
+
+        ValueAxis rangeAxis;
+        AbstractRenderer renderer;
+        int series;
+        if (plot instanceof CategoryPlot) {
+            CategoryPlot categories = (CategoryPlot) plot;
+            categories.setRangeGridlinesVisible(true);
+            categories.setRangeGridlinePaint(Color.black);
+            rangeAxis = categories.getRangeAxis();
+            renderer = (AbstractRenderer) categories.getRenderer();
+            series = categories.getDataset().getRowCount();
+        } else {
+            XYPlot values = (XYPlot) plot;
+            values.setRangeGridlinesVisible(true);
+            values.setRangeGridlinePaint(Color.black);
+            rangeAxis = values.getRangeAxis();
+            renderer = (AbstractRenderer) values.getRenderer();
+            series = values.getDataset().getSeriesCount();
+        }
+        rangeAxis.setLowerBound(0);
+        for (int i = 0; i < series; i++) {
+            renderer.setSeriesStroke(i, new BasicStroke(2.0f));
+        }
+    }
+
+    static byte[] toPng(JFreeChart chart, int width, int height) throws IOException {
+        BufferedImage image = chart.createBufferedImage(width, height);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,94 @@
+package io.loader.jenkins;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+
+import io.loader.jenkins.api.RefreshingCache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import hudson.model.Item;
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
+/**
+ * The loader.io credentials visible from each job, by id, so that rendering a
+ * configuration page or starting a build doesn't walk every credentials store
+ * and decrypt every key to find one.
+ *
+ * Dropped whenever a credentials store is saved, see {@link CredentialsChangeListener};
+ * stores saved some other way are picked up within {@link #TTL_SECONDS}.
+ */
+final class CredentialIndex {
+    static final int TTL_SECONDS = Integer.getInteger(CredentialIndex.class.getName() + ".ttl", 60);
+
+    static final int MAX_CONTEXTS = Integer.getInteger(CredentialIndex.class.getName() + ".maxContexts", 500);
+
+    // by full name of the job, null for the credentials visible from everywhere;
+    // holding the jobs themselves would keep deleted ones around
+    private static final RefreshingCache<String, Map<String, LoaderCredential>> byContext =
+            new RefreshingCache<String, Map<String, LoaderCredential>>(
+                    new RefreshingCache.Loader<String, Map<String, LoaderCredential>>() {
+                        public Map<String, LoaderCredential> load(String fullName) {
+                            return index(CredentialsProvider.lookupCredentials(LoaderCredential.class,
+                                    itemOf(fullName), ACL.SYSTEM));
+                        }
+                    }, TTL_SECONDS * 1000L, MAX_CONTEXTS);
+
+    private CredentialIndex() {
+    }
+
+    /**
+     * The credentials visible from {@code item} by id, one per id, in lookup order.
+     *
+     * @param item {@code null} for those visible from everywhere
+     */
+    static Map<String, LoaderCredential> get(Item item) {
+        return byContext.get(keyOf(item));
+    }
+
+    /**
+     * @return the credential visible from {@code item} with this id, {@code null} if there is none
+     */
+    static LoaderCredential get(Item item, String id) {
+        return id == null ? null : byContext.get(keyOf(item)).get(id);
+    }
+
+    static void invalidateAll() {
+        byContext.invalidateAll();
+    }
+
+    private static String keyOf(Item item) {
+        return item == null ? null : item.getFullName();
+    }
+
+    // as the system, the index is shared and mustn't depend on who asked first
+    private static Item itemOf(String fullName) {
+        if (fullName == null) {
+            return null;
+        }
+        SecurityContext previous = ACL.impersonate(ACL.SYSTEM);
+        try {
+            return Jenkins.getInstance().getItemByFullName(fullName, Item.class);
+        } finally {
+            SecurityContextHolder.setContext(previous);
+        }
+    }
+
+    private static Map<String, LoaderCredential> index(List<LoaderCredential> found) {
+        Map<String, LoaderCredential> byId = new LinkedHashMap<String, LoaderCredential>();
+        // the id is derived from the decrypted key, worked out once here
+        for (LoaderCredential c : found) {
+            String id = c.getId();
+            if (!byId.containsKey(id)) {
+                byId.put(id, c);
+            }
+        }
+        return Collections.unmodifiableMap(byId);
+    }
+}
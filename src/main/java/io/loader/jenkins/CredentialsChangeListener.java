@@ -0,0 +1,30 @@
+package io.loader.jenkins;
+
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.ItemGroup;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import io.loader.jenkins.api.LoaderCache;
+
+/**
+ * Drops cached test lists and key validations whenever the credentials store
+ * is saved, so added, edited or removed API keys show up on the next render.
+ * The index of the keys each job can use is also dropped when a folder is saved,
+ * as folders can hold keys of their own.
+ */
+@Extension
+public class CredentialsChangeListener extends SaveableListener {
+
+    @Override
+    public void onChange(Saveable o, XmlFile file) {
+        if (o instanceof SystemCredentialsProvider) {
+            LoaderCache.invalidateAll();
+            CredentialIndex.invalidateAll();
+        } else if (o instanceof ItemGroup) {
+            CredentialIndex.invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.ApiRecorder;
+import io.loader.jenkins.api.ApiReplay;
+import io.loader.jenkins.api.PollingStrategy;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Result;
+import hudson.remoting.VirtualChannel;
+import hudson.util.Secret;
+
+/**
+ * Tests of builds that didn't wait for them. They run on plugin threads rather
+ * than executors. Their reports are added to the build, which has usually
+ * completed by then. They don't survive a restart.
+ */
+final class DetachedTests {
+    private static final Logger LOGGER = Logger.getLogger(DetachedTests.class.getName());
+
+    static final String LOG_FILE = "loaderio.log";
+
+    // threads mostly wait on the shared status poller
+    private static final ExecutorService runner = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "loader.io detached tests");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private DetachedTests() {
+    }
+
+    /**
+     * The build log is closed when the build completes, detached tests write to their own.
+     */
+    static RunLog openLog(AbstractBuild<?, ?> build) throws IOException {
+        return new RunLog(new PrintStream(new FileOutputStream(new File(build.getRootDir(), LOG_FILE), true), true, "UTF-8"));
+    }
+
+    static void submit(final LoaderPublisher publisher, final AbstractBuild<?, ?> build, final List<TestRun> runs,
+            final Secret apiKey, final ApiRecorder recorder, final ApiReplay replay,
+            final VirtualChannel channel,
+            final PollingStrategy strategy, final RunLog log) {
+        runner.submit(new Runnable() {
+            public void run() {
+                try {
+                    Result result = publisher.runTests(build, runs, apiKey, recorder, replay, channel, strategy, log);
+                    log.info("Tests ended with " + result + (LoaderPublisher.hasFailures(runs) ? ", some didn't run to the end" : ""));
+                    while (build.isLogUpdated()) {
+                        // actions and the trend are saved with the build once it is done
+                        Thread.sleep(1000);
+                    }
+                    build.save();
+                    LoaderTrendListener.record(build);
+                } catch (InterruptedException ex) {
+                    log.info("Interrupted, tests keep running on loader.io");
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Can't save loader.io results of " + build, ex);
+                } catch (RuntimeException ex) {
+                    LOGGER.log(Level.WARNING, "loader.io tests of " + build + " failed", ex);
+                    log.info("Error: " + ex);
+                } finally {
+                    if (recorder != null) {
+                        recorder.close();
+                    }
+                    log.getLogger().close();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,37 @@
+package io.loader.jenkins;
+
+/**
+ * Watches what the failure rules make of the interim results of a running test,
+ * see {@link GateEvaluator#offer}, and reports when one has held for a whole window,
+ * i.e. at every sample taken during the last {@code windowMillis}.
+ */
+class FailFastMonitor {
+    private final long windowMillis;
+    // start of the current run of breaching samples, -1 while no failure rule holds
+    private long breachingSince = -1;
+    private String reason;
+
+    FailFastMonitor(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * @param breach the failure rule that holds at {@code time}, {@code null} if none does
+     * @return why the test should be stopped, or {@code null} to keep it running
+     */
+    String offer(long time, String breach) {
+        if (breach == null) {
+            breachingSince = -1;
+            reason = null;
+            return null;
+        }
+        if (breachingSince < 0) {
+            breachingSince = time;
+        }
+        reason = breach;
+        if (time - breachingSince >= windowMillis) {
+            return reason + " for " + ((time - breachingSince) / 1000) + " sec";
+        }
+        return null;
+    }
+}
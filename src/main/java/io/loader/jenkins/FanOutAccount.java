@@ -0,0 +1,65 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.TestIndex;
+
+import java.io.Serializable;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.AutoCompletionCandidates;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Another account a {@link LoadTest} runs under at the same time, with its own
+ * copy of the test, so the step drives more clients than one plan allows.
+ */
+public class FanOutAccount extends AbstractDescribableImpl<FanOutAccount> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // id of the LoaderCredential of the account
+    private final String apiKey;
+
+    // the copy of the test in that account
+    private final String testId;
+
+    @DataBoundConstructor
+    public FanOutAccount(String apiKey, String testId) {
+        this.apiKey = apiKey;
+        // the picker fills in the title of the test
+        this.testId = TestIndex.checkedIdOf(testId);
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public String getTestId() {
+        return testId;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<FanOutAccount> {
+
+        @Override
+        public String getDisplayName() {
+            return "Account";
+        }
+
+        public ListBoxModel doFillApiKeyItems() {
+            return LoaderPublisher.DESCRIPTOR.doFillApiKeyItems();
+        }
+
+        public AutoCompletionCandidates doAutoCompleteTestId(@QueryParameter String value) {
+            return LoaderPublisher.DESCRIPTOR.doAutoCompleteTestId(value);
+        }
+
+        public FormValidation doCheckTestId(@QueryParameter String apiKey, @QueryParameter String value) {
+            return LoaderPublisher.DESCRIPTOR.doCheckTestId(apiKey, value);
+        }
+    }
+}
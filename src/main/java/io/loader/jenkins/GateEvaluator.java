@@ -0,0 +1,336 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.LatencyHistogram;
+import io.loader.jenkins.api.SummaryData;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import hudson.model.Result;
+
+/**
+ * Checks the {@link GatingRules} of one run. Rules on the whole test are checked
+ * on its summary, and on interim results for {@link FailFastMonitor}. Rules with a
+ * window are checked on every interim result once the test has run for the window,
+ * and count as breached if they held at any of them.
+ *
+ * Interim results are cumulative, so the value of a window is the difference
+ * between the totals at its end and at its start. Each window keeps the totals it
+ * spans, oldest first, and drops those that fall out of it as new ones come in;
+ * a result costs the same however long the test and its windows are.
+ */
+final class GateEvaluator {
+    private final GatingRules rules;
+    // per window length, totals from the last one at or before its start to the latest
+    private final List<ArrayDeque<Totals>> windows = new ArrayList<ArrayDeque<Totals>>();
+    private Totals latest;
+    private final State state;
+
+    GateEvaluator(GatingRules rules) {
+        this.rules = rules;
+        this.state = new State(rules.rules.size());
+        Totals start = Totals.start(rules);
+        for (int i = 0; i < rules.windowSeconds.length; i++) {
+            ArrayDeque<Totals> window = new ArrayDeque<Totals>();
+            window.add(start);
+            windows.add(window);
+        }
+    }
+
+    /**
+     * Whether interim results should be offered as often as they are polled.
+     */
+    boolean isWindowed() {
+        return rules.isWindowed();
+    }
+
+    /**
+     * Takes an interim result of the test.
+     *
+     * @param elapsedMillis since the test was started
+     * @return the failure rule that holds on it, {@code null} if there is none
+     */
+    String offer(long elapsedMillis, SummaryData interim) {
+        if (interim == null || !interim.hasMetrics || (latest != null && elapsedMillis <= latest.elapsedMillis)) {
+            return null;
+        }
+        latest = Totals.of(elapsedMillis, interim, rules);
+        for (int i = 0; i < windows.size(); i++) {
+            ArrayDeque<Totals> window = windows.get(i);
+            window.addLast(latest);
+            long start = elapsedMillis - rules.windowSeconds[i] * 1000L;
+            // keep one at or before the start, the window is measured from it
+            while (window.size() > 1 && second(window).elapsedMillis <= start) {
+                window.removeFirst();
+            }
+        }
+        Values now = new Values(interim, latest);
+        String breach = null;
+        for (int r = 0; r < rules.rules.size(); r++) {
+            GatingRules.Rule rule = rules.rules.get(r);
+            if (rule.windowed && !isCovered(rule)) {
+                continue;
+            }
+            Boolean holds = rule.condition.holds(now);
+            if (rule.windowed && holds != null) {
+                state.checked[r] = true;
+                if (holds && state.breaches[r] == null) {
+                    state.breaches[r] = rule.describe(now) + " at " + (elapsedMillis / 1000) + " sec";
+                }
+            }
+            if (breach == null && Boolean.TRUE.equals(holds) && rule.level == Result.FAILURE) {
+                breach = rule.text + " (" + rule.describe(now) + ")";
+            }
+        }
+        return breach;
+    }
+
+    private static Totals second(ArrayDeque<Totals> window) {
+        Iterator<Totals> it = window.iterator();
+        it.next();
+        return it.next();
+    }
+
+    // the test has run for every window of the rule
+    private boolean isCovered(GatingRules.Rule rule) {
+        List<GatingRules.Comparison> comparisons = new ArrayList<GatingRules.Comparison>();
+        rule.condition.collect(comparisons);
+        for (GatingRules.Comparison c : comparisons) {
+            if (c.window >= 0 && windows.get(c.window).getFirst().elapsedMillis
+                    > latest.elapsedMillis - rules.windowSeconds[c.window] * 1000L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the rules on the whole test against its summary, and reports the
+     * windowed ones that were breached while it ran.
+     *
+     * @param durationMillis how long the test ran, for rates worked out from totals
+     */
+    Result evaluate(SummaryData summary, long durationMillis, RunLog log) {
+        Values whole = new Values(summary, Totals.of(durationMillis, summary, rules));
+        Result result = Result.SUCCESS;
+        for (int r = 0; r < rules.rules.size(); r++) {
+            GatingRules.Rule rule = rules.rules.get(r);
+            String breach;
+            if (rule.windowed) {
+                if (!state.checked[r]) {
+                    log.info("Rule '" + rule + "' not checked, the test was shorter than its window"
+                            + " or loader.io didn't report its values");
+                    continue;
+                }
+                breach = state.breaches[r];
+            } else {
+                Boolean holds = rule.condition.holds(whole);
+                if (holds == null) {
+                    log.info("Rule '" + rule + "' ignored, " + rule.describe(whole));
+                    continue;
+                }
+                breach = holds ? rule.describe(whole) : null;
+            }
+            if (breach != null) {
+                log.info("Test ended with " + rule.level + " on rule '" + rule + "': " + breach);
+                result = LoadTest.worst(result, rule.level);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * What the windowed rules found, to evaluate a run polled elsewhere.
+     */
+    State getState() {
+        return state;
+    }
+
+    /**
+     * Adds what the windowed rules of a run polled elsewhere, or of a copy of this one, found.
+     */
+    void takeOver(State other) {
+        if (other == null || other.breaches.length != state.breaches.length) {
+            return;
+        }
+        for (int r = 0; r < state.breaches.length; r++) {
+            state.checked[r] |= other.checked[r];
+            if (state.breaches[r] == null) {
+                state.breaches[r] = other.breaches[r];
+            }
+        }
+    }
+
+    /**
+     * Per rule, whether it was checked on a whole window and why it was breached, if it was.
+     */
+    static final class State implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final boolean[] checked;
+        final String[] breaches;
+
+        State(int rules) {
+            checked = new boolean[rules];
+            breaches = new String[rules];
+        }
+    }
+
+    /**
+     * Cumulative counts of a test at some point, {@link Double#NaN} for those not reported.
+     */
+    private static final class Totals {
+        final long elapsedMillis;
+        final double requests;
+        final double errors;
+        final double responseTimeSum;
+        final double timeouts;
+        final double networkErrors;
+        final double dataSent;
+        final double dataReceived;
+        // per apdex target, requests within it and within 4 times it
+        final double[] satisfied;
+        final double[] tolerable;
+        // requests in the distribution, NaN without one
+        final double measured;
+        // only kept for windowed percentiles
+        final LatencyHistogram histogram;
+
+        private Totals(long elapsedMillis, double requests, double errors, double responseTimeSum, double timeouts,
+                double networkErrors, double dataSent, double dataReceived, double[] satisfied, double[] tolerable,
+                double measured, LatencyHistogram histogram) {
+            this.elapsedMillis = elapsedMillis;
+            this.requests = requests;
+            this.errors = errors;
+            this.responseTimeSum = responseTimeSum;
+            this.timeouts = timeouts;
+            this.networkErrors = networkErrors;
+            this.dataSent = dataSent;
+            this.dataReceived = dataReceived;
+            this.satisfied = satisfied;
+            this.tolerable = tolerable;
+            this.measured = measured;
+            this.histogram = histogram;
+        }
+
+        static Totals start(GatingRules rules) {
+            int targets = rules.apdexMillis.length;
+            return new Totals(0, 0, 0, 0, 0, 0, 0, 0, new double[targets], new double[targets], 0,
+                    rules.windowedPercentiles ? new LatencyHistogram() : null);
+        }
+
+        static Totals of(long elapsedMillis, SummaryData summary, GatingRules rules) {
+            double requests = summary.successCount >= 0 && summary.errorCount >= 0
+                    ? summary.successCount + summary.errorCount : Double.NaN;
+            double errors = summary.errorCount >= 0 ? summary.errorCount : Double.NaN;
+            int targets = rules.apdexMillis.length;
+            double[] satisfied = new double[targets];
+            double[] tolerable = new double[targets];
+            LatencyHistogram histogram = summary.histogram;
+            for (int i = 0; i < targets; i++) {
+                satisfied[i] = histogram == null ? Double.NaN : histogram.getCountAtOrBelow(rules.apdexMillis[i]);
+                tolerable[i] = histogram == null ? Double.NaN : histogram.getCountAtOrBelow(4 * rules.apdexMillis[i]);
+            }
+            return new Totals(elapsedMillis, requests, errors, summary.avgResponseTime * requests,
+                    count(summary.timeouts), count(summary.networkErrors), count(summary.dataSent),
+                    count(summary.dataReceived), satisfied, tolerable,
+                    histogram == null ? Double.NaN : histogram.getTotalCount(),
+                    rules.windowedPercentiles ? histogram : null);
+        }
+
+        private static double count(long value) {
+            return value < 0 ? Double.NaN : value;
+        }
+    }
+
+    /**
+     * The values of the comparisons at the latest totals: those on the whole test
+     * from the summary as reported, those over a window from the totals.
+     */
+    private final class Values implements GatingRules.Values {
+        private final SummaryData summary;
+        private final Totals end;
+
+        Values(SummaryData summary, Totals end) {
+            this.summary = summary;
+            this.end = end;
+        }
+
+        public double get(GatingRules.Comparison c) {
+            if (c.window < 0) {
+                return whole(c);
+            }
+            Totals start = windows.get(c.window).getFirst();
+            double seconds = (end.elapsedMillis - start.elapsedMillis) / 1000.0;
+            double requests = end.requests - start.requests;
+            switch (c.measure) {
+            case AVG_RESPONSE_TIME:
+                return ratio(end.responseTimeSum - start.responseTimeSum, requests);
+            case ERROR_RATE:
+                return ratio((end.errors - start.errors) * 100, requests);
+            case REQUESTS_PER_SECOND:
+                return ratio(requests, seconds);
+            case TIMEOUTS:
+                return end.timeouts - start.timeouts;
+            case NETWORK_ERRORS:
+                return end.networkErrors - start.networkErrors;
+            case DATA_SENT:
+                return end.dataSent - start.dataSent;
+            case DATA_RECEIVED:
+                return end.dataReceived - start.dataReceived;
+            case BYTES_SENT_PER_SECOND:
+                return ratio(end.dataSent - start.dataSent, seconds);
+            case BYTES_RECEIVED_PER_SECOND:
+                return ratio(end.dataReceived - start.dataReceived, seconds);
+            case APDEX:
+                return apdex(end.satisfied[c.apdex] - start.satisfied[c.apdex],
+                        end.tolerable[c.apdex] - start.tolerable[c.apdex], requests, end.measured - start.measured);
+            default:
+                return percentile(c, start);
+            }
+        }
+
+        private double whole(GatingRules.Comparison c) {
+            if (c.measure.metric != null) {
+                return summary.get(c.measure.metric);
+            }
+            double seconds = end.elapsedMillis / 1000.0;
+            switch (c.measure) {
+            case BYTES_SENT_PER_SECOND:
+                return ratio(end.dataSent, seconds);
+            case BYTES_RECEIVED_PER_SECOND:
+                return ratio(end.dataReceived, seconds);
+            default:
+                return apdex(end.satisfied[c.apdex], end.tolerable[c.apdex], end.requests, end.measured);
+            }
+        }
+
+        // of the window, from the difference of the distributions
+        private double percentile(GatingRules.Comparison c, Totals start) {
+            if (end.histogram == null || start.histogram == null) {
+                return Double.NaN;
+            }
+            LatencyHistogram window = new LatencyHistogram();
+            window.add(end.histogram);
+            window.subtract(start.histogram);
+            if (window.isEmpty()) {
+                return Double.NaN;
+            }
+            return window.getValueAtPercentile(c.measure.percentile);
+        }
+    }
+
+    // NaN unless both are known and there is something to divide by
+    private static double ratio(double value, double by) {
+        return by > 0 ? value / by : Double.NaN;
+    }
+
+    // requests without a response time in the distribution, errors, count as frustrated
+    private static double apdex(double satisfied, double tolerable, double requests, double measured) {
+        double total = Double.isNaN(requests) ? measured : Double.isNaN(measured) ? requests : Math.max(requests, measured);
+        return ratio(satisfied + (tolerable - satisfied) / 2, total);
+    }
+}
@@ -0,0 +1,494 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.Metric;
+
+import java.io.Serializable;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import hudson.model.Result;
+
+/**
+ * Conditions on the results of a {@link LoadTest} that make the build unstable or
+ * failed, one per line:
+ * <pre>
+ * fail: avg_response_time &gt; 2000
+ * unstable: error_rate &gt; 1 and requests_per_second &lt; 100
+ * fail: apdex(500) &lt; 0.7 over 60s or timeouts &gt; 0 over 30s
+ * </pre>
+ * Comparisons are joined with {@code and}, {@code or} and parentheses. One with
+ * {@code over} is on the last seconds (or minutes, {@code 5m}) of the test rather
+ * than on all of it; rules with such a comparison are checked on the interim
+ * results while the test runs, see {@link GateEvaluator}. Lines starting with
+ * {@code #} are comments.
+ *
+ * Parsed once, then shared by every run of the test.
+ */
+final class GatingRules implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final GatingRules NONE = new GatingRules(Collections.<Rule>emptyList(), new long[0], new int[0], false);
+
+    final List<Rule> rules;
+    // distinct apdex targets (ms) and window lengths (sec) of the comparisons, see Comparison#apdex, #window
+    final long[] apdexMillis;
+    final int[] windowSeconds;
+    // a percentile is compared over a window, interim distributions are kept for it
+    final boolean windowedPercentiles;
+
+    private GatingRules(List<Rule> rules, long[] apdexMillis, int[] windowSeconds, boolean windowedPercentiles) {
+        this.rules = rules;
+        this.apdexMillis = apdexMillis;
+        this.windowSeconds = windowSeconds;
+        this.windowedPercentiles = windowedPercentiles;
+    }
+
+    /**
+     * @throws ParseException with the line of the first rule that can't be read as error offset
+     */
+    static GatingRules parse(String text) throws ParseException {
+        if (text == null || text.trim().length() == 0) {
+            return NONE;
+        }
+        List<Rule> rules = new ArrayList<Rule>();
+        List<Long> apdex = new ArrayList<Long>();
+        List<Integer> windows = new ArrayList<Integer>();
+        boolean windowedPercentiles = false;
+        String[] lines = text.split("\r?\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            Parser parser = new Parser(line, i + 1, apdex, windows);
+            Rule rule = parser.rule();
+            rules.add(rule);
+            windowedPercentiles |= parser.windowedPercentiles;
+        }
+        long[] apdexMillis = new long[apdex.size()];
+        for (int i = 0; i < apdexMillis.length; i++) {
+            apdexMillis[i] = apdex.get(i);
+        }
+        int[] windowSeconds = new int[windows.size()];
+        for (int i = 0; i < windowSeconds.length; i++) {
+            windowSeconds[i] = windows.get(i);
+        }
+        return new GatingRules(Collections.unmodifiableList(rules), apdexMillis, windowSeconds, windowedPercentiles);
+    }
+
+    boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Whether a rule has to be checked on interim results.
+     */
+    boolean isWindowed() {
+        return windowSeconds.length > 0;
+    }
+
+    /**
+     * The rule of an older unstable or failed threshold.
+     */
+    static String thresholdRule(Result level, Metric metric, String limit) {
+        return (level == Result.FAILURE ? "fail" : "unstable") + ": " + metric.name().toLowerCase(Locale.ENGLISH)
+                + (metric.isLowerWorse() ? " < " : " > ") + limit;
+    }
+
+    /**
+     * Values a rule can compare. Those with a metric read the summary as
+     * thresholds did, the others are worked out from its counts and distribution.
+     */
+    enum Measure {
+        AVG_RESPONSE_TIME(Metric.AVG_RESPONSE_TIME, true, 0),
+        MIN_RESPONSE_TIME(Metric.MIN_RESPONSE_TIME, false, 0),
+        MAX_RESPONSE_TIME(Metric.MAX_RESPONSE_TIME, false, 0),
+        P50_RESPONSE_TIME(Metric.P50_RESPONSE_TIME, true, 50),
+        P90_RESPONSE_TIME(Metric.P90_RESPONSE_TIME, true, 90),
+        P95_RESPONSE_TIME(Metric.P95_RESPONSE_TIME, true, 95),
+        P99_RESPONSE_TIME(Metric.P99_RESPONSE_TIME, true, 99),
+        ERROR_RATE(Metric.ERROR_RATE, true, 0),
+        REQUESTS_PER_SECOND(Metric.REQUESTS_PER_SECOND, true, 0),
+        TIMEOUTS(Metric.TIMEOUTS, true, 0),
+        NETWORK_ERRORS(Metric.NETWORK_ERRORS, true, 0),
+        DATA_SENT(Metric.DATA_SENT, true, 0),
+        DATA_RECEIVED(Metric.DATA_RECEIVED, true, 0),
+        BYTES_SENT_PER_SECOND(null, true, 0),
+        BYTES_RECEIVED_PER_SECOND(null, true, 0),
+        // share of requests within the target, half of those within 4 times it
+        APDEX(null, true, 0);
+
+        final Metric metric;
+        // whether it can be taken over a window of the test
+        final boolean windowable;
+        // 0 unless it is one
+        final double percentile;
+
+        private Measure(Metric metric, boolean windowable, double percentile) {
+            this.metric = metric;
+            this.windowable = windowable;
+            this.percentile = percentile;
+        }
+
+        boolean isPercentile() {
+            return percentile > 0;
+        }
+
+        static Measure forName(String name) {
+            for (Measure m : values()) {
+                if (m.name().equalsIgnoreCase(name)) {
+                    return m;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Values of the comparisons of a rule, at some point of a test.
+     */
+    interface Values {
+        /**
+         * @return {@link Double#NaN} if it isn't known
+         */
+        double get(Comparison comparison);
+    }
+
+    /**
+     * One line: a level and the condition that leads to it.
+     */
+    static final class Rule implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final Result level;
+        final Condition condition;
+        final String text;
+        final int line;
+        final boolean windowed;
+
+        Rule(Result level, Condition condition, String text, int line) {
+            this.level = level;
+            this.condition = condition;
+            this.text = text;
+            this.line = line;
+            List<Comparison> comparisons = new ArrayList<Comparison>();
+            condition.collect(comparisons);
+            boolean windowed = false;
+            for (Comparison c : comparisons) {
+                windowed |= c.window >= 0;
+            }
+            this.windowed = windowed;
+        }
+
+        /**
+         * The values the rule compared, e.g. {@code error_rate 3.2, requests_per_second 80}.
+         */
+        String describe(Values values) {
+            List<Comparison> comparisons = new ArrayList<Comparison>();
+            condition.collect(comparisons);
+            StringBuilder description = new StringBuilder();
+            for (Comparison c : comparisons) {
+                if (description.length() > 0) {
+                    description.append(", ");
+                }
+                double value = values.get(c);
+                description.append(c.operand).append(' ')
+                        .append(Double.isNaN(value) ? "not reported" : format(value));
+            }
+            return description.toString();
+        }
+
+        public String toString() {
+            return text;
+        }
+    }
+
+    abstract static class Condition implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @return {@code null} if it depends on a value that isn't known
+         */
+        abstract Boolean holds(Values values);
+
+        abstract void collect(List<Comparison> comparisons);
+    }
+
+    static final class Comparison extends Condition {
+        private static final long serialVersionUID = 1L;
+
+        final Measure measure;
+        // as written, e.g. apdex(500)
+        final String operand;
+        final String op;
+        final double limit;
+        // index in apdexMillis, -1 unless the measure is APDEX
+        final int apdex;
+        // index in windowSeconds, -1 for the whole test
+        final int window;
+
+        Comparison(Measure measure, String operand, String op, double limit, int apdex, int window) {
+            this.measure = measure;
+            this.operand = operand;
+            this.op = op;
+            this.limit = limit;
+            this.apdex = apdex;
+            this.window = window;
+        }
+
+        Boolean holds(Values values) {
+            double value = values.get(this);
+            if (Double.isNaN(value)) {
+                return null;
+            }
+            double tolerance = LoadTest.thresholdTolerance;
+            if (">".equals(op)) {
+                return value - limit > tolerance;
+            } else if (">=".equals(op)) {
+                return value - limit > -tolerance;
+            } else if ("<".equals(op)) {
+                return limit - value > tolerance;
+            } else {
+                return limit - value > -tolerance;
+            }
+        }
+
+        void collect(List<Comparison> comparisons) {
+            comparisons.add(this);
+        }
+    }
+
+    // both or either, unknown only when the known parts don't decide
+    static final class Junction extends Condition {
+        private static final long serialVersionUID = 1L;
+
+        final boolean and;
+        final List<Condition> parts;
+
+        Junction(boolean and, List<Condition> parts) {
+            this.and = and;
+            this.parts = parts;
+        }
+
+        Boolean holds(Values values) {
+            boolean unknown = false;
+            for (Condition part : parts) {
+                Boolean holds = part.holds(values);
+                if (holds == null) {
+                    unknown = true;
+                } else if (holds.booleanValue() != and) {
+                    return !and;
+                }
+            }
+            return unknown ? null : Boolean.valueOf(and);
+        }
+
+        void collect(List<Comparison> comparisons) {
+            for (Condition part : parts) {
+                part.collect(comparisons);
+            }
+        }
+    }
+
+    static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? String.valueOf((long) value) : String.format(Locale.ENGLISH, "%.3f", value);
+    }
+
+    /**
+     * Recursive descent over the tokens of one line:
+     * <pre>
+     * rule       := ("fail" | "unstable") ":" or
+     * or         := and ("or" and)*
+     * and        := primary ("and" primary)*
+     * primary    := "(" or ")" | operand op number ["over" number ("s" | "m")]
+     * operand    := measure | "apdex" "(" number ")"
+     * </pre>
+     */
+    private static final class Parser {
+        private final String line;
+        private final int lineNumber;
+        private final List<Long> apdex;
+        private final List<Integer> windows;
+        private final List<String> tokens = new ArrayList<String>();
+        private int next;
+        boolean windowedPercentiles;
+
+        Parser(String line, int lineNumber, List<Long> apdex, List<Integer> windows) throws ParseException {
+            this.line = line;
+            this.lineNumber = lineNumber;
+            this.apdex = apdex;
+            this.windows = windows;
+            tokenize();
+        }
+
+        private void tokenize() throws ParseException {
+            int i = 0;
+            while (i < line.length()) {
+                char c = line.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')' || c == ':') {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else if (c == '<' || c == '>') {
+                    boolean orEqual = i + 1 < line.length() && line.charAt(i + 1) == '=';
+                    tokens.add(orEqual ? c + "=" : String.valueOf(c));
+                    i += orEqual ? 2 : 1;
+                } else if (Character.isLetterOrDigit(c) || c == '.' || c == '_') {
+                    int start = i;
+                    while (i < line.length() && (Character.isLetterOrDigit(line.charAt(i))
+                            || line.charAt(i) == '.' || line.charAt(i) == '_')) {
+                        i++;
+                    }
+                    tokens.add(line.substring(start, i).toLowerCase(Locale.ENGLISH));
+                } else {
+                    throw error("unexpected '" + c + "'");
+                }
+            }
+        }
+
+        Rule rule() throws ParseException {
+            String level = take("fail or unstable");
+            Result result;
+            if ("fail".equals(level)) {
+                result = Result.FAILURE;
+            } else if ("unstable".equals(level)) {
+                result = Result.UNSTABLE;
+            } else {
+                throw error("a rule starts with fail: or unstable:, not " + level);
+            }
+            expect(":");
+            Condition condition = or();
+            if (next < tokens.size()) {
+                throw error("unexpected " + tokens.get(next));
+            }
+            return new Rule(result, condition, line, lineNumber);
+        }
+
+        private Condition or() throws ParseException {
+            List<Condition> parts = new ArrayList<Condition>();
+            parts.add(and());
+            while (accept("or")) {
+                parts.add(and());
+            }
+            return parts.size() == 1 ? parts.get(0) : new Junction(false, parts);
+        }
+
+        private Condition and() throws ParseException {
+            List<Condition> parts = new ArrayList<Condition>();
+            parts.add(primary());
+            while (accept("and")) {
+                parts.add(primary());
+            }
+            return parts.size() == 1 ? parts.get(0) : new Junction(true, parts);
+        }
+
+        private Condition primary() throws ParseException {
+            if (accept("(")) {
+                Condition condition = or();
+                expect(")");
+                return condition;
+            }
+            String name = take("a metric");
+            Measure measure = Measure.forName(name);
+            if (measure == null) {
+                throw error("unknown metric " + name);
+            }
+            String operand = name;
+            int apdexIndex = -1;
+            if (measure == Measure.APDEX) {
+                expect("(");
+                long target = (long) number("the apdex target in ms");
+                if (target <= 0) {
+                    throw error("the apdex target should be greater than 0 ms");
+                }
+                expect(")");
+                operand = "apdex(" + target + ")";
+                apdexIndex = indexOf(apdex, Long.valueOf(target));
+            }
+            String op = take("<, <=, > or >=");
+            if (!"<".equals(op) && !"<=".equals(op) && !">".equals(op) && !">=".equals(op)) {
+                throw error("expected <, <=, > or >= after " + operand + ", not " + op);
+            }
+            double limit = number("a number after " + op);
+            int windowIndex = -1;
+            if (accept("over")) {
+                if (!measure.windowable) {
+                    throw error(operand + " can't be taken over a window");
+                }
+                windowIndex = indexOf(windows, Integer.valueOf(duration()));
+                windowedPercentiles |= measure.isPercentile();
+            }
+            return new Comparison(measure, operand, op, limit, apdexIndex, windowIndex);
+        }
+
+        // 30s, 5m; a number and its unit are one token
+        private int duration() throws ParseException {
+            String token = take("a duration such as 30s or 5m");
+            int unit = token.endsWith("m") ? 60 : token.endsWith("s") ? 1 : 0;
+            if (unit == 0) {
+                throw error("a duration needs a unit, 30s or 5m, not " + token);
+            }
+            try {
+                int seconds = Integer.parseInt(token.substring(0, token.length() - 1)) * unit;
+                if (seconds > 0) {
+                    return seconds;
+                }
+            } catch (NumberFormatException ex) {
+                // reported below
+            }
+            throw error("the window should be a whole number of seconds or minutes greater than 0, not " + token);
+        }
+
+        private double number(String what) throws ParseException {
+            String token = take(what);
+            try {
+                double value = Double.parseDouble(token);
+                if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+                    return value;
+                }
+            } catch (NumberFormatException ex) {
+                // reported below
+            }
+            throw error("expected " + what + ", not " + token);
+        }
+
+        private static <T> int indexOf(List<T> values, T value) {
+            int index = values.indexOf(value);
+            if (index < 0) {
+                values.add(value);
+                index = values.size() - 1;
+            }
+            return index;
+        }
+
+        private boolean accept(String token) {
+            if (next < tokens.size() && tokens.get(next).equals(token)) {
+                next++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) throws ParseException {
+            if (!accept(token)) {
+                throw error("expected " + token + (next < tokens.size() ? ", not " + tokens.get(next) : ""));
+            }
+        }
+
+        private String take(String what) throws ParseException {
+            if (next >= tokens.size()) {
+                throw error("expected " + what + " at the end");
+            }
+            return tokens.get(next++);
+        }
+
+        private ParseException error(String message) {
+            return new ParseException("line " + lineNumber + ": " + message, lineNumber);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.Metric;
+import io.loader.jenkins.api.TestIndex;
+
+import java.io.Serializable;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.AutoCompletionCandidates;
+import hudson.model.Descriptor;
+import hudson.model.Result;
+import hudson.util.FormValidation;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.RelativePath;
+
+/**
+ * One loader.io test run by a {@link LoaderPublisher}, with its own {@link GatingRules}.
+ */
+public class LoadTest extends AbstractDescribableImpl<LoadTest> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final double thresholdTolerance = 0.00005;
+
+    private final String testId;
+
+    // conditions that make the build unstable or failed, see GatingRules
+    private String rules;
+
+    private transient GatingRules gatingRules;
+
+    // thresholds of jobs saved before rules, turned into rules on load
+    @Deprecated
+    private Integer errorFailedThreshold;
+    @Deprecated
+    private Integer errorUnstableThreshold;
+    @Deprecated
+    private Integer responseTimeFailedThreshold;
+    @Deprecated
+    private Integer responseTimeUnstableThreshold;
+
+    // stop the test as soon as a failure rule holds for failFastWindow seconds
+    private boolean failFast = false;
+
+    private int failFastWindow = DEFAULT_FAIL_FAST_WINDOW;
+
+    static final int DEFAULT_FAIL_FAST_WINDOW = 30;
+
+    // sample interim results for the charts of the build; they are sampled anyway when fetched for the rules
+    private boolean timeline = false;
+
+    // compare with the last baselineBuilds successful builds instead of fixed rules only
+    private boolean baseline = false;
+
+    private int baselineBuilds = DEFAULT_BASELINE_BUILDS;
+
+    // percent, smaller regressions are never reported
+    private int baselineTolerance = DEFAULT_BASELINE_TOLERANCE;
+
+    // find the most clients the test holds an objective with, instead of running it once
+    private CapacitySearch capacitySearch;
+
+    // copies of the test in other accounts, run at the same time and reported as one run
+    private List<FanOutAccount> fanOut;
+
+    static final int DEFAULT_BASELINE_BUILDS = 10;
+
+    static final int DEFAULT_BASELINE_TOLERANCE = 10;
+
+    public LoadTest(String testId,
+            int errorFailedThreshold,
+            int errorUnstableThreshold,
+            int responseTimeFailedThreshold,
+            int responseTimeUnstableThreshold) {
+        this(testId, thresholdRules(errorFailedThreshold, errorUnstableThreshold, responseTimeFailedThreshold,
+                responseTimeUnstableThreshold), false, DEFAULT_FAIL_FAST_WINDOW, false,
+                false, DEFAULT_BASELINE_BUILDS, DEFAULT_BASELINE_TOLERANCE, null, null);
+    }
+
+    @DataBoundConstructor
+    public LoadTest(String testId,
+            String rules,
+            boolean failFast,
+            int failFastWindow,
+            boolean timeline,
+            boolean baseline,
+            int baselineBuilds,
+            int baselineTolerance,
+            CapacitySearch capacitySearch,
+            List<FanOutAccount> fanOut) {
+        // the picker fills in the title of the test
+        this.testId = TestIndex.checkedIdOf(testId);
+        this.rules = rules == null ? "" : rules;
+        this.failFast = failFast;
+        this.failFastWindow = failFastWindow;
+        this.timeline = timeline;
+        this.baseline = baseline;
+        this.baselineBuilds = baselineBuilds;
+        this.baselineTolerance = baselineTolerance;
+        this.capacitySearch = capacitySearch;
+        this.fanOut = fanOut;
+        readResolve();
+    }
+
+    protected Object readResolve() {
+        if (rules == null) {
+            rules = thresholdRules(errorFailedThreshold, errorUnstableThreshold, responseTimeFailedThreshold,
+                    responseTimeUnstableThreshold);
+        }
+        errorFailedThreshold = null;
+        errorUnstableThreshold = null;
+        responseTimeFailedThreshold = null;
+        responseTimeUnstableThreshold = null;
+        if (failFastWindow <= 0) {
+            failFastWindow = DEFAULT_FAIL_FAST_WINDOW;
+        }
+        if (baselineBuilds <= 0) {
+            baselineBuilds = DEFAULT_BASELINE_BUILDS;
+        }
+        if (baselineTolerance < 0) {
+            baselineTolerance = DEFAULT_BASELINE_TOLERANCE;
+        }
+        if (fanOut == null) {
+            fanOut = Collections.emptyList();
+        }
+        return this;
+    }
+
+    /**
+     * The rules that do what older thresholds did; negative ones, which failed
+     * validation, are left out.
+     */
+    static String thresholdRules(Integer errorFailed, Integer errorUnstable, Integer responseTimeFailed,
+            Integer responseTimeUnstable) {
+        List<String> lines = new ArrayList<String>();
+        addThresholdRule(lines, Result.FAILURE, Metric.ERROR_RATE, errorFailed);
+        addThresholdRule(lines, Result.UNSTABLE, Metric.ERROR_RATE, errorUnstable);
+        addThresholdRule(lines, Result.FAILURE, Metric.AVG_RESPONSE_TIME, responseTimeFailed);
+        addThresholdRule(lines, Result.UNSTABLE, Metric.AVG_RESPONSE_TIME, responseTimeUnstable);
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void addThresholdRule(List<String> lines, Result level, Metric metric, Integer threshold) {
+        if (threshold != null && threshold >= 0) {
+            lines.add(GatingRules.thresholdRule(level, metric, String.valueOf(threshold)));
+        }
+    }
+
+    /**
+     * Checks that no test, or copy of one, is run twice by the same step: both runs
+     * would start it and write the same report.
+     */
+    static Result validateIds(List<LoadTest> tests, RunLog log) {
+        Set<String> ids = new HashSet<String>();
+        Result result = Result.SUCCESS;
+        for (LoadTest test : tests) {
+            List<String> testIds = new ArrayList<String>();
+            testIds.add(test.getTestId());
+            for (FanOutAccount account : test.getFanOut()) {
+                testIds.add(account.getTestId());
+            }
+            for (String id : testIds) {
+                if (!ids.add(id)) {
+                    log.info("ERROR! test " + id + " is listed more than once, each test runs once per build");
+                    result = Result.NOT_BUILT;
+                }
+            }
+        }
+        return result;
+    }
+
+    Result validateParameters(RunLog log) {
+        Result result = Result.SUCCESS;
+        // jobs saved by hand don't go through the constructor
+        if (!TestIndex.isValidId(testId)) {
+            log.info("ERROR! test id should be the letters and digits of a loader.io test id");
+            result = Result.NOT_BUILT;
+        }
+        try {
+            GatingRules parsed = GatingRules.parse(rules);
+            for (GatingRules.Rule rule : parsed.rules) {
+                log.info("Test will be considered as " + rule.level.toString().toLowerCase() + " on '" + rule + "'"
+                        + (rule.windowed ? ", checked while it runs" : ""));
+            }
+        } catch (ParseException ex) {
+            log.info("ERROR! rules can't be read, " + ex.getMessage());
+            result = Result.NOT_BUILT;
+        }
+        if (capacitySearch != null) {
+            result = worst(result, capacitySearch.validateParameters(log));
+        }
+        for (FanOutAccount account : fanOut) {
+            if (!TestIndex.isValidId(account.getTestId())) {
+                log.info("ERROR! every other account should have a copy of the test, given by its id");
+                result = Result.NOT_BUILT;
+            }
+        }
+        if (!fanOut.isEmpty() && capacitySearch != null) {
+            log.info("ERROR! a capacity search runs under one account");
+            result = Result.NOT_BUILT;
+        } else if (!fanOut.isEmpty()) {
+            log.info("Running under " + (fanOut.size() + 1) + " accounts at once, results combined");
+        }
+        return result;
+    }
+
+    static Result worst(Result a, Result b) {
+        return b.isWorseThan(a) ? b : a;
+    }
+
+    public String getTestId() {
+        return testId;
+    }
+
+    public String getRules() {
+        return rules;
+    }
+
+    /**
+     * The rules parsed, none if they can't be; {@link #validateParameters(RunLog)} reports that first.
+     */
+    GatingRules getGatingRules() {
+        if (gatingRules == null) {
+            try {
+                gatingRules = GatingRules.parse(rules);
+            } catch (ParseException ex) {
+                gatingRules = GatingRules.NONE;
+            }
+        }
+        return gatingRules;
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    public int getFailFastWindow() {
+        return failFastWindow;
+    }
+
+    public boolean isTimeline() {
+        return timeline;
+    }
+
+    public boolean isBaseline() {
+        return baseline;
+    }
+
+    public int getBaselineBuilds() {
+        return baselineBuilds;
+    }
+
+    public int getBaselineTolerance() {
+        return baselineTolerance;
+    }
+
+    public CapacitySearch getCapacitySearch() {
+        return capacitySearch;
+    }
+
+    public List<FanOutAccount> getFanOut() {
+        return fanOut;
+    }
+
+    /**
+     * The copy of this test in another account, with the same rules; it is
+     * evaluated and compared with the baseline as part of this one only.
+     */
+    LoadTest copyIn(String copyTestId) {
+        return new LoadTest(copyTestId, rules, failFast, failFastWindow, timeline, false, baselineBuilds, baselineTolerance,
+                null, null);
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<LoadTest> {
+
+        @Override
+        public String getDisplayName() {
+            return "loader.io test";
+        }
+
+        public AutoCompletionCandidates doAutoCompleteTestId(@QueryParameter String value) {
+            return LoaderPublisher.DESCRIPTOR.doAutoCompleteTestId(value);
+        }
+
+        // the API key select lives on the enclosing publisher
+        public FormValidation doCheckTestId(@RelativePath("..") @QueryParameter String apiKey,
+                @QueryParameter String value) {
+            return LoaderPublisher.DESCRIPTOR.doCheckTestId(apiKey, value);
+        }
+
+        public FormValidation doCheckRules(@QueryParameter String value) {
+            try {
+                GatingRules.parse(value);
+                return FormValidation.ok();
+            } catch (ParseException ex) {
+                return FormValidation.error(ex.getMessage());
+            }
+        }
+    }
+}
@@ -1,19 +1,74 @@
 package io.loader.jenkins;
 
+import io.loader.jenkins.api.SummaryData;
+import io.loader.jenkins.api.TestIndex;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
+
 import hudson.model.HealthReport;
 import hudson.model.HealthReportingAction;
 import hudson.model.AbstractBuild;
 
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
 public class LoaderBuildAction implements HealthReportingAction {
+	private static final Logger LOGGER = Logger.getLogger(LoaderBuildAction.class.getName());
+
 	private final AbstractBuild<?, ?> build;
 	
 	private String testId;
 	private String testResultId = null;
+
+	// null for builds recorded when a step ran a single test
+	private String urlName;
+
+	// relative to the build directory, null for builds without saved results
+	private String snapshotFile;
+
+	// what the capacity search of the test found, null if it was run once
+	private CapacitySearch.Outcome capacity;
+
+	// mapped on first use and dropped under memory pressure, never in build.xml
+	private transient Reference<ResultSnapshot> snapshot;
 	
 	public LoaderBuildAction(AbstractBuild<?, ?> build, String testId, String testResultId) {
+		this(build, testId, testResultId, null);
+	}
+
+	public LoaderBuildAction(AbstractBuild<?, ?> build, String testId, String testResultId, String urlName) {
+		this(build, testId, testResultId, urlName, null);
+	}
+
+	public LoaderBuildAction(AbstractBuild<?, ?> build, String testId, String testResultId, String urlName,
+			String snapshotFile) {
+		this(build, testId, testResultId, urlName, snapshotFile, null);
+	}
+
+	public LoaderBuildAction(AbstractBuild<?, ?> build, String testId, String testResultId, String urlName,
+			String snapshotFile, CapacitySearch.Outcome capacity) {
 		this.build = build;
 		this.testId = testId;
 		this.testResultId = testResultId;
+		this.urlName = urlName;
+		this.snapshotFile = snapshotFile;
+		this.capacity = capacity;
+	}
+
+	static String snapshotPath(String testId) {
+		return "loaderio/" + TestIndex.checkedId(testId) + ".snapshot";
 	}
 	
 	public AbstractBuild<?, ?> getOwner() {
@@ -28,16 +83,124 @@ public class LoaderBuildAction implements HealthReportingAction {
 		return this.testResultId;
 	}
 
+	public CapacitySearch.Outcome getCapacity() {
+		return capacity;
+	}
+
+	public boolean hasSnapshot() {
+		return snapshotFile != null;
+	}
+
+	/**
+	 * Results saved with the build, {@code null} if there are none or they can't be read.
+	 */
+	public synchronized ResultSnapshot getSnapshot() {
+		if (snapshotFile == null) {
+			return null;
+		}
+		ResultSnapshot loaded = snapshot == null ? null : snapshot.get();
+		if (loaded == null) {
+			try {
+				loaded = ResultSnapshot.open(new File(build.getRootDir(), snapshotFile));
+			} catch (IOException ex) {
+				LOGGER.log(Level.FINE, "Can't read loader.io results of " + build, ex);
+				return null;
+			}
+			snapshot = new SoftReference<ResultSnapshot>(loaded);
+		}
+		return loaded;
+	}
+
+	/**
+	 * Final results saved with the build, {@code null} if there are none or the test didn't finish.
+	 */
+	public SummaryData getSummary() {
+		ResultSnapshot results = getSnapshot();
+		return results == null ? null : results.getSummary();
+	}
+
+	public boolean hasTimeline() {
+		ResultSnapshot results = getSnapshot();
+		return results != null && results.getSampleCount() > 0;
+	}
+
+	/**
+	 * Response time percentiles of the summary in ms, those loader.io didn't report left out.
+	 */
+	public Map<String, Long> getPercentiles() {
+		Map<String, Long> percentiles = new LinkedHashMap<String, Long>();
+		SummaryData summary = getSummary();
+		if (summary == null) {
+			return percentiles;
+		}
+		putIfKnown(percentiles, "min", summary.minResponseTime);
+		putIfKnown(percentiles, "50%", summary.p50ResponseTime);
+		putIfKnown(percentiles, "75%", summary.histogram == null ? -1 : summary.histogram.getValueAtPercentile(75));
+		putIfKnown(percentiles, "90%", summary.p90ResponseTime);
+		putIfKnown(percentiles, "95%", summary.p95ResponseTime);
+		putIfKnown(percentiles, "99%", summary.p99ResponseTime);
+		putIfKnown(percentiles, "99.9%", summary.histogram == null ? -1 : summary.histogram.getValueAtPercentile(99.9));
+		putIfKnown(percentiles, "max", summary.maxResponseTime);
+		return percentiles;
+	}
+
+	private static void putIfKnown(Map<String, Long> percentiles, String label, long value) {
+		if (value >= 0) {
+			percentiles.put(label, value);
+		}
+	}
+
+	/**
+	 * The report as loader.io shows it, needs access to share.loader.io.
+	 */
+	public String getShareUrl() {
+		return "https://share.loader.io/results/" + testId + "/widget/summaries/" + testResultId + "/advanced";
+	}
+
+	/**
+	 * Serves {@code chart?metric=responseTime|errorRate} as PNG, rendered from the saved
+	 * timeline on the first view and read from the build directory afterwards.
+	 */
+	public void doChart(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		ResultSnapshot results = getSnapshot();
+		if (results == null) {
+			rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		String metric = ResultCharts.ERROR_RATE.equals(req.getParameter("metric"))
+				? ResultCharts.ERROR_RATE : ResultCharts.RESPONSE_TIME;
+		File png = ResultCharts.chart(new File(build.getRootDir(), snapshotFile), results, metric);
+		if (req.checkIfModified(png.lastModified(), rsp)) {
+			return;
+		}
+		rsp.setContentType("image/png");
+		rsp.setContentLength((int) png.length());
+		OutputStream out = rsp.getOutputStream();
+		InputStream in = new FileInputStream(png);
+		try {
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
 	public String getIconFileName() {
 		return "/plugin/loaderio-jenkins-plugin/images/24x24/24.png";
 	}
 
 	public String getDisplayName() {
-		return "loader.io Report";
+		if (urlName == null || urlName.equals("loaderio")) {
+			return "loader.io Report";
+		}
+		return "loader.io Report (" + testId + ")";
 	}
 
 	public String getUrlName() {
-		return "loaderio";
+		return urlName == null ? "loaderio" : urlName;
 	}
 
 	public HealthReport getBuildHealth() {
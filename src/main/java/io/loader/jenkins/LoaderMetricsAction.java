@@ -0,0 +1,59 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.ApiMetrics;
+import io.loader.jenkins.api.HttpClientPool;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Serves the {@link ApiMetrics} of this controller at {@code /loaderio-metrics/}
+ * in the Prometheus text format, for administrators only. Not shown in the side panel.
+ * Also registers them over JMX on startup, and closes the pooled API connections
+ * on shutdown.
+ */
+@Extension
+public class LoaderMetricsAction implements RootAction {
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Initializer(after = InitMilestone.PLUGINS_STARTED)
+    public static void registerMBeans() {
+        ApiMetrics.registerMBeans();
+    }
+
+    @Terminator
+    public static void closeConnections() {
+        HttpClientPool.shutdownAll();
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "loader.io metrics";
+    }
+
+    public String getUrlName() {
+        return "loaderio-metrics";
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType(CONTENT_TYPE);
+        rsp.setHeader("Cache-Control", "no-cache");
+        PrintWriter out = rsp.getWriter();
+        ApiMetrics.get().writeText(out);
+        out.flush();
+    }
+}
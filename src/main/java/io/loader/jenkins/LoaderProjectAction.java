@@ -0,0 +1,205 @@
+package io.loader.jenkins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.util.DataSetBuilder;
+import hudson.util.ShiftedCategoryAxis;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.CategoryAxis;
+import org.jfree.chart.axis.CategoryLabelPositions;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.data.category.CategoryDataset;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Response time, error rate and throughput of the last builds of a job, read
+ * from its {@link TrendIndex}.
+ */
+public class LoaderProjectAction implements Action {
+    private static final Logger LOGGER = Logger.getLogger(LoaderProjectAction.class.getName());
+
+    static final int MAX_POINTS = Integer.getInteger(LoaderProjectAction.class.getName() + ".maxPoints", 200);
+    static final int MAX_CACHED_CHARTS = 64;
+
+    static final String RESPONSE_TIME = "responseTime";
+    static final String ERROR_RATE = "errorRate";
+    static final String THROUGHPUT = "throughput";
+
+    // rendered PNGs, thrown away when the index of their job changes
+    private static final Map<String, CachedChart> charts = new LinkedHashMap<String, CachedChart>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedChart> eldest) {
+            return size() > MAX_CACHED_CHARTS;
+        }
+    };
+
+    private final AbstractProject<?, ?> project;
+
+    public LoaderProjectAction(AbstractProject<?, ?> project) {
+        this.project = project;
+    }
+
+    public AbstractProject<?, ?> getProject() {
+        return project;
+    }
+
+    public String getIconFileName() {
+        return "/plugin/loaderio-jenkins-plugin/images/24x24/24.png";
+    }
+
+    public String getDisplayName() {
+        return "loader.io Trend";
+    }
+
+    public String getUrlName() {
+        return "loaderio-trend";
+    }
+
+    TrendIndex getIndex() {
+        return TrendIndex.of(project);
+    }
+
+    public boolean hasData() {
+        return getIndex().getFile().length() >= TrendIndex.RECORD_SIZE;
+    }
+
+    /**
+     * Last builds first, for the table under the charts.
+     */
+    public List<TrendPoint> getPoints() {
+        List<TrendPoint> points = readPoints();
+        Collections.reverse(points);
+        return points;
+    }
+
+    private List<TrendPoint> readPoints() {
+        try {
+            return getIndex().read(MAX_POINTS);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Can't read the loader.io trend of " + project.getFullName(), ex);
+            return new ArrayList<TrendPoint>();
+        }
+    }
+
+    /**
+     * Serves {@code trend?metric=responseTime|errorRate|throughput&width=&height=} as PNG.
+     */
+    public void doTrend(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        TrendIndex index = getIndex();
+        if (req.checkIfModified(index.getLastModified(), rsp)) {
+            return;
+        }
+        String metric = req.getParameter("metric");
+        if (!RESPONSE_TIME.equals(metric) && !ERROR_RATE.equals(metric) && !THROUGHPUT.equals(metric)) {
+            metric = RESPONSE_TIME;
+        }
+        int width = parseSize(req.getParameter("width"), 500);
+        int height = parseSize(req.getParameter("height"), 200);
+        String key = index.getFile().getPath() + '|' + metric + '|' + width + 'x' + height;
+        long version = index.getVersion();
+
+        byte[] png = null;
+        synchronized (charts) {
+            CachedChart cached = charts.get(key);
+            if (cached != null && cached.version == version) {
+                png = cached.png;
+            }
+        }
+        if (png == null) {
+            png = render(metric, width, height);
+            synchronized (charts) {
+                charts.put(key, new CachedChart(version, png));
+            }
+        }
+        rsp.setContentType("image/png");
+        rsp.setContentLength(png.length);
+        rsp.getOutputStream().write(png);
+    }
+
+    private static int parseSize(String value, int defaultValue) {
+        try {
+            int size = Integer.parseInt(value);
+            return size > 0 && size <= 2000 ? size : defaultValue;
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    private byte[] render(String metric, int width, int height) throws IOException {
+        return Charts.toPng(createChart(metric, buildDataset(metric, readPoints())), width, height);
+    }
+
+    private static CategoryDataset buildDataset(String metric, List<TrendPoint> points) {
+        Set<String> tests = new HashSet<String>();
+        for (TrendPoint point : points) {
+            tests.add(point.testId);
+        }
+        boolean multiple = tests.size() > 1;
+        DataSetBuilder<String, Integer> data = new DataSetBuilder<String, Integer>();
+        for (TrendPoint point : points) {
+            String suffix = multiple ? " (" + point.testId + ")" : "";
+            Integer build = point.buildNumber;
+            if (RESPONSE_TIME.equals(metric)) {
+                data.add(point.avgResponseTime, "average" + suffix, build);
+                addIfKnown(data, point.p95ResponseTime, "p95" + suffix, build);
+                addIfKnown(data, point.p99ResponseTime, "p99" + suffix, build);
+            } else if (ERROR_RATE.equals(metric)) {
+                data.add(point.avgErrorRate, "errors" + suffix, build);
+            } else {
+                addIfKnown(data, point.requestsPerSecond, "requests/s" + suffix, build);
+            }
+        }
+        return data.build();
+    }
+
+    private static void addIfKnown(DataSetBuilder<String, Integer> data, double value, String row, Integer build) {
+        if (value >= 0) {
+            data.add(value, row, build);
+        }
+    }
+
+    private static JFreeChart createChart(String metric, CategoryDataset dataset) {
+        String unit = RESPONSE_TIME.equals(metric) ? "ms" : ERROR_RATE.equals(metric) ? "%" : "req/s";
+        JFreeChart chart = ChartFactory.createLineChart(null, null, unit, dataset,
+                PlotOrientation.VERTICAL, true, false, false);
+        Charts.style(chart);
+
+        CategoryPlot plot = chart.getCategoryPlot();
+        CategoryAxis domainAxis = new ShiftedCategoryAxis(null);
+        plot.setDomainAxis(domainAxis);
+        domainAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_90);
+        domainAxis.setLowerMargin(0.0);
+        domainAxis.setUpperMargin(0.0);
+        domainAxis.setCategoryMargin(0.0);
+
+        NumberAxis rangeAxis = (NumberAxis) plot.getRangeAxis();
+        rangeAxis.setStandardTickUnits(NumberAxis.createIntegerTickUnits());
+        return chart;
+    }
+
+    private static class CachedChart {
+        final long version;
+        final byte[] png;
+
+        CachedChart(long version, byte[] png) {
+            this.version = version;
+            this.png = png;
+        }
+    }
+}
@@ -1,31 +1,36 @@
 package io.loader.jenkins;
 
-import com.cloudbees.plugins.credentials.CredentialsProvider;
-
+import io.loader.jenkins.api.ApiRecorder;
+import io.loader.jenkins.api.ApiReplay;
 import io.loader.jenkins.api.LoaderAPI;
-import io.loader.jenkins.api.SummaryData;
-import io.loader.jenkins.api.TestData;
+import io.loader.jenkins.api.LoaderCache;
+import io.loader.jenkins.api.PollingStrategy;
+import io.loader.jenkins.api.TestIndex;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import jenkins.model.Jenkins;
-
 import org.apache.commons.lang.StringUtils;
 import hudson.Extension;
 import hudson.Launcher;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.AutoCompletionCandidates;
 import hudson.model.Job;
 import hudson.model.BuildListener;
 import hudson.model.Item;
 import hudson.model.Result;
-import hudson.security.ACL;
+import hudson.remoting.VirtualChannel;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Notifier;
@@ -59,215 +64,453 @@ import org.kohsuke.stapler.StaplerRequest;
 public class LoaderPublisher extends Notifier {
 	
 	private String apiKey;
-	
-	private String testId = "";
 
-    private int errorFailedThreshold = 0;
+	private List<LoadTest> tests;
+
+	// how many tests are started at once, 0 starts all of them together
+	private int waveSize = 0;
+
+    private String pollingStrategy = PollingStrategy.ADAPTIVE;
+
+    private int pollInterval = DEFAULT_POLL_INTERVAL;
+
+    private int maxPollInterval = DEFAULT_MAX_POLL_INTERVAL;
+
+    // let the build finish right away and collect the results in the background
+    private boolean detach = false;
+
+    // call loader.io from the node the build runs on rather than from the master
+    private boolean remote = false;
+
+    // save the API calls of each build, to look into or replay them
+    private boolean recordApi = false;
 
-    private int errorUnstableThreshold = 0;
+    // answer the API calls from what this build of the job recorded, not loader.io, 0 for none
+    private int replayBuild = 0;
 
-    private int responseTimeFailedThreshold = 0;
+    // how many times as fast as recorded, 0 answers every call at once
+    private double replaySpeed = 1;
 
-    private int responseTimeUnstableThreshold = 0;
+    // single test configuration of jobs saved before several tests were supported
+    @Deprecated
+    private String testId;
+    @Deprecated
+    private Integer errorFailedThreshold;
+    @Deprecated
+    private Integer errorUnstableThreshold;
+    @Deprecated
+    private Integer responseTimeFailedThreshold;
+    @Deprecated
+    private Integer responseTimeUnstableThreshold;
     
-    private PrintStream logger;
+    static final int DEFAULT_POLL_INTERVAL = 5;
+
+    static final int DEFAULT_MAX_POLL_INTERVAL = 60;
+
+    // tests offered while typing in the picker
+    static final int MAX_SUGGESTIONS = 20;
+
+    // API calls of the build, in the build directory
+    static final String RECORDING_FILE = "loaderio/api-calls.rec";
 	
 	@DataBoundConstructor
     public LoaderPublisher(String apiKey,
-            String testId,
-            int errorFailedThreshold,
-            int errorUnstableThreshold,
-            int responseTimeFailedThreshold,
-            int responseTimeUnstableThreshold) {
+            List<LoadTest> tests,
+            int waveSize,
+            String pollingStrategy,
+            int pollInterval,
+            int maxPollInterval,
+            boolean detach,
+            boolean remote,
+            boolean recordApi,
+            int replayBuild,
+            double replaySpeed) {
         this.apiKey = apiKey;
-        this.errorFailedThreshold = errorFailedThreshold;
-        this.errorUnstableThreshold = errorUnstableThreshold;
-        this.responseTimeFailedThreshold = responseTimeFailedThreshold;
-        this.responseTimeUnstableThreshold = responseTimeUnstableThreshold;
-        this.testId = testId;
+        this.tests = tests == null ? new ArrayList<LoadTest>() : new ArrayList<LoadTest>(tests);
+        this.waveSize = waveSize;
+        this.pollingStrategy = pollingStrategy;
+        this.pollInterval = pollInterval;
+        this.maxPollInterval = maxPollInterval;
+        this.detach = detach;
+        this.remote = remote;
+        this.recordApi = recordApi;
+        this.replayBuild = replayBuild;
+        this.replaySpeed = replaySpeed;
+        readResolve();
+    }
+
+    protected Object readResolve() {
+        if (tests == null) {
+            tests = new ArrayList<LoadTest>();
+            if (StringUtils.isNotBlank(testId)) {
+                tests.add(new LoadTest(testId, intValue(errorFailedThreshold), intValue(errorUnstableThreshold),
+                        intValue(responseTimeFailedThreshold), intValue(responseTimeUnstableThreshold)));
+            }
+        }
+        testId = null;
+        errorFailedThreshold = null;
+        errorUnstableThreshold = null;
+        responseTimeFailedThreshold = null;
+        responseTimeUnstableThreshold = null;
+        // jobs saved before polling was configurable have none of these fields
+        if (StringUtils.isBlank(pollingStrategy)) {
+            pollingStrategy = PollingStrategy.ADAPTIVE;
+        }
+        if (pollInterval <= 0) {
+            pollInterval = DEFAULT_POLL_INTERVAL;
+        }
+        if (maxPollInterval < pollInterval) {
+            maxPollInterval = Math.max(pollInterval, DEFAULT_MAX_POLL_INTERVAL);
+        }
+        return this;
+    }
+
+    private static int intValue(Integer value) {
+        return value == null ? 0 : value;
     }
 	
 	@Override
     public boolean perform(AbstractBuild build, Launcher launcher,
             BuildListener listener) throws InterruptedException, IOException {
-		logger = listener.getLogger();
-        Result result; // Result.SUCCESS;
-        String session;
-        if ((result = validateParameters(logger)) != Result.SUCCESS) {
-            return true;
-        }
-        String apiKeyId = StringUtils.defaultIfEmpty(getApiKey(), getDescriptor().getApiKey());
-        String apiKey = null;
-        for (LoaderCredential c : CredentialsProvider
-                .lookupCredentials(LoaderCredential.class, build.getProject(), ACL.SYSTEM)) {
-            if (StringUtils.equals(apiKeyId, c.getId())) {
-                apiKey = c.getApiKey().getPlainText();
-                break;
-            }
-        }
-        
-        LoaderAPI loaderApi = new LoaderAPI(apiKey);
-        String resTestResultId = loaderApi.runTest(getTestId());
-        if (resTestResultId == null) {
-        	logInfo("Invalid test information");
-        	result = Result.NOT_BUILT;
-            return false;
-        }
-        
-        int lastPrint = 0;
-        int interval = 5;
+		// everything about this build stays local, builds of the job may overlap
+		RunLog log = new RunLog(listener.getLogger());
+		if (tests.isEmpty()) {
+		    log.info("No test configured");
+		    return true;
+		}
+		boolean multiple = tests.size() > 1;
+		for (LoadTest test : tests) {
+		    RunLog testLog = multiple ? log.forTest(test.getTestId()) : log;
+		    if (test.validateParameters(testLog) != Result.SUCCESS) {
+		        return true;
+		    }
+		}
+		if (LoadTest.validateIds(tests, log) != Result.SUCCESS) {
+		    return true;
+		}
+        Secret apiKey = lookupApiKey(build, getApiKey());
         
-        while (true) {
-        	TestData testInfo = loaderApi.getTest(getTestId());
-        	
-        	if (testInfo == null) {
-        		logInfo("API return invalid test information");
-            	result = Result.NOT_BUILT;
+        PollingStrategy strategy = PollingStrategy.forName(pollingStrategy, pollInterval * 1000L, maxPollInterval * 1000L);
+        log.info("Polling " + strategy);
+        ApiReplay replay = null;
+        if (replayBuild > 0) {
+            replay = openReplay(build, log);
+            if (replay == null) {
+                // not calling loader.io instead, that would run paid tests
+                build.setResult(Result.FAILURE);
                 return false;
-        	}
-        	
-        	if (testInfo.status.equalsIgnoreCase("running") || testInfo.status.equalsIgnoreCase("pending")) {
-        		logInfo("Waiting for test results " + lastPrint + " sec");
-        		if (testInfo.duration > 0 && (testInfo.duration + 60) < lastPrint) {
-        			logInfo("API doesn't return test results");
-                	result = Result.NOT_BUILT;
-                    return false;
-        		} else {
-        			lastPrint = lastPrint + interval; 
-        			Thread.sleep(interval * 1000);
-        		}
-        	} else {
-        		break;
-        	}
-        	
-        	
+            }
         }
-        
-        Thread.sleep(10 * 1000);
-        SummaryData testSummaryInfo = loaderApi.getTestSummaryData(getTestId(), resTestResultId);
-        
-        double thresholdTolerance = 0.00005;
-        
-        if (errorFailedThreshold >= 0 && testSummaryInfo.avgErrorRate - errorFailedThreshold > thresholdTolerance) {
-            result = Result.FAILURE;
-            logInfo("Test ended with " + Result.FAILURE + " on error percentage threshold");
-        } else if (errorUnstableThreshold >= 0
-                && testSummaryInfo.avgErrorRate - errorUnstableThreshold > thresholdTolerance) {
-        	logInfo("Test ended with " + Result.UNSTABLE + " on error percentage threshold");
-            result = Result.UNSTABLE;
+        // replayed calls are answered from here
+        VirtualChannel channel = remote && replay == null ? launcher.getChannel() : null;
+        if (channel != null) {
+            log.info("Calling loader.io from " + StringUtils.defaultIfEmpty(build.getBuiltOnStr(), "master"));
         }
 
-        if (responseTimeFailedThreshold >= 0 && testSummaryInfo.avgResponseTime - responseTimeFailedThreshold > thresholdTolerance) {
-            result = Result.FAILURE;
-            logInfo("Test ended with " + Result.FAILURE + " on response time threshold");
+        ApiRecorder recorder = recordApi ? openRecorder(build, channel, log) : null;
+        try {
+            // searches change the test between runs, they run from here and before the other tests in every mode
+            Result searched = searchCapacity(build, apiKey, recorder, replay, strategy, log);
+            boolean searchesOnly = true;
+            for (LoadTest test : tests) {
+                searchesOnly &= test.getCapacitySearch() != null;
+            }
+            if (searchesOnly) {
+                build.setResult(searched);
+                return searched != Result.FAILURE;
+            }
 
-        } else if (responseTimeUnstableThreshold >= 0
-                && testSummaryInfo.avgResponseTime - responseTimeUnstableThreshold > thresholdTolerance) {
-            result = Result.UNSTABLE;
-            logInfo("Test ended with " + Result.UNSTABLE + " on response time threshold");
+            if (detach) {
+                RunLog detachedLog = DetachedTests.openLog(build);
+                log.info("Not waiting for the tests, results will be added to this build when they end. "
+                        + "Rules don't change the build result in this mode, see " + DetachedTests.LOG_FILE);
+                DetachedTests.submit(this, build, newRuns(build, detachedLog), apiKey, recorder, replay, channel,
+                        strategy,
+                        detachedLog);
+                // closed once the detached tests are done
+                recorder = null;
+                build.setResult(searched);
+                return searched != Result.FAILURE;
+            }
+            List<TestRun> runs = newRuns(build, log);
+            Result result = runTests(build, runs, apiKey, recorder, replay, channel, strategy, log);
+            build.setResult(LoadTest.worst(result, searched));
+            return !hasFailures(runs) && searched != Result.FAILURE;
+        } finally {
+            if (recorder != null) {
+                recorder.close();
+            }
         }
-        	
-    	LoaderBuildAction action = new LoaderBuildAction(build, getTestId(), resTestResultId);
-        build.getActions().add(action);
-        build.setResult(result);
-        
-		return true;
 	}
-	
-	private void logInfo(String str) {
-		if (logger != null) {
-			logger.println("loader.io: " + str);
-		}
+
+	// null if the file can't be created, the build goes on unrecorded
+	private static ApiRecorder openRecorder(AbstractBuild<?, ?> build, VirtualChannel channel, RunLog log) {
+	    File file = new File(build.getRootDir(), RECORDING_FILE);
+	    try {
+	        ApiRecorder recorder = ApiRecorder.create(file);
+	        log.info("Recording API calls to " + file + (channel != null
+	                ? ", except those of the tests run from the build node" : ""));
+	        return recorder;
+	    } catch (IOException ex) {
+	        log.info("Can't record API calls to " + file + ": " + ex.getMessage());
+	        return null;
+	    }
 	}
-	
-	private Result validateParameters(PrintStream logger) {
-        Result result = Result.SUCCESS;
-        if (errorUnstableThreshold >= 0 && errorUnstableThreshold <= 100) {
-        	logInfo("Errors percentage greater than or equal to "
-                    + errorUnstableThreshold + "% will be considered as "
-                    + Result.UNSTABLE.toString().toLowerCase());
-        } else {
-        	logInfo("ERROR! percentage should be between 0 to 100");
-            result = Result.NOT_BUILT;
-        }
 
-        if (errorFailedThreshold >= 0 && errorFailedThreshold <= 100) {
-        	logInfo("Errors percentage greater than or equal to "
-                    + errorFailedThreshold + "% will be considered as "
-                    + Result.FAILURE.toString().toLowerCase());
-        } else {
-        	logInfo("ERROR! percentage should be between 0 to 100");
-            result = Result.NOT_BUILT;
-        }
+	// null if the recording can't be read
+	private ApiReplay openReplay(AbstractBuild<?, ?> build, RunLog log) {
+	    AbstractBuild<?, ?> recorded = build.getProject().getBuildByNumber(replayBuild);
+	    if (recorded == null) {
+	        log.info("ERROR! No build #" + replayBuild + " to replay");
+	        return null;
+	    }
+	    File file = new File(recorded.getRootDir(), RECORDING_FILE);
+	    try {
+	        ApiReplay replay = new ApiReplay(ApiReplay.read(file), replaySpeed);
+	        log.info("Answering API calls from " + file + " (" + replay.getExchanges().size()
+	                + " calls, speed " + replaySpeed + "), not loader.io");
+	        return replay;
+	    } catch (IOException ex) {
+	        log.info("ERROR! Can't replay " + file + ": " + ex.getMessage());
+	        return null;
+	    }
+	}
 
-        if (responseTimeUnstableThreshold >= 0) {
-        	logInfo("Response time greater than or equal to "
-                    + responseTimeUnstableThreshold + "millis will be considered as "
-                    + Result.UNSTABLE.toString().toLowerCase());
-        } else {
-            logger.println("ERROR! percentage should be greater than or equal to 0");
-            result = Result.NOT_BUILT;
-        }
+	// calls loader.io with this key, the calls are saved unless recorder is null and
+	// answered from replay unless it is null
+	static LoaderAPI newApi(Secret apiKey, ApiRecorder recorder, ApiReplay replay) {
+	    LoaderAPI loaderApi = new LoaderAPI(apiKey == null ? null : apiKey.getPlainText());
+	    loaderApi.recordTo(recorder);
+	    loaderApi.replayFrom(replay);
+	    return loaderApi;
+	}
 
-        if (responseTimeFailedThreshold >= 0) {
-        	logInfo("Response time greater than or equal to "
-                    + responseTimeFailedThreshold + "millis will be considered as "
-                    + Result.FAILURE.toString().toLowerCase());
-        } else {
-        	logInfo("ERROR! percentage should be greater than or equal to 0");
-            result = Result.NOT_BUILT;
+	/**
+	 * Runs the capacity searches one after the other and adds their reports to the build.
+	 *
+	 * @return the combined result of the searches, {@link Result#FAILURE} if one couldn't run to the end
+	 */
+	private Result searchCapacity(AbstractBuild<?, ?> build, Secret apiKey, ApiRecorder recorder,
+	        ApiReplay replay, PollingStrategy strategy, RunLog log) throws InterruptedException {
+	    boolean multiple = tests.size() > 1;
+	    Result result = Result.SUCCESS;
+	    for (LoadTest test : tests) {
+	        CapacitySearch search = test.getCapacitySearch();
+	        if (search == null) {
+	            continue;
+	        }
+	        RunLog testLog = multiple ? log.forTest(test.getTestId()) : log;
+	        CapacityRuns probe = new CapacityRuns(test, newApi(apiKey, recorder, replay), strategy, testLog,
+	                build.getRootDir());
+	        int clients = probe.currentClients();
+	        CapacitySearch.Outcome outcome;
+	        try {
+	            outcome = search.search(probe, testLog);
+	        } finally {
+	            probe.restore(clients);
+	        }
+	        if (outcome.isFailed()) {
+	            testLog.info("Capacity search ended with " + Result.FAILURE + ", a run didn't finish");
+	        } else if (outcome.getCapacity() > 0) {
+	            testLog.info("Capacity: " + outcome.getCapacity() + " clients"
+	                    + (outcome.getLimit() > 0 ? ", objective breached at " + outcome.getLimit() : ""));
+	        }
+	        result = LoadTest.worst(result, outcome.getResult());
+	        // the report shows the run at the capacity found, the first one if there is none
+	        int shown = outcome.getCapacity() > 0 ? outcome.getCapacity() : search.getMinClients();
+	        TestRun run = probe.getRun(shown);
+	        String urlName = multiple ? "loaderio-" + test.getTestId() : "loaderio";
+	        build.getActions().add(new LoaderBuildAction(build, test.getTestId(), run == null ? null : run.resultId,
+	                urlName, probe.keepSnapshot(shown), outcome));
+	    }
+	    return result;
+	}
+
+	// tests run once, those with a capacity search run from searchCapacity()
+	private List<TestRun> newRuns(AbstractBuild<?, ?> build, RunLog log) {
+	    boolean multiple = tests.size() > 1;
+	    List<TestRun> runs = new ArrayList<TestRun>();
+	    for (LoadTest test : tests) {
+	        if (test.getCapacitySearch() != null) {
+	            continue;
+	        }
+	        TestRun run = new TestRun(test, multiple ? log.forTest(test.getTestId()) : log);
+	        run.recordTo(new File(build.getRootDir(), LoaderBuildAction.snapshotPath(test.getTestId())));
+	        if (test.isBaseline()) {
+	            run.compareWith(Baseline.fileFor(build.getProject(), test.getTestId()));
+	        }
+	        runs.add(run);
+	    }
+	    return runs;
+	}
+
+	// the credential with this id, the default one if blank, null if there is none
+	private Secret lookupApiKey(AbstractBuild<?, ?> build, String apiKeyId) {
+	    LoaderCredential c = CredentialIndex.get(build.getProject(),
+	            StringUtils.defaultIfEmpty(apiKeyId, getDescriptor().getApiKey()));
+	    return c == null ? null : c.getApiKey();
+	}
+
+	/**
+	 * Runs the tests wave after wave, through {@code channel} unless it is {@code null},
+	 * and adds their reports to the build. Tests run under several accounts go first,
+	 * one at a time and from here. Calls made from here are saved to {@code recorder}
+	 * and answered from {@code replay} unless they are {@code null}.
+	 *
+	 * @return the combined result of the tests that ran to the end
+	 */
+	Result runTests(AbstractBuild<?, ?> build, List<TestRun> runs, Secret apiKey, ApiRecorder recorder,
+	        ApiReplay replay, VirtualChannel channel, PollingStrategy strategy, RunLog log) throws InterruptedException {
+	    List<TestRun> waves = new ArrayList<TestRun>();
+	    for (TestRun run : runs) {
+	        if (run.test.getFanOut().isEmpty()) {
+	            waves.add(run);
+	        } else {
+	            runFanOut(build, run, apiKey, recorder, replay, strategy);
+	        }
+	    }
+	    if (waves.isEmpty()) {
+	        // nothing left to run
+	    } else if (channel == null) {
+	        TestWaves.run(waves, waveSize, newApi(apiKey, recorder, replay), strategy, log);
+	    } else {
+	        RemoteTests.run(channel, waves, waveSize, apiKey, strategy, log);
+	    }
+	    return report(build, runs, log);
+	}
+
+	/**
+	 * Starts a copy of the test under each of its accounts at once, waits for all of
+	 * them and completes {@code run} with their combined results.
+	 */
+	private void runFanOut(AbstractBuild<?, ?> build, TestRun run, Secret apiKey, ApiRecorder recorder,
+	        ApiReplay replay, PollingStrategy strategy) throws InterruptedException {
+	    List<TestRun> parts = new ArrayList<TestRun>();
+	    parts.add(new TestRun(run.test.copyIn(run.getTestId()), run.log));
+	    for (FanOutAccount account : run.test.getFanOut()) {
+	        Secret accountKey = lookupApiKey(build, account.getApiKey());
+	        if (accountKey == null) {
+	            run.fail("No credential " + account.getApiKey() + " for the copy " + account.getTestId());
+	            return;
+	        }
+	        TestRun part = new TestRun(run.test.copyIn(account.getTestId()), run.log.forTest(account.getTestId()));
+	        part.account = newApi(accountKey, recorder, replay);
+	        parts.add(part);
+	    }
+	    TestWaves.run(parts, 0, newApi(apiKey, recorder, replay), strategy, run.log);
+	    long first = Long.MAX_VALUE;
+	    long last = 0;
+	    for (TestRun part : parts) {
+	        if (part.resultId != null) {
+	            first = Math.min(first, part.getStartedAt());
+	            last = Math.max(last, part.getStartedAt());
+	        }
+	    }
+	    if (last >= first) {
+	        run.log.info("Started under " + parts.size() + " accounts within " + (last - first) + " ms");
+	    }
+	    run.completeFrom(parts);
+	}
+
+	/**
+	 * Evaluates the tests that ran to the end and adds their reports to the build.
+	 *
+	 * @return the combined result of those tests
+	 */
+	private Result report(AbstractBuild<?, ?> build, List<TestRun> runs, RunLog log) {
+        boolean multiple = runs.size() > 1;
+        Result result = Result.SUCCESS;
+        for (TestRun run : runs) {
+            if (run.failure == null && !run.isAborted()) {
+                run.evaluate();
+            }
+            File snapshot = run.finishSnapshot();
+            if (run.failure != null) {
+                continue;
+            }
+            result = LoadTest.worst(result, run.result);
+            if (run.isAborted()) {
+                log.info("Test ended with " + Result.FAILURE + ": " + run.abortReason);
+            }
+            String urlName = multiple ? "loaderio-" + run.getTestId() : "loaderio";
+            LoaderBuildAction action = new LoaderBuildAction(build, run.getTestId(), run.resultId, urlName,
+                    snapshot == null ? null : LoaderBuildAction.snapshotPath(run.getTestId()));
+            build.getActions().add(action);
+        }
+        if (multiple) {
+            log.info("Combined result of " + runs.size() + " tests: " + result);
+        }
+        if (result == Result.SUCCESS && !hasFailures(runs)) {
+            for (TestRun run : runs) {
+                run.updateBaseline(build.getNumber());
+            }
         }
         return result;
 	}
 
+	static boolean hasFailures(List<TestRun> runs) {
+	    for (TestRun run : runs) {
+	        if (run.failure != null) {
+	            return true;
+	        }
+	    }
+	    return false;
+	}
+
+	// nothing is shared between builds, they don't need to wait for each other
 	public BuildStepMonitor getRequiredMonitorService() {
-		return BuildStepMonitor.BUILD;
+		return BuildStepMonitor.NONE;
+	}
+
+	@Override
+	public Collection<? extends Action> getProjectActions(AbstractProject<?, ?> project) {
+		return Collections.singletonList(new LoaderProjectAction(project));
 	}
 	
 	public String getApiKey() {
         return apiKey;
     }
 	
-	public int getResponseTimeFailedThreshold() {
-        return responseTimeFailedThreshold;
-    }
+	public List<LoadTest> getTests() {
+	    return tests;
+	}
 
-    public void setResponseTimeFailedThreshold(int responseTimeFailedThreshold) {
-        this.responseTimeFailedThreshold = responseTimeFailedThreshold;
-    }
+	public boolean isDetach() {
+	    return detach;
+	}
 
-    public int getResponseTimeUnstableThreshold() {
-        return responseTimeUnstableThreshold;
-    }
+	public boolean isRemote() {
+	    return remote;
+	}
 
-    public void setResponseTimeUnstableThreshold(int responseTimeUnstableThreshold) {
-        this.responseTimeUnstableThreshold = responseTimeUnstableThreshold;
-    }
-    
-    public int getErrorFailedThreshold() {
-        return errorFailedThreshold;
-    }
+	public boolean isRecordApi() {
+	    return recordApi;
+	}
 
-    public void setErrorFailedThreshold(int errorFailedThreshold) {
-        this.errorFailedThreshold = Math.max(0, Math.min(errorFailedThreshold, 100));
-    }
+	public int getReplayBuild() {
+	    return replayBuild;
+	}
 
-    public int getErrorUnstableThreshold() {
-        return errorUnstableThreshold;
-    }
+	public double getReplaySpeed() {
+	    return replaySpeed;
+	}
 
-    public void setErrorUnstableThreshold(int errorUnstableThreshold) {
-        this.errorUnstableThreshold = Math.max(0, Math.min(errorUnstableThreshold,
-                100));
+	public int getWaveSize() {
+	    return waveSize;
+	}
+
+    public String getPollingStrategy() {
+        return pollingStrategy;
     }
 
-    public String getTestId() {
-        return testId;
+    public int getPollInterval() {
+        return pollInterval;
     }
 
-    public void setTestId(String testId) {
-        this.testId = testId;
+    public int getMaxPollInterval() {
+        return maxPollInterval;
     }
+
 	
 	@Override
     public LoaderioPerformancePublisherDescriptor getDescriptor() {
@@ -284,87 +527,93 @@ public class LoaderPublisher extends Notifier {
 	public static class LoaderioPerformancePublisherDescriptor extends BuildStepDescriptor<Publisher> {
 		private String apiKey;
 
+		private int cacheTtl = LoaderCache.DEFAULT_TTL_SECONDS;
+
+		// blank for loader.io, set to run builds against a simulator or a proxy of the API
+		private String apiUrl;
+
         public LoaderioPerformancePublisherDescriptor() {
             super(LoaderPublisher.class);
             load();
+            LoaderCache.setTtlSeconds(cacheTtl);
+            LoaderAPI.setBaseUri(apiUrl);
         }
         
-     // Used by config.jelly to display the test list.
-        public ListBoxModel doFillTestIdItems(@QueryParameter String apiKey) throws FormValidation {
-            if (StringUtils.isBlank(apiKey)) {
-                apiKey = getApiKey();
-            }
-
-            Secret apiKeyValue = null;
+        // Used by LoadTest/config.jelly to suggest tests of every key the job can use
+        public AutoCompletionCandidates doAutoCompleteTestId(@QueryParameter String value) {
+            AutoCompletionCandidates candidates = new AutoCompletionCandidates();
+            Set<String> found = new HashSet<String>();
             Item item = Stapler.getCurrentRequest().findAncestorObject(Item.class);
-            for (LoaderCredential c : CredentialsProvider
-                    .lookupCredentials(LoaderCredential.class, item, ACL.SYSTEM)) {
-                if (StringUtils.equals(apiKey, c.getId())) {
-                	apiKeyValue = c.getApiKey();
-                    break;
+            for (LoaderCredential c : getCredentials(item)) {
+                TestIndex index = LoaderCache.getTestIndex(c.getApiKey().getPlainText());
+                if (index == null) {
+                    continue;
+                }
+                for (TestIndex.Entry test : index.search(value, 0, MAX_SUGGESTIONS).tests) {
+                    if (found.size() < MAX_SUGGESTIONS && found.add(test.id)) {
+                        candidates.add(test.title);
+                    }
                 }
             }
-            ListBoxModel items = new ListBoxModel();
+            return candidates;
+        }
+
+        public FormValidation doCheckTestId(@QueryParameter String apiKey, @QueryParameter String value) {
+            String testId = TestIndex.idOf(value);
+            if (StringUtils.isBlank(testId)) {
+                return FormValidation.error("Type the name, domain or id of a test");
+            }
+            if (!TestIndex.isValidId(testId)) {
+                return FormValidation.error("Not a test id, loader.io test ids are letters and digits");
+            }
+            Secret apiKeyValue = findApiKey(apiKey);
             if (apiKeyValue == null) {
-                items.add("No API Key", "-1");
-            } else {
-	            LoaderAPI lda = new LoaderAPI(apiKeyValue.getPlainText());
-	
-	            try {
-	                Map<String, String> testList = lda.getTestList();
-	                if (testList == null){
-	                    items.add("Invalid API key ", "-1");
-	                } else if (testList.isEmpty()){
-	                    items.add("No tests", "-1");
-	                } else {
-	                    for (Map.Entry<String, String> test : testList.entrySet()) {
-	                        items.add(test.getValue(), test.getKey());
-	                    }
-	                }
-	            } catch (Exception e) {
-	                throw FormValidation.error(e.getMessage(), e);
-	            }
+                return FormValidation.ok();
+            }
+            TestIndex index = LoaderCache.getTestIndex(apiKeyValue.getPlainText());
+            if (index == null) {
+                return FormValidation.warning("Can't list the tests of this API key");
+            }
+            TestIndex.Entry test = index.get(testId);
+            if (test == null) {
+                return FormValidation.error("No active test " + testId + " for this API key");
+            }
+            return FormValidation.ok(test.title);
+        }
+
+        // the credential picked on the job, the default one if none
+        private Secret findApiKey(String apiKey) {
+            if (StringUtils.isBlank(apiKey)) {
+                apiKey = getApiKey();
             }
+            Item item = Stapler.getCurrentRequest().findAncestorObject(Item.class);
+            LoaderCredential c = CredentialIndex.get(item, apiKey);
+            return c == null ? null : c.getApiKey();
+        }
+
+        public ListBoxModel doFillPollingStrategyItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add("Adaptive (wait for the test duration, then back off)", PollingStrategy.ADAPTIVE);
+            items.add("Fixed interval", PollingStrategy.FIXED);
             return items;
         }
-        
+
         public ListBoxModel doFillApiKeyItems() {
             ListBoxModel items = new ListBoxModel();
-            Set<String> apiKeys = new HashSet<String>();
 
             Item item = Stapler.getCurrentRequest().findAncestorObject(Item.class);
-            if (item instanceof Job) {
-                List<LoaderCredential> global = CredentialsProvider
-                        .lookupCredentials(LoaderCredential.class, Jenkins.getInstance(), ACL.SYSTEM);
-                if (!global.isEmpty() && !StringUtils.isEmpty(getApiKey())) {
-                    items.add("Default API Key", "");
-                }
+            if (item instanceof Job && !StringUtils.isEmpty(getApiKey())) {
+                items.add("Default API Key", "");
             }
-            for (LoaderCredential c : CredentialsProvider
-                    .lookupCredentials(LoaderCredential.class, item, ACL.SYSTEM)) {
-                String id = c.getId();
-                if (!apiKeys.contains(id)) {
-                    items.add(StringUtils.defaultIfEmpty(c.getDescription(), id), id);
-                    apiKeys.add(id);
-                }
+            for (Map.Entry<String, LoaderCredential> c : CredentialIndex.get(item).entrySet()) {
+                items.add(StringUtils.defaultIfEmpty(c.getValue().getDescription(), c.getKey()), c.getKey());
             }
             return items;
         }
         
         public List<LoaderCredential> getCredentials(Object scope) {
-            List<LoaderCredential> result = new ArrayList<LoaderCredential>();
-            Set<String> apiKeys = new HashSet<String>();
-
             Item item = scope instanceof Item ? (Item) scope : null;
-            for (LoaderCredential c : CredentialsProvider
-                    .lookupCredentials(LoaderCredential.class, item, ACL.SYSTEM)) {
-                String id = c.getId();
-                if (!apiKeys.contains(id)) {
-                    result.add(c);
-                    apiKeys.add(id);
-                }
-            }
-            return result;
+            return new ArrayList<LoaderCredential>(CredentialIndex.get(item).values());
         }
 		
 		@Override
@@ -380,31 +629,62 @@ public class LoaderPublisher extends Notifier {
 		@Override
         public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
             apiKey = formData.optString("apiKey");
+            cacheTtl = formData.optInt("cacheTtl", LoaderCache.DEFAULT_TTL_SECONDS);
+            LoaderCache.setTtlSeconds(cacheTtl);
+            apiUrl = formData.optString("apiUrl");
+            LoaderAPI.setBaseUri(apiUrl);
             save();
             return true;
         }
+
+        public FormValidation doCheckApiUrl(@QueryParameter String value) {
+            if (StringUtils.isBlank(value)) {
+                return FormValidation.ok();
+            }
+            try {
+                URI uri = new URI(value.trim());
+                if (!"http".equals(uri.getScheme()) && !"https".equals(uri.getScheme())) {
+                    return FormValidation.error("Should be an http or https URL");
+                }
+            } catch (URISyntaxException ex) {
+                return FormValidation.error("Invalid URL: " + ex.getMessage());
+            }
+            return FormValidation.ok();
+        }
 		
 		public String getApiKey() {
-            List<LoaderCredential> credentials = CredentialsProvider
-                    .lookupCredentials(LoaderCredential.class, Jenkins.getInstance(), ACL.SYSTEM);
-            if (StringUtils.isBlank(apiKey) && !credentials.isEmpty()) {
-                return credentials.get(0).getId();
-            }
-            if (credentials.size() == 1) {
-                return credentials.get(0).getId();
+            Map<String, LoaderCredential> credentials = CredentialIndex.get(null);
+            if (credentials.isEmpty()) {
+                return "";
             }
-            for (LoaderCredential c: credentials) {
-                if (StringUtils.equals(c.getId(), apiKey)) {
-                    return apiKey;
-                }
+            if (StringUtils.isBlank(apiKey) || credentials.size() == 1) {
+                return credentials.keySet().iterator().next();
             }
             // API key is not valid any more
-            return "";
+            return credentials.containsKey(apiKey) ? apiKey : "";
         }
 		
 		public void setApiKey(String apiKey) {
 			this.apiKey = apiKey;
 	    }
+
+		public int getCacheTtl() {
+			return cacheTtl;
+		}
+
+		public void setCacheTtl(int cacheTtl) {
+			this.cacheTtl = cacheTtl;
+			LoaderCache.setTtlSeconds(cacheTtl);
+		}
+
+		public String getApiUrl() {
+			return apiUrl;
+		}
+
+		public void setApiUrl(String apiUrl) {
+			this.apiUrl = apiUrl;
+			LoaderAPI.setBaseUri(apiUrl);
+		}
 		
 	}
 
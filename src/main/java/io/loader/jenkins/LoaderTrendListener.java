@@ -0,0 +1,65 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.SummaryData;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+/**
+ * Keeps the {@link TrendIndex} of each job in line with its builds.
+ */
+@Extension
+public class LoaderTrendListener extends RunListener<AbstractBuild> {
+    private static final Logger LOGGER = Logger.getLogger(LoaderTrendListener.class.getName());
+
+    public LoaderTrendListener() {
+        super(AbstractBuild.class);
+    }
+
+    @Override
+    public void onCompleted(AbstractBuild build, TaskListener listener) {
+        record(build);
+    }
+
+    static synchronized void record(AbstractBuild<?, ?> build) {
+        TrendIndex index = null;
+        for (LoaderBuildAction action : build.getActions(LoaderBuildAction.class)) {
+            ResultSnapshot snapshot = action.getSnapshot();
+            SummaryData summary = snapshot == null ? null : snapshot.getSummary();
+            if (summary == null) {
+                continue;
+            }
+            if (index == null) {
+                index = TrendIndex.of(build.getParent());
+            }
+            try {
+                // detached tests may end around the time the build does and get here twice
+                if (index.containsRecent(build.getNumber(), action.getTestId())) {
+                    continue;
+                }
+                index.append(build.getNumber(), build.getTimeInMillis(), build.getResult(),
+                        action.getTestId(), summary);
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Can't add " + build + " to the loader.io trend", ex);
+            }
+        }
+    }
+
+    @Override
+    public void onDeleted(AbstractBuild build) {
+        if (build.getAction(LoaderBuildAction.class) == null) {
+            return;
+        }
+        try {
+            TrendIndex.of(build.getParent()).remove(build.getNumber());
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Can't remove " + build + " from the loader.io trend", ex);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.LoaderAPI;
+import io.loader.jenkins.api.PollingStrategy;
+import io.loader.jenkins.api.SummaryData;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
+import hudson.util.Secret;
+import hudson.util.StreamTaskListener;
+
+/**
+ * Starts, polls and summarizes tests on the node the build runs on, so the
+ * master only sends the configuration and gets the outcome of each test back.
+ * Snapshots, baselines and build actions stay on the master, see
+ * {@link TestRun#completeFrom(Outcome)}.
+ */
+final class RemoteTests implements Callable<List<RemoteTests.Outcome>, InterruptedException> {
+    private static final long serialVersionUID = 1L;
+
+    private final Secret apiKey;
+    // the node doesn't know the global configuration
+    private final String baseUri;
+    private final List<LoadTest> tests;
+    private final int waveSize;
+    private final PollingStrategy strategy;
+    private final TaskListener listener;
+
+    private RemoteTests(Secret apiKey, List<LoadTest> tests, int waveSize, PollingStrategy strategy,
+            TaskListener listener) {
+        this.apiKey = apiKey;
+        this.baseUri = LoaderAPI.getBaseUri();
+        this.tests = tests;
+        this.waveSize = waveSize;
+        this.strategy = strategy;
+        this.listener = listener;
+    }
+
+    /**
+     * Runs the waves through {@code channel} and completes {@code runs} with what they ended with.
+     * Runs are failed if the node goes away, their tests keep running on loader.io.
+     */
+    static void run(VirtualChannel channel, List<TestRun> runs, int waveSize, Secret apiKey,
+            PollingStrategy strategy, RunLog log) throws InterruptedException {
+        List<LoadTest> tests = new ArrayList<LoadTest>();
+        for (TestRun run : runs) {
+            tests.add(run.test);
+        }
+        // the build log is streamed back, the callable only carries the configuration
+        RemoteTests callable = new RemoteTests(apiKey, tests, waveSize, strategy,
+                new StreamTaskListener(log.getLogger()));
+        List<Outcome> outcomes;
+        try {
+            outcomes = channel.call(callable);
+        } catch (IOException ex) {
+            for (TestRun run : runs) {
+                run.fail("Lost the node polling the test, it keeps running on loader.io: " + ex);
+            }
+            return;
+        }
+        for (int i = 0; i < runs.size(); i++) {
+            runs.get(i).completeFrom(outcomes.get(i));
+        }
+    }
+
+    public List<Outcome> call() throws InterruptedException {
+        RunLog log = new RunLog(listener.getLogger());
+        boolean multiple = tests.size() > 1;
+        List<TestRun> runs = new ArrayList<TestRun>();
+        for (LoadTest test : tests) {
+            TestRun run = new TestRun(test, multiple ? log.forTest(test.getTestId()) : log);
+            run.keepTimeline();
+            runs.add(run);
+        }
+        LoaderAPI loaderApi = new LoaderAPI(apiKey == null ? null : apiKey.getPlainText(), baseUri);
+        TestWaves.run(runs, waveSize, loaderApi, strategy, log);
+        List<Outcome> outcomes = new ArrayList<Outcome>();
+        for (TestRun run : runs) {
+            outcomes.add(new Outcome(run));
+        }
+        listener.getLogger().flush();
+        return outcomes;
+    }
+
+    /**
+     * What a test ended with, before its rules are evaluated.
+     */
+    static final class Outcome implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String resultId;
+        final String failure;
+        final String abortReason;
+        final SummaryData summary;
+        // only set for a test stopped on a failure rule
+        final Result result;
+        final List<TimelineSample> timeline;
+        final long durationMillis;
+        // what the rules checked while it ran found
+        final GateEvaluator.State gate;
+
+        Outcome(TestRun run) {
+            resultId = run.resultId;
+            failure = run.failure;
+            abortReason = run.abortReason;
+            summary = run.summary;
+            result = run.result;
+            timeline = run.getTimeline();
+            durationMillis = run.durationMillis;
+            gate = run.getGateState();
+        }
+    }
+}
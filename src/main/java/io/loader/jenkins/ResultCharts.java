@@ -0,0 +1,110 @@
+package io.loader.jenkins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+/**
+ * Timeline charts of the results saved with a build, each point the value of the
+ * interval since the previous sample. Each chart is rendered once
+ * and kept next to the snapshot, later views only read the PNG.
+ */
+final class ResultCharts {
+    static final String RESPONSE_TIME = LoaderProjectAction.RESPONSE_TIME;
+    static final String ERROR_RATE = LoaderProjectAction.ERROR_RATE;
+    static final int WIDTH = 800;
+    static final int HEIGHT = 300;
+
+    private ResultCharts() {
+    }
+
+    /**
+     * The chart of {@code metric} for the snapshot saved in {@code snapshotFile},
+     * rendered unless an up to date one is saved already.
+     */
+    static File chart(File snapshotFile, ResultSnapshot snapshot, String metric) throws IOException {
+        String name = snapshotFile.getName();
+        if (name.endsWith(".snapshot")) {
+            name = name.substring(0, name.length() - ".snapshot".length());
+        }
+        File png = new File(snapshotFile.getParentFile(), name + "." + metric + ".png");
+        if (png.length() > 0 && png.lastModified() >= snapshotFile.lastModified()) {
+            return png;
+        }
+        byte[] rendered = render(snapshot, metric);
+        // concurrent views render the same bytes, the last rename wins
+        File tmp = File.createTempFile(name, ".tmp", snapshotFile.getParentFile());
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(rendered);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(png)) {
+                png.delete();
+                if (!tmp.renameTo(png)) {
+                    throw new IOException("Can't save " + png);
+                }
+            }
+        } finally {
+            tmp.delete();
+        }
+        return png;
+    }
+
+    static byte[] render(ResultSnapshot snapshot, String metric) throws IOException {
+        return Charts.toPng(createChart(metric, buildDataset(metric, snapshot)), WIDTH, HEIGHT);
+    }
+
+    private static XYSeriesCollection buildDataset(String metric, ResultSnapshot snapshot) {
+        XYSeriesCollection dataset = new XYSeriesCollection();
+        if (RESPONSE_TIME.equals(metric)) {
+            XYSeries average = new XYSeries("average");
+            XYSeries p99 = new XYSeries("p99");
+            TimelineSample previous = null;
+            for (TimelineSample sample : snapshot.getTimeline()) {
+                double seconds = sample.elapsedMillis / 1000.0;
+                addIfKnown(average, seconds, sample.avgResponseTimeSince(previous));
+                if (sample.p99ResponseTime >= 0) {
+                    p99.add(seconds, sample.p99ResponseTime);
+                }
+                previous = sample;
+            }
+            dataset.addSeries(average);
+            if (p99.getItemCount() > 0) {
+                dataset.addSeries(p99);
+            }
+        } else {
+            XYSeries errors = new XYSeries("errors");
+            TimelineSample previous = null;
+            for (TimelineSample sample : snapshot.getTimeline()) {
+                addIfKnown(errors, sample.elapsedMillis / 1000.0, sample.errorRateSince(previous));
+                previous = sample;
+            }
+            dataset.addSeries(errors);
+        }
+        return dataset;
+    }
+
+    private static void addIfKnown(XYSeries series, double seconds, double value) {
+        if (!Double.isNaN(value)) {
+            series.add(seconds, value);
+        }
+    }
+
+    private static JFreeChart createChart(String metric, XYSeriesCollection dataset) {
+        String unit = RESPONSE_TIME.equals(metric) ? "ms" : "%";
+        JFreeChart chart = ChartFactory.createXYLineChart(null, "seconds", unit, dataset,
+                PlotOrientation.VERTICAL, true, false, false);
+        Charts.style(chart);
+        return chart;
+    }
+}
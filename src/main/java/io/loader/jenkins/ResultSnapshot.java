@@ -0,0 +1,113 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.SummaryData;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Results of one test run kept in the build directory, so reports don't need
+ * loader.io. The file is memory mapped and only the parts asked for are decoded.
+ *
+ * Layout, big endian:
+ * <pre>
+ * header    magic "LDIO", version, offset of the summary (0 while the test runs)
+ * timeline  one {@link #SAMPLE_SIZE} bytes record per {@link TimelineSample}, appended as they come
+ * summary   {@link SummaryData#writeTo}, appended once the test has ended
+ * </pre>
+ */
+public class ResultSnapshot {
+    static final int MAGIC = 0x4c44494f;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 16;
+    static final int SUMMARY_OFFSET_POSITION = 8;
+    static final int SAMPLE_SIZE = 32;
+
+    private final ByteBuffer buffer;
+    private final int sampleCount;
+    private final int summaryOffset;
+    private SummaryData summary;
+
+    private ResultSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a loader.io result snapshot");
+        }
+        // samples of other versions are laid out differently
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version " + buffer.getInt(4));
+        }
+        long offset = buffer.getLong(SUMMARY_OFFSET_POSITION);
+        if (offset < 0 || offset > buffer.limit()) {
+            throw new IOException("Corrupt snapshot header");
+        }
+        summaryOffset = (int) offset;
+        // an unfinished file only has samples, whole ones unless the build died mid-write
+        int timelineEnd = summaryOffset > 0 ? summaryOffset : buffer.limit();
+        sampleCount = (timelineEnd - HEADER_SIZE) / SAMPLE_SIZE;
+    }
+
+    /**
+     * Maps the snapshot read only. The mapping stays valid after the file is closed.
+     */
+    public static ResultSnapshot open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ResultSnapshot(mapped);
+        } finally {
+            raf.close();
+        }
+    }
+
+    public boolean isComplete() {
+        return summaryOffset > 0;
+    }
+
+    /**
+     * @return the final summary, {@code null} if the test didn't finish
+     */
+    public synchronized SummaryData getSummary() {
+        if (summary == null && isComplete()) {
+            ByteBuffer in = buffer.duplicate();
+            in.position(summaryOffset);
+            summary = SummaryData.readFrom(in);
+        }
+        return summary;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public TimelineSample getSample(int index) {
+        if (index < 0 || index >= sampleCount) {
+            throw new IndexOutOfBoundsException("Sample " + index + " of " + sampleCount);
+        }
+        int at = HEADER_SIZE + index * SAMPLE_SIZE;
+        return new TimelineSample(buffer.getInt(at), buffer.getLong(at + 4), buffer.getLong(at + 12),
+                buffer.getLong(at + 20), buffer.getInt(at + 28));
+    }
+
+    /**
+     * Samples are decoded on access, nothing is copied up front.
+     */
+    public List<TimelineSample> getTimeline() {
+        return new AbstractList<TimelineSample>() {
+            public TimelineSample get(int index) {
+                return getSample(index);
+            }
+
+            public int size() {
+                return sampleCount;
+            }
+        };
+    }
+}
@@ -0,0 +1,33 @@
+package io.loader.jenkins;
+
+import java.io.PrintStream;
+
+/**
+ * Build log writer that tags lines with the plugin name and, when several
+ * tests run in one step, with the test they belong to.
+ */
+final class RunLog {
+    private final PrintStream logger;
+    private final String prefix;
+
+    RunLog(PrintStream logger) {
+        this(logger, "");
+    }
+
+    private RunLog(PrintStream logger, String prefix) {
+        this.logger = logger;
+        this.prefix = prefix;
+    }
+
+    RunLog forTest(String testId) {
+        return new RunLog(logger, "[" + testId + "] ");
+    }
+
+    void info(String str) {
+        logger.println("loader.io: " + prefix + str);
+    }
+
+    PrintStream getLogger() {
+        return logger;
+    }
+}
@@ -0,0 +1,88 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.SummaryData;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Appends to a {@link ResultSnapshot} file while the test runs.
+ */
+class SnapshotWriter {
+    private final File file;
+    private DataOutputStream out;
+    private long written;
+
+    private SnapshotWriter(File file) throws IOException {
+        this.file = file;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        out.writeInt(ResultSnapshot.MAGIC);
+        out.writeInt(ResultSnapshot.VERSION);
+        out.writeLong(0);
+        out.flush();
+        written = ResultSnapshot.HEADER_SIZE;
+    }
+
+    static SnapshotWriter create(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        return new SnapshotWriter(file);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    void append(TimelineSample sample) throws IOException {
+        out.writeInt(sample.elapsedMillis);
+        out.writeLong(sample.requests);
+        out.writeLong(sample.errors);
+        out.writeLong(sample.responseTimeSum);
+        out.writeInt(sample.p99ResponseTime);
+        // readers only see whole records
+        out.flush();
+        written += ResultSnapshot.SAMPLE_SIZE;
+    }
+
+    /**
+     * Appends the summary and points the header at it, which marks the snapshot complete.
+     */
+    void finish(SummaryData summary) throws IOException {
+        long summaryOffset = written;
+        summary.writeTo(out);
+        out.close();
+        out = null;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(ResultSnapshot.SUMMARY_OFFSET_POSITION);
+            raf.writeLong(summaryOffset);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Gives up on the snapshot, for runs that produced no result.
+     */
+    void discard() {
+        close();
+        file.delete();
+    }
+
+    void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                // nothing left to save
+            }
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.ApiFuture;
+import io.loader.jenkins.api.ApiMetrics;
+import io.loader.jenkins.api.LatencyHistogram;
+import io.loader.jenkins.api.LoaderAPI;
+import io.loader.jenkins.api.PollingStrategy;
+import io.loader.jenkins.api.StatusPoller;
+import io.loader.jenkins.api.SummaryData;
+import io.loader.jenkins.api.TestData;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import hudson.model.Result;
+
+/**
+ * State of one {@link LoadTest} within a build: started, waited on, summarized
+ * and evaluated against its rules.
+ */
+class TestRun {
+    // how long to keep asking for the summary once the test has finished
+    static final long RESULTS_TIMEOUT_MS = 60 * 1000L;
+    // how often interim results are added to the snapshot timeline
+    static final long TIMELINE_INTERVAL_MS = Long.getLong(TestRun.class.getName() + ".timelineInterval", 10 * 1000L);
+
+    final LoadTest test;
+    final RunLog log;
+    // account the run is started under, null for the one of its wave
+    LoaderAPI account;
+
+    String resultId;
+    StatusPoller.Watch watch;
+    TestData testInfo;
+    SummaryData summary;
+    Result result;
+    // set when the API could not run the test to the end
+    String failure;
+    // set when the test was stopped early on a failure rule that kept holding
+    String abortReason;
+    // how long the test ran, for rates the rules work out from totals
+    long durationMillis;
+    private final GateEvaluator gate;
+    private final FailFastMonitor failFast;
+    private SnapshotWriter snapshot;
+    // interim results kept in memory instead, for runs polled away from the build directory
+    private List<TimelineSample> timeline;
+    // prior successful runs to compare with, null unless the test uses a baseline
+    private Baseline baseline;
+    private File baselineFile;
+    private long startedAt;
+    private long nextSampleAt;
+    // distribution of the last sample, for the percentiles of the next interval; null if it had none
+    private LatencyHistogram sampledHistogram = new LatencyHistogram();
+
+    TestRun(LoadTest test, RunLog log) {
+        this.test = test;
+        this.log = log;
+        this.gate = new GateEvaluator(test.getGatingRules());
+        this.failFast = test.isFailFast() ? new FailFastMonitor(test.getFailFastWindow() * 1000L) : null;
+    }
+
+    String getTestId() {
+        return test.getTestId();
+    }
+
+    /**
+     * Keeps the timeline and the summary of this run in {@code file}.
+     */
+    void recordTo(File file) {
+        try {
+            snapshot = SnapshotWriter.create(file);
+        } catch (IOException ex) {
+            log.info("Can't save results locally: " + ex);
+        }
+    }
+
+    /**
+     * Keeps the timeline in memory, for {@link #getTimeline()}.
+     */
+    void keepTimeline() {
+        timeline = new ArrayList<TimelineSample>();
+    }
+
+    List<TimelineSample> getTimeline() {
+        return timeline;
+    }
+
+    GateEvaluator.State getGateState() {
+        return gate.getState();
+    }
+
+    /**
+     * Takes over what a copy of this run polled elsewhere ended with: its
+     * timeline is added to the snapshot, rules are evaluated here with what
+     * those checked while it ran found.
+     */
+    void completeFrom(RemoteTests.Outcome outcome) {
+        resultId = outcome.resultId;
+        failure = outcome.failure;
+        abortReason = outcome.abortReason;
+        summary = outcome.summary;
+        result = outcome.result;
+        durationMillis = outcome.durationMillis;
+        gate.takeOver(outcome.gate);
+        if (snapshot != null && outcome.timeline != null) {
+            for (TimelineSample sample : outcome.timeline) {
+                addSample(sample);
+            }
+        }
+    }
+
+    /**
+     * Compares this run with the baseline kept in {@code file}, and adds it there if it succeeds.
+     */
+    void compareWith(File file) {
+        baselineFile = file;
+        try {
+            baseline = Baseline.load(file);
+        } catch (IOException ex) {
+            log.info("Can't read baseline, starting a new one: " + ex);
+        }
+    }
+
+    /**
+     * Adds a successful run to the baseline of its test.
+     */
+    void updateBaseline(int buildNumber) {
+        if (baselineFile == null || summary == null || failure != null || result != Result.SUCCESS) {
+            return;
+        }
+        try {
+            Baseline.record(baselineFile, test.getBaselineBuilds(), buildNumber, summary);
+        } catch (IOException ex) {
+            log.info("Can't update baseline: " + ex);
+        }
+    }
+
+    /**
+     * Asks loader.io to start the test, {@link #start(LoaderAPI, PollingStrategy, ApiFuture)}
+     * waits for the answer. The tests of a wave are all asked before any answer is read.
+     */
+    ApiFuture<String> requestStart(LoaderAPI loaderApi) {
+        return loaderApi.runTestAsync(getTestId());
+    }
+
+    boolean start(LoaderAPI loaderApi, PollingStrategy strategy, ApiFuture<String> request)
+            throws InterruptedException {
+        try {
+            resultId = request.get();
+        } catch (ExecutionException ex) {
+            log.info("Error while starting test: " + ex.getCause());
+        }
+        startedAt = System.currentTimeMillis();
+        if (resultId == null) {
+            fail(withReason("Invalid test information", loaderApi));
+            return false;
+        }
+        log.info("Test started, result " + resultId);
+        // polling is shared with every other build waiting on this test
+        watch = StatusPoller.get().watch(loaderApi, getTestId(), strategy);
+        return true;
+    }
+
+    long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * Takes over what copies of this run under other accounts ended with, their
+     * results combined into those of one run. If one of them was stopped on a
+     * failure rule so was this one; if another couldn't run to the end neither
+     * could this one. A rule checked while they ran holds here if it held for any.
+     */
+    void completeFrom(List<TestRun> parts) {
+        resultId = parts.get(0).resultId;
+        for (TestRun part : parts) {
+            gate.takeOver(part.gate.getState());
+            durationMillis = Math.max(durationMillis, part.durationMillis);
+        }
+        for (TestRun part : parts) {
+            // the others were stopped along with it and failed
+            if (part.isAborted() && part.failure == null) {
+                abortReason = part.getTestId() + ": " + part.abortReason;
+                summary = part.summary;
+                result = Result.FAILURE;
+                return;
+            }
+        }
+        List<SummaryData> summaries = new ArrayList<SummaryData>();
+        for (TestRun part : parts) {
+            if (part.failure != null) {
+                failure = part.getTestId() + ": " + part.failure;
+                return;
+            }
+            summaries.add(part.summary);
+        }
+        summary = SummaryData.merge(summaries);
+    }
+
+    boolean isWaiting() {
+        return watch != null && failure == null && abortReason == null && testInfo == null;
+    }
+
+    boolean isAborted() {
+        return abortReason != null;
+    }
+
+    /**
+     * Fetches the interim results on every call for a test with rules over a window
+     * or a fail-fast test, which is stopped through the API once a failure rule has
+     * held for the whole breach window. The timeline samples those results; other
+     * tests only fetch them when a sample is due, and only if they chart the timeline.
+     *
+     * @return whether the test was stopped
+     */
+    boolean pollInterimResults(LoaderAPI loaderApi) {
+        if (!isWaiting()) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        boolean checked = failFast != null || gate.isWindowed();
+        boolean sampleDue = (snapshot != null || timeline != null) && (checked || test.isTimeline())
+                && now >= nextSampleAt;
+        if (!checked && !sampleDue) {
+            return false;
+        }
+        SummaryData interim = loaderApi.getTestSummaryData(getTestId(), resultId);
+        if (interim == null || !interim.hasMetrics) {
+            return false;
+        }
+        if (sampleDue) {
+            nextSampleAt = now + TIMELINE_INTERVAL_MS;
+            addSample(TimelineSample.of((int) (now - startedAt), interim, sampledHistogram));
+            sampledHistogram = interim.histogram;
+        }
+        String holding = gate.offer(now - startedAt, interim);
+        String breach = failFast == null ? null : failFast.offer(now, holding);
+        if (breach == null) {
+            return false;
+        }
+        abort(loaderApi, "Stopping test: " + breach);
+        summary = interim;
+        result = Result.FAILURE;
+        return true;
+    }
+
+    private void addSample(TimelineSample sample) {
+        if (timeline != null) {
+            timeline.add(sample);
+        }
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            snapshot.append(sample);
+        } catch (IOException ex) {
+            log.info("Can't save results locally: " + ex);
+            snapshot.discard();
+            snapshot = null;
+        }
+    }
+
+    void abort(LoaderAPI loaderApi, String reason) {
+        abortReason = reason;
+        log.info(reason);
+        stopWaiting();
+        if (!loaderApi.stopTest(getTestId())) {
+            log.info("API didn't stop the test, it keeps running on loader.io");
+        }
+    }
+
+    /**
+     * Gives up on a test the API keeps reporting as running well past its duration.
+     */
+    boolean isOverdue(int waited) {
+        TestData lastStatus = watch.getLastStatus();
+        return lastStatus != null && lastStatus.duration > 0 && (lastStatus.duration + 60) < waited;
+    }
+
+    void finishWaiting() throws InterruptedException {
+        try {
+            testInfo = watch.get();
+        } catch (ExecutionException ex) {
+            log.info("Error while polling test status: " + ex.getCause());
+        }
+        if (testInfo == null) {
+            fail("API return invalid test information");
+            return;
+        }
+        durationMillis = testInfo.duration > 0 ? testInfo.duration * 1000L : System.currentTimeMillis() - startedAt;
+    }
+
+    void stopWaiting() {
+        if (watch != null) {
+            watch.cancel(false);
+        }
+    }
+
+    /**
+     * Tells the build log and the metrics how many status polls the run waited through.
+     */
+    void reportPolls() {
+        if (watch == null) {
+            return;
+        }
+        ApiMetrics.get().runPolled(watch.getPolls());
+        log.info("Polled test status " + watch.getPolls() + " times, " + watch.getWastedPolls()
+                + " of them while it was still running");
+    }
+
+    // results are aggregated shortly after the test ends, ask until they are ready
+    void waitForSummary(LoaderAPI loaderApi, PollingStrategy strategy) throws InterruptedException {
+        PollingStrategy.Schedule schedule = strategy.newSchedule();
+        long started = System.currentTimeMillis();
+        while (true) {
+            SummaryData data = loaderApi.getTestSummaryData(getTestId(), resultId);
+            if (data != null && data.isReady()) {
+                summary = data;
+                return;
+            }
+            long waited = System.currentTimeMillis() - started;
+            if (waited > RESULTS_TIMEOUT_MS) {
+                fail(withReason("API doesn't return test summary", loaderApi));
+                return;
+            }
+            log.info("Waiting for test summary " + (waited / 1000) + " sec");
+            Thread.sleep(schedule.nextDelay(testInfo.duration * 1000L + waited, testInfo));
+        }
+    }
+
+    /**
+     * Completes the snapshot with the summary, or drops it if the run has none.
+     *
+     * @return the snapshot file, {@code null} if nothing was saved
+     */
+    File finishSnapshot() {
+        if (snapshot == null) {
+            return null;
+        }
+        SnapshotWriter writer = snapshot;
+        snapshot = null;
+        if (failure != null || summary == null) {
+            writer.discard();
+            return null;
+        }
+        try {
+            writer.finish(summary);
+            return writer.getFile();
+        } catch (IOException ex) {
+            log.info("Can't save results locally: " + ex);
+            writer.discard();
+            return null;
+        }
+    }
+
+    void evaluate() {
+        result = gate.evaluate(summary, durationMillis, log);
+        if (baseline != null) {
+            result = LoadTest.worst(result, baseline.compare(summary, test.getBaselineTolerance(), log));
+        }
+    }
+
+    // an open circuit explains the failure better than the missing data
+    static String withReason(String failure, LoaderAPI loaderApi) {
+        String reason = loaderApi.getUnavailableReason();
+        return reason == null ? failure : failure + ": " + reason;
+    }
+
+    void fail(String reason) {
+        failure = reason;
+        log.info(reason);
+        stopWaiting();
+    }
+}
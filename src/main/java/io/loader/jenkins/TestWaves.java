@@ -0,0 +1,133 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.ApiFuture;
+import io.loader.jenkins.api.ApiMetrics;
+import io.loader.jenkins.api.LoaderAPI;
+import io.loader.jenkins.api.PollingStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The start, poll and summary cycle of the tests of one {@link LoaderPublisher}.
+ * Doesn't touch the build or the publisher, so it can run on the build's node,
+ * see {@link RemoteTests}.
+ */
+final class TestWaves {
+    // how often the build log is told we are still waiting
+    static final int LOG_INTERVAL = 5;
+
+    private TestWaves() {
+    }
+
+    /**
+     * Starts, waits on and summarizes the tests wave after wave, stopping at the first wave
+     * with a test stopped on a failure rule.
+     */
+    static void run(List<TestRun> runs, int waveSize, LoaderAPI loaderApi, PollingStrategy strategy,
+            RunLog log) throws InterruptedException {
+        boolean multiple = runs.size() > 1;
+        int wave = waveSize > 0 ? waveSize : runs.size();
+        boolean aborted = false;
+        for (int from = 0; from < runs.size(); from += wave) {
+            List<TestRun> batch = runs.subList(from, Math.min(runs.size(), from + wave));
+            if (aborted) {
+                for (TestRun run : batch) {
+                    run.fail("Not started, another test was stopped on a failure rule");
+                }
+                continue;
+            }
+            if (multiple) {
+                log.info("Starting " + batch.size() + " of " + runs.size() + " tests");
+            }
+            aborted = runWave(loaderApi, strategy, batch, log);
+        }
+    }
+
+    /**
+     * Starts every test of the wave, waits for all of them and collects their summaries.
+     *
+     * @return whether a fail-fast test was stopped, in which case the rest of the wave was stopped too
+     */
+    private static boolean runWave(LoaderAPI loaderApi, PollingStrategy strategy, List<TestRun> runs, RunLog log)
+            throws InterruptedException {
+        ApiMetrics.get().runsStarted(runs.size());
+        try {
+            // asked all at once, the tests of a wave start within a request of each other
+            List<ApiFuture<String>> starts = new ArrayList<ApiFuture<String>>(runs.size());
+            for (TestRun run : runs) {
+                starts.add(run.requestStart(api(run, loaderApi)));
+            }
+            for (int i = 0; i < runs.size(); i++) {
+                runs.get(i).start(api(runs.get(i), loaderApi), strategy, starts.get(i));
+            }
+            boolean aborted = awaitRuns(loaderApi, runs, log);
+            for (TestRun run : runs) {
+                if (run.isAborted()) {
+                    continue;
+                }
+                if (run.failure == null) {
+                    run.waitForSummary(api(run, loaderApi), strategy);
+                }
+            }
+            return aborted;
+        } finally {
+            for (TestRun run : runs) {
+                run.stopWaiting();
+                run.reportPolls();
+            }
+            ApiMetrics.get().runsFinished(runs.size());
+        }
+    }
+
+    // runs under another account than the wave's call loader.io with their own key
+    private static LoaderAPI api(TestRun run, LoaderAPI loaderApi) {
+        return run.account != null ? run.account : loaderApi;
+    }
+
+    private static boolean awaitRuns(LoaderAPI loaderApi, List<TestRun> runs, RunLog log) throws InterruptedException {
+        long started = System.currentTimeMillis();
+        while (true) {
+            for (TestRun run : runs) {
+                if (run.pollInterimResults(api(run, loaderApi))) {
+                    // the build fails anyway, don't burn credits on the other tests
+                    for (TestRun other : runs) {
+                        if (other.isWaiting()) {
+                            other.abort(api(other, loaderApi),
+                                    "Stopping test, " + run.getTestId() + " breached a failure rule");
+                            other.failure = other.abortReason;
+                        }
+                    }
+                    return true;
+                }
+            }
+            int waited = (int) ((System.currentTimeMillis() - started) / 1000);
+            TestRun next = null;
+            for (TestRun run : runs) {
+                if (!run.isWaiting()) {
+                    continue;
+                }
+                if (run.watch.isDone()) {
+                    run.finishWaiting();
+                } else if (run.isOverdue(waited)) {
+                    run.fail("API doesn't return test results");
+                } else if (next == null) {
+                    next = run;
+                }
+            }
+            if (next == null) {
+                return false;
+            }
+            try {
+                next.watch.get(LOG_INTERVAL, TimeUnit.SECONDS);
+            } catch (TimeoutException ex) {
+                log.info("Waiting for test results " + waited + " sec");
+            } catch (ExecutionException ex) {
+                // reported by finishWaiting()
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.LatencyHistogram;
+import io.loader.jenkins.api.SummaryData;
+
+import java.io.Serializable;
+
+/**
+ * Running totals of a test at one of its interim results, taken while the build
+ * waits on it. Interim results add up from the start of the test, the values of
+ * the interval between two samples are worked out from the difference of their
+ * totals, as {@link GateEvaluator} does for windows.
+ */
+public class TimelineSample implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    // since the test was started
+    public final int elapsedMillis;
+    // since the test was started, -1 when loader.io didn't report them
+    public final long requests;
+    public final long errors;
+    // of the response times of those requests, in ms
+    public final long responseTimeSum;
+    // of the requests since the previous sample, -1 without distributions to take it from
+    public final int p99ResponseTime;
+
+    public TimelineSample(int elapsedMillis, long requests, long errors, long responseTimeSum,
+            int p99ResponseTime) {
+        this.elapsedMillis = elapsedMillis;
+        this.requests = requests;
+        this.errors = errors;
+        this.responseTimeSum = responseTimeSum;
+        this.p99ResponseTime = p99ResponseTime;
+    }
+
+    /**
+     * @param previous distribution of the previous sample, an empty one for the start
+     *        of the test, {@code null} if it had none
+     */
+    static TimelineSample of(int elapsedMillis, SummaryData interim, LatencyHistogram previous) {
+        boolean counted = interim.successCount >= 0 && interim.errorCount >= 0;
+        long requests = counted ? interim.successCount + interim.errorCount : -1;
+        int p99 = -1;
+        if (interim.histogram != null && previous != null) {
+            LatencyHistogram interval = new LatencyHistogram();
+            interval.add(interim.histogram);
+            interval.subtract(previous);
+            if (!interval.isEmpty()) {
+                p99 = (int) interval.getValueAtPercentile(99);
+            }
+        }
+        return new TimelineSample(elapsedMillis, requests, counted ? interim.errorCount : -1,
+                counted ? (long) interim.avgResponseTime * requests : -1, p99);
+    }
+
+    /**
+     * Average response time of the requests since {@code previous}, since the start
+     * of the test if it is {@code null}; {@link Double#NaN} if none were counted.
+     */
+    public double avgResponseTimeSince(TimelineSample previous) {
+        long count = requestsSince(previous);
+        return count > 0 ? (responseTimeSum - (previous == null ? 0 : previous.responseTimeSum)) / (double) count
+                : Double.NaN;
+    }
+
+    /**
+     * Percentage of errors among the requests since {@code previous}, as {@link #avgResponseTimeSince}.
+     */
+    public double errorRateSince(TimelineSample previous) {
+        long count = requestsSince(previous);
+        return count > 0 ? (errors - (previous == null ? 0 : previous.errors)) * 100.0 / count : Double.NaN;
+    }
+
+    // -1 unless both counts are known
+    private long requestsSince(TimelineSample previous) {
+        if (requests < 0 || (previous != null && previous.requests < 0)) {
+            return -1;
+        }
+        return requests - (previous == null ? 0 : previous.requests);
+    }
+
+    public String toString() {
+        return String.format("#<TimelineSample elapsed: %d, requests: %d, errors: %d>",
+                elapsedMillis, requests, errors);
+    }
+}
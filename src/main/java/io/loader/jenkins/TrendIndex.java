@@ -0,0 +1,182 @@
+package io.loader.jenkins;
+
+import io.loader.jenkins.api.SummaryData;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import hudson.model.Job;
+import hudson.model.Result;
+
+/**
+ * Per job file with one fixed size record per test and build, appended when a
+ * build completes. Trends are read from here instead of loading every build.
+ *
+ * Record layout, {@link #RECORD_SIZE} bytes, big endian: build number, start
+ * time, result, test id (length and ASCII), average, p90, p95 and p99 response
+ * times, error rate, requests per second, padding.
+ */
+class TrendIndex {
+    static final String FILE_NAME = "loaderio-trend.idx";
+    static final int RECORD_SIZE = 80;
+    static final int TEST_ID_SIZE = 38;
+    static final int RECENT_RECORDS = 256;
+
+    private static final String[] RESULTS = { "SUCCESS", "UNSTABLE", "FAILURE", "NOT_BUILT" };
+
+    // all index files share one lock, appends are rare and short
+    private static final Object lock = new Object();
+
+    private final File file;
+
+    TrendIndex(File file) {
+        this.file = file;
+    }
+
+    static TrendIndex of(Job<?, ?> job) {
+        return new TrendIndex(new File(job.getRootDir(), FILE_NAME));
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Changes whenever a record is added or removed.
+     */
+    long getVersion() {
+        synchronized (lock) {
+            return file.length() * 31 + file.lastModified();
+        }
+    }
+
+    long getLastModified() {
+        return file.lastModified();
+    }
+
+    /**
+     * Whether a test of a build is among the last records. Builds are indexed
+     * when they complete, so a test is only ever looked for near the end.
+     */
+    boolean containsRecent(int buildNumber, String testId) throws IOException {
+        for (TrendPoint point : read(RECENT_RECORDS)) {
+            if (point.buildNumber == buildNumber && point.testId.equals(testId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void append(int buildNumber, long timestamp, Result result, String testId, SummaryData summary)
+            throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(buildNumber);
+        record.putLong(timestamp);
+        record.put(resultCode(result));
+        byte[] id = testId.getBytes("US-ASCII");
+        int length = Math.min(id.length, TEST_ID_SIZE);
+        record.put((byte) length);
+        record.put(id, 0, length);
+        record.position(4 + 8 + 1 + 1 + TEST_ID_SIZE);
+        record.putInt(summary.avgResponseTime);
+        record.putInt(summary.p90ResponseTime);
+        record.putInt(summary.p95ResponseTime);
+        record.putInt(summary.p99ResponseTime);
+        record.putFloat((float) summary.avgErrorRate);
+        record.putFloat((float) summary.requestsPerSecond);
+        synchronized (lock) {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                // a torn record from a crash is overwritten rather than shifting every later one
+                long end = raf.length() / RECORD_SIZE * RECORD_SIZE;
+                raf.seek(end);
+                raf.write(record.array());
+                raf.setLength(end + RECORD_SIZE);
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * Drops the records of a deleted build, rewriting the file.
+     */
+    void remove(int buildNumber) throws IOException {
+        synchronized (lock) {
+            if (!file.exists()) {
+                return;
+            }
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                byte[] all = new byte[(int) (raf.length() / RECORD_SIZE * RECORD_SIZE)];
+                raf.readFully(all);
+                ByteBuffer in = ByteBuffer.wrap(all);
+                int kept = 0;
+                for (int at = 0; at < all.length; at += RECORD_SIZE) {
+                    if (in.getInt(at) != buildNumber) {
+                        System.arraycopy(all, at, all, kept, RECORD_SIZE);
+                        kept += RECORD_SIZE;
+                    }
+                }
+                if (kept < all.length) {
+                    raf.seek(0);
+                    raf.write(all, 0, kept);
+                    raf.setLength(kept);
+                }
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * @return the last {@code max} records, oldest first
+     */
+    List<TrendPoint> read(int max) throws IOException {
+        byte[] tail;
+        synchronized (lock) {
+            if (!file.exists()) {
+                return new ArrayList<TrendPoint>();
+            }
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                long records = raf.length() / RECORD_SIZE;
+                long first = Math.max(0, records - max);
+                tail = new byte[(int) ((records - first) * RECORD_SIZE)];
+                raf.seek(first * RECORD_SIZE);
+                raf.readFully(tail);
+            } finally {
+                raf.close();
+            }
+        }
+        List<TrendPoint> points = new ArrayList<TrendPoint>(tail.length / RECORD_SIZE);
+        ByteBuffer in = ByteBuffer.wrap(tail);
+        while (in.remaining() >= RECORD_SIZE) {
+            int start = in.position();
+            int buildNumber = in.getInt();
+            long timestamp = in.getLong();
+            int code = in.get();
+            int length = Math.min(in.get() & 0xff, TEST_ID_SIZE);
+            String testId = new String(tail, in.position(), length, "US-ASCII");
+            in.position(start + 4 + 8 + 1 + 1 + TEST_ID_SIZE);
+            points.add(new TrendPoint(buildNumber, timestamp,
+                    code >= 0 && code < RESULTS.length ? RESULTS[code] : RESULTS[3], testId,
+                    in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getFloat(), in.getFloat()));
+            in.position(start + RECORD_SIZE);
+        }
+        return points;
+    }
+
+    private static byte resultCode(Result result) {
+        for (byte i = 0; i < RESULTS.length; i++) {
+            if (result != null && RESULTS[i].equals(result.toString())) {
+                return i;
+            }
+        }
+        return 3;
+    }
+}
@@ -0,0 +1,65 @@
+package io.loader.jenkins;
+
+/**
+ * Results of one test in one build, as kept in the {@link TrendIndex}.
+ */
+public class TrendPoint {
+    public final int buildNumber;
+    public final long timestamp;
+    public final String result;
+    public final String testId;
+    public final int avgResponseTime;
+    // -1 when loader.io didn't report them
+    public final int p90ResponseTime;
+    public final int p95ResponseTime;
+    public final int p99ResponseTime;
+    public final float avgErrorRate;
+    public final float requestsPerSecond;
+
+    TrendPoint(int buildNumber, long timestamp, String result, String testId, int avgResponseTime,
+            int p90ResponseTime, int p95ResponseTime, int p99ResponseTime,
+            float avgErrorRate, float requestsPerSecond) {
+        this.buildNumber = buildNumber;
+        this.timestamp = timestamp;
+        this.result = result;
+        this.testId = testId;
+        this.avgResponseTime = avgResponseTime;
+        this.p90ResponseTime = p90ResponseTime;
+        this.p95ResponseTime = p95ResponseTime;
+        this.p99ResponseTime = p99ResponseTime;
+        this.avgErrorRate = avgErrorRate;
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public String getTestId() {
+        return testId;
+    }
+
+    public int getAvgResponseTime() {
+        return avgResponseTime;
+    }
+
+    public int getP95ResponseTime() {
+        return p95ResponseTime;
+    }
+
+    public int getP99ResponseTime() {
+        return p99ResponseTime;
+    }
+
+    public float getAvgErrorRate() {
+        return avgErrorRate;
+    }
+
+    public float getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+}
@@ -0,0 +1,135 @@
+package io.loader.jenkins.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pending result of an asynchronous {@link LoaderAPI} call. Listeners let
+ * callers react to it without keeping a thread waiting.
+ */
+public class ApiFuture<T> implements Future<T> {
+    private static final Logger LOGGER = Logger.getLogger(ApiFuture.class.getName());
+
+    private final List<Runnable> listeners = new ArrayList<Runnable>();
+    private boolean done;
+    private boolean cancelled;
+    private T value;
+    private Throwable error;
+
+    /**
+     * Runs {@code listener} once the call is done, right away if it already is.
+     * Listeners run on the thread completing the call and must not block.
+     */
+    public void addListener(Runnable listener) {
+        synchronized (this) {
+            if (!done) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    boolean set(T value) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.value = value;
+            done = true;
+            notifyAll();
+        }
+        fireListeners();
+        return true;
+    }
+
+    boolean setException(Throwable error) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.error = error;
+            done = true;
+            notifyAll();
+        }
+        fireListeners();
+        return true;
+    }
+
+    /**
+     * Abandons the call; a request already on the wire still completes but its result is dropped.
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            cancelled = true;
+            done = true;
+            notifyAll();
+        }
+        fireListeners();
+        return true;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return report();
+    }
+
+    public synchronized T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return value;
+    }
+
+    private void fireListeners() {
+        List<Runnable> toRun;
+        synchronized (this) {
+            toRun = new ArrayList<Runnable>(listeners);
+            listeners.clear();
+        }
+        // one failing listener must neither keep the others from running nor fail the call
+        for (Runnable listener : toRun) {
+            try {
+                listener.run();
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Listener " + listener + " of a loader.io call failed", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package io.loader.jenkins.api;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Rate limit and circuit breaker of one API key, shared by every build using it.
+ */
+class ApiKeyGuard {
+    static final String PROPERTY_PREFIX = LoaderAPI.class.getName() + ".";
+
+    static final double REQUESTS_PER_SECOND = Double.parseDouble(System.getProperty(PROPERTY_PREFIX + "requestsPerSecond", "5"));
+    static final int BURST = Integer.getInteger(PROPERTY_PREFIX + "burst", 10);
+    static final int FAILURE_THRESHOLD = Integer.getInteger(PROPERTY_PREFIX + "failureThreshold", 5);
+    static final long OPEN_MILLIS = Integer.getInteger(PROPERTY_PREFIX + "circuitOpenSeconds", 30) * 1000L;
+
+    private static final ConcurrentMap<String, ApiKeyGuard> guards = new ConcurrentHashMap<String, ApiKeyGuard>();
+
+    final TokenBucket bucket = new TokenBucket(REQUESTS_PER_SECOND, BURST);
+    final CircuitBreaker breaker = new CircuitBreaker(FAILURE_THRESHOLD, OPEN_MILLIS);
+
+    static ApiKeyGuard forKey(String apiKey) {
+        String key = apiKey == null ? "" : apiKey;
+        ApiKeyGuard guard = guards.get(key);
+        if (guard == null) {
+            guard = new ApiKeyGuard();
+            ApiKeyGuard existing = guards.putIfAbsent(key, guard);
+            if (existing != null) {
+                guard = existing;
+            }
+        }
+        return guard;
+    }
+}
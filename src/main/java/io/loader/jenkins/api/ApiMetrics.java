@@ -0,0 +1,369 @@
+package io.loader.jenkins.api;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters of the calls made to the loader.io API and of the polling of running
+ * tests, for the whole JVM and since it started. Published over JMX under
+ * {@code io.loader.jenkins:type=ApiMetrics} and as Prometheus text by
+ * {@link #writeText(Writer)}; rates are left to whatever reads them.
+ */
+public final class ApiMetrics implements ApiMetricsMXBean {
+    private static final Logger LOGGER = Logger.getLogger(ApiMetrics.class.getName());
+
+    public static final String OBJECT_NAME = "io.loader.jenkins:type=ApiMetrics";
+
+    // upper bounds of the buckets of the text format: milliseconds, polls per run
+    static final long[] LATENCY_BOUNDS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+    static final long[] POLL_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500};
+
+    public static final Endpoint APPS = new Endpoint("apps");
+    public static final Endpoint TESTS = new Endpoint("tests");
+    public static final Endpoint TEST = new Endpoint("test");
+    public static final Endpoint UPDATE = new Endpoint("update");
+    public static final Endpoint RUN = new Endpoint("run");
+    public static final Endpoint STOP = new Endpoint("stop");
+    public static final Endpoint RESULTS = new Endpoint("results");
+
+    static final List<Endpoint> ENDPOINTS = Collections.unmodifiableList(Arrays.asList(APPS, TESTS, TEST, UPDATE, RUN,
+            STOP, RESULTS));
+
+    private static final ApiMetrics INSTANCE = new ApiMetrics();
+
+    private final AtomicInteger inFlightRuns = new AtomicInteger();
+    private final AtomicLong statusPolls = new AtomicLong();
+    private final AtomicLong wastedStatusPolls = new AtomicLong();
+    // status polls each run waited through, guarded by itself
+    private final LatencyHistogram pollsPerRun = new LatencyHistogram();
+    private long pollsPerRunSum;
+
+    private ApiMetrics() {
+    }
+
+    public static ApiMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Publishes the totals and one bean per endpoint on the platform MBean server.
+     * Does nothing for the beans already there.
+     */
+    public static void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(server, INSTANCE, new ObjectName(OBJECT_NAME));
+            for (Endpoint endpoint : ENDPOINTS) {
+                register(server, endpoint, new ObjectName(OBJECT_NAME + ",endpoint=" + endpoint.name));
+            }
+        } catch (JMException ex) {
+            LOGGER.log(Level.WARNING, "Can't publish the loader.io metrics over JMX", ex);
+        }
+    }
+
+    private static void register(MBeanServer server, Object bean, ObjectName name) throws JMException {
+        try {
+            server.registerMBean(bean, name);
+        } catch (InstanceAlreadyExistsException ex) {
+            // registered by an earlier start of the plugin in this JVM
+        }
+    }
+
+    public void runsStarted(int runs) {
+        inFlightRuns.addAndGet(runs);
+    }
+
+    public void runsFinished(int runs) {
+        inFlightRuns.addAndGet(-runs);
+    }
+
+    /**
+     * Counts a status poll, wasted when the test was still running: an ideal
+     * schedule would only ask once, right after the test ended.
+     */
+    void statusPolled(boolean wasted) {
+        statusPolls.incrementAndGet();
+        if (wasted) {
+            wastedStatusPolls.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records how many status polls a run waited through before it stopped waiting.
+     */
+    public void runPolled(int polls) {
+        synchronized (pollsPerRun) {
+            pollsPerRun.record(polls);
+            pollsPerRunSum += polls;
+        }
+    }
+
+    public long getRequests() {
+        long total = 0;
+        for (Endpoint endpoint : ENDPOINTS) {
+            total += endpoint.requests.get();
+        }
+        return total;
+    }
+
+    public long getErrors() {
+        long total = 0;
+        for (Endpoint endpoint : ENDPOINTS) {
+            total += endpoint.errors.get();
+        }
+        return total;
+    }
+
+    public long getRetries() {
+        long total = 0;
+        for (Endpoint endpoint : ENDPOINTS) {
+            total += endpoint.retries.get();
+        }
+        return total;
+    }
+
+    public long getThrottled() {
+        long total = 0;
+        for (Endpoint endpoint : ENDPOINTS) {
+            total += endpoint.throttled.get();
+        }
+        return total;
+    }
+
+    public long getRejected() {
+        long total = 0;
+        for (Endpoint endpoint : ENDPOINTS) {
+            total += endpoint.rejected.get();
+        }
+        return total;
+    }
+
+    public int getInFlightRuns() {
+        return inFlightRuns.get();
+    }
+
+    public int getPolledTests() {
+        return StatusPoller.get().getActiveTests();
+    }
+
+    public long getStatusPolls() {
+        return statusPolls.get();
+    }
+
+    public long getWastedStatusPolls() {
+        return wastedStatusPolls.get();
+    }
+
+    public long getCacheHits() {
+        long total = 0;
+        for (RefreshingCache<?, ?> cache : LoaderCache.getCaches().values()) {
+            total += cache.getHits();
+        }
+        return total;
+    }
+
+    public long getCacheMisses() {
+        long total = 0;
+        for (RefreshingCache<?, ?> cache : LoaderCache.getCaches().values()) {
+            total += cache.getMisses();
+        }
+        return total;
+    }
+
+    public double getCacheHitRate() {
+        long hits = getCacheHits();
+        long lookups = hits + getCacheMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format, version 0.0.4.
+     */
+    public void writeText(Writer out) throws IOException {
+        header(out, "loaderio_api_requests_total", "counter", "Requests sent to the loader.io API, retries included.");
+        for (Endpoint endpoint : ENDPOINTS) {
+            sample(out, "loaderio_api_requests_total", endpoint.label(), endpoint.requests.get());
+        }
+        header(out, "loaderio_api_errors_total", "counter", "Requests that failed: network errors, unreadable answers and HTTP errors other than 429.");
+        for (Endpoint endpoint : ENDPOINTS) {
+            sample(out, "loaderio_api_errors_total", endpoint.label(), endpoint.errors.get());
+        }
+        header(out, "loaderio_api_throttled_total", "counter", "Requests answered with HTTP 429.");
+        for (Endpoint endpoint : ENDPOINTS) {
+            sample(out, "loaderio_api_throttled_total", endpoint.label(), endpoint.throttled.get());
+        }
+        header(out, "loaderio_api_retries_total", "counter", "Requests sent again after a failed attempt.");
+        for (Endpoint endpoint : ENDPOINTS) {
+            sample(out, "loaderio_api_retries_total", endpoint.label(), endpoint.retries.get());
+        }
+        header(out, "loaderio_api_rejected_total", "counter", "Calls not sent because of the rate limit or an open circuit breaker.");
+        for (Endpoint endpoint : ENDPOINTS) {
+            sample(out, "loaderio_api_rejected_total", endpoint.label(), endpoint.rejected.get());
+        }
+        header(out, "loaderio_api_request_duration_seconds", "histogram", "Time until the answer of a request was read.");
+        for (Endpoint endpoint : ENDPOINTS) {
+            synchronized (endpoint) {
+                histogram(out, "loaderio_api_request_duration_seconds", endpoint.label(), endpoint.latency,
+                        LATENCY_BOUNDS, 1000.0, endpoint.latencySum);
+            }
+        }
+
+        header(out, "loaderio_runs_in_flight", "gauge", "Tests started by builds and not finished yet.");
+        sample(out, "loaderio_runs_in_flight", null, inFlightRuns.get());
+        header(out, "loaderio_polled_tests", "gauge", "Tests whose status is being polled, shared by every build waiting on them.");
+        sample(out, "loaderio_polled_tests", null, getPolledTests());
+        header(out, "loaderio_status_polls_total", "counter", "Status requests made for running tests.");
+        sample(out, "loaderio_status_polls_total", null, statusPolls.get());
+        header(out, "loaderio_status_polls_wasted_total", "counter", "Status requests that found the test still running.");
+        sample(out, "loaderio_status_polls_wasted_total", null, wastedStatusPolls.get());
+        header(out, "loaderio_run_status_polls", "histogram", "Status polls each run waited through.");
+        synchronized (pollsPerRun) {
+            histogram(out, "loaderio_run_status_polls", null, pollsPerRun, POLL_BOUNDS, 1, pollsPerRunSum);
+        }
+
+        Map<String, HttpClientPool.Stats> pools = HttpClientPool.getAllStats();
+        header(out, "loaderio_http_connections", "gauge", "Open connections kept by the pool of an API endpoint.");
+        for (Map.Entry<String, HttpClientPool.Stats> pool : pools.entrySet()) {
+            sample(out, "loaderio_http_connections", "endpoint=\"" + pool.getKey() + "\"", pool.getValue().connections);
+        }
+        header(out, "loaderio_http_connections_max", "gauge", "Connections the pool of an API endpoint may open.");
+        for (Map.Entry<String, HttpClientPool.Stats> pool : pools.entrySet()) {
+            sample(out, "loaderio_http_connections_max", "endpoint=\"" + pool.getKey() + "\"", pool.getValue().maxTotal);
+        }
+
+        Map<String, RefreshingCache<?, ?>> caches = LoaderCache.getCaches();
+        header(out, "loaderio_cache_hits_total", "counter", "Lookups answered from the cache, stale ones included.");
+        for (Map.Entry<String, RefreshingCache<?, ?>> cache : caches.entrySet()) {
+            sample(out, "loaderio_cache_hits_total", "cache=\"" + cache.getKey() + "\"", cache.getValue().getHits());
+        }
+        header(out, "loaderio_cache_misses_total", "counter", "Lookups that waited on the API.");
+        for (Map.Entry<String, RefreshingCache<?, ?>> cache : caches.entrySet()) {
+            sample(out, "loaderio_cache_misses_total", "cache=\"" + cache.getKey() + "\"", cache.getValue().getMisses());
+        }
+    }
+
+    private static void header(Writer out, String name, String type, String help) throws IOException {
+        out.write("# HELP " + name + " " + help + "\n");
+        out.write("# TYPE " + name + " " + type + "\n");
+    }
+
+    private static void sample(Writer out, String name, String labels, Object value) throws IOException {
+        out.write(labels == null ? name : name + "{" + labels + "}");
+        out.write(" " + value + "\n");
+    }
+
+    // cumulative buckets, bounds and sum divided by scale
+    private static void histogram(Writer out, String name, String labels, LatencyHistogram histogram, long[] bounds,
+            double scale, long sum) throws IOException {
+        String prefix = labels == null ? "" : labels + ",";
+        for (long bound : bounds) {
+            sample(out, name + "_bucket", prefix + "le=\"" + number(bound / scale) + "\"", histogram.getCountAtOrBelow(bound));
+        }
+        sample(out, name + "_bucket", prefix + "le=\"+Inf\"", histogram.getTotalCount());
+        sample(out, name + "_sum", labels, number(sum / scale));
+        sample(out, name + "_count", labels, histogram.getTotalCount());
+    }
+
+    private static String number(double value) {
+        if (value == Math.rint(value)) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * Calls made to one API endpoint, counted per attempt: a call retried twice
+     * is three requests and two retries.
+     */
+    public static final class Endpoint implements EndpointMetricsMXBean {
+        final String name;
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong throttled = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        // guarded by this
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private long latencySum;
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        void requested(long millis, boolean error, boolean wasThrottled) {
+            requests.incrementAndGet();
+            if (error) {
+                errors.incrementAndGet();
+            }
+            if (wasThrottled) {
+                throttled.incrementAndGet();
+            }
+            synchronized (this) {
+                latency.record(millis);
+                latencySum += millis;
+            }
+        }
+
+        void retried() {
+            retries.incrementAndGet();
+        }
+
+        void rejected() {
+            rejected.incrementAndGet();
+        }
+
+        String label() {
+            return "endpoint=\"" + name + "\"";
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getRequests() {
+            return requests.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public long getRetries() {
+            return retries.get();
+        }
+
+        public long getThrottled() {
+            return throttled.get();
+        }
+
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        public synchronized long getLatencyMedian() {
+            return latency.getValueAtPercentile(50);
+        }
+
+        public synchronized long getLatency99thPercentile() {
+            return latency.getValueAtPercentile(99);
+        }
+
+        public synchronized long getLatencyMax() {
+            return latency.getMax();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package io.loader.jenkins.api;
+
+/**
+ * JVM-wide totals of {@link ApiMetrics}, per endpoint figures are in {@link EndpointMetricsMXBean}.
+ */
+public interface ApiMetricsMXBean {
+
+    long getRequests();
+
+    long getErrors();
+
+    long getRetries();
+
+    long getThrottled();
+
+    long getRejected();
+
+    int getInFlightRuns();
+
+    int getPolledTests();
+
+    long getStatusPolls();
+
+    long getWastedStatusPolls();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    /**
+     * Share of cache lookups answered without calling the API, 0..1.
+     */
+    double getCacheHitRate();
+}
@@ -0,0 +1,134 @@
+package io.loader.jenkins.api;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Saves the requests {@link LoaderAPI} instances send and what they were answered,
+ * with their timing, to a gzipped file {@link ApiReplay} can serve them back from.
+ * Every attempt is saved, network errors included; API keys aren't.
+ *
+ * Bodies are read whole before they are decoded, only while recording. A recorder
+ * that can't write gives up quietly, the calls go on unrecorded.
+ */
+public final class ApiRecorder implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(ApiRecorder.class.getName());
+
+    static final int MAGIC = 0x4c494f52;
+    static final int VERSION = 1;
+
+    private final File file;
+    private final long startedAt = System.currentTimeMillis();
+    private DataOutputStream out;
+    private int exchanges;
+
+    private ApiRecorder(File file) throws IOException {
+        this.file = file;
+        out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(startedAt);
+    }
+
+    public static ApiRecorder create(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        return new ApiRecorder(file);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized int getExchanges() {
+        return exchanges;
+    }
+
+    /**
+     * Saves an answered request. The body of the response is read here and put
+     * back in memory, so that the caller decodes it as usual.
+     *
+     * @throws IOException if the body can't be read, nothing is saved then
+     */
+    HttpResponse record(long sentAt, String method, String path, String body, HttpResponse response)
+            throws IOException {
+        HttpEntity entity = response.getEntity();
+        byte[] content = entity == null ? null : EntityUtils.toByteArray(entity);
+        if (content != null) {
+            response.setEntity(new ByteArrayEntity(content));
+        }
+        Header retryAfter = response.getFirstHeader("Retry-After");
+        write(sentAt, method, path, body, response.getStatusLine().getStatusCode(),
+                retryAfter == null ? null : retryAfter.getValue(), content);
+        return response;
+    }
+
+    /**
+     * Saves a request that got no answer.
+     */
+    void recordError(long sentAt, String method, String path, String body) {
+        write(sentAt, method, path, body, ApiReplay.NETWORK_ERROR, null, null);
+    }
+
+    private synchronized void write(long sentAt, String method, String path, String body, int code,
+            String retryAfter, byte[] content) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeInt((int) (sentAt - startedAt));
+            out.writeInt((int) (System.currentTimeMillis() - sentAt));
+            out.writeUTF(method);
+            out.writeUTF(path);
+            writeBytes(body == null ? null : body.getBytes("UTF-8"));
+            out.writeInt(code);
+            out.writeUTF(retryAfter == null ? "" : retryAfter);
+            writeBytes(content);
+            // whole records only reach the compressor
+            out.flush();
+            exchanges++;
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Can't record API calls to " + file + ", recording stopped", ex);
+            close();
+        }
+    }
+
+    // -1 for none
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Completes the file. Calls made afterwards aren't recorded.
+     */
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Can't complete " + file, ex);
+            }
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package io.loader.jenkins.api;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+
+/**
+ * Answers {@link LoaderAPI} requests from an {@link ApiRecorder} file instead of loader.io,
+ * so that a build can be run again offline.
+ *
+ * Requests are matched on method, path and body. With a speed above 0 the recording
+ * plays on a clock started by the first request and running {@code speed} times as
+ * fast as the original, each request gets the latest answer recorded for it by then
+ * and answers take their recorded time, likewise scaled: a test reported running for
+ * a minute is done after 6 seconds at speed 10. At speed 0 every request gets the
+ * next answer recorded for it, at once. A request asked more often than it was
+ * recorded keeps getting the last answer, one never recorded gets a network error.
+ */
+public final class ApiReplay {
+    private static final Logger LOGGER = Logger.getLogger(ApiReplay.class.getName());
+
+    // recorded as the status of requests that got no answer
+    static final int NETWORK_ERROR = 0;
+
+    private final List<Exchange> exchanges;
+    private final Map<String, List<Exchange>> byRequest = new HashMap<String, List<Exchange>>();
+    // next answer of each request
+    private final Map<String, Integer> served = new HashMap<String, Integer>();
+    private final double speed;
+    // when the first request was replayed, 0 before
+    private long startedAt;
+
+    public ApiReplay(List<Exchange> exchanges, double speed) {
+        this.exchanges = Collections.unmodifiableList(new ArrayList<Exchange>(exchanges));
+        this.speed = Math.max(0, speed);
+        for (Exchange exchange : exchanges) {
+            String key = key(exchange.method, exchange.path, exchange.body);
+            List<Exchange> answers = byRequest.get(key);
+            if (answers == null) {
+                answers = new ArrayList<Exchange>();
+                byRequest.put(key, answers);
+            }
+            answers.add(exchange);
+        }
+    }
+
+    /**
+     * Reads a recording. One cut short, e.g. by a crash, is read up to where it ends.
+     */
+    public static List<Exchange> read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+        List<Exchange> exchanges = new ArrayList<Exchange>();
+        try {
+            if (in.readInt() != ApiRecorder.MAGIC) {
+                throw new IOException(file + " is not a recording of loader.io API calls");
+            }
+            int version = in.readInt();
+            if (version > ApiRecorder.VERSION) {
+                throw new IOException(file + " was recorded by a newer version, " + version);
+            }
+            in.readLong();
+            while (true) {
+                Exchange exchange = new Exchange();
+                try {
+                    exchange.sentAtMillis = in.readInt();
+                } catch (EOFException ex) {
+                    break;
+                }
+                try {
+                    exchange.latencyMillis = in.readInt();
+                    exchange.method = in.readUTF();
+                    exchange.path = in.readUTF();
+                    byte[] body = readBytes(in);
+                    exchange.body = body == null ? null : new String(body, "UTF-8");
+                    exchange.code = in.readInt();
+                    exchange.retryAfter = in.readUTF();
+                    exchange.content = readBytes(in);
+                } catch (EOFException ex) {
+                    LOGGER.fine(file + " ends within a call, " + exchanges.size() + " read");
+                    break;
+                }
+                exchanges.add(exchange);
+            }
+        } catch (EOFException ex) {
+            throw new IOException(file + " is empty");
+        } catch (IOException ex) {
+            // a truncated gzip stream, keep what was read
+            if (exchanges.isEmpty()) {
+                throw ex;
+            }
+            LOGGER.log(Level.FINE, file + " is cut short, " + exchanges.size() + " calls read", ex);
+        } finally {
+            in.close();
+        }
+        return exchanges;
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    public List<Exchange> getExchanges() {
+        return exchanges;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * The recorded exchange answering a request, {@code null} if it was never recorded.
+     */
+    Exchange next(String method, String path, String body) {
+        return next(key(method, path, body));
+    }
+
+    /**
+     * How long to wait before answering with {@code exchange}: its recorded time, scaled
+     * to the speed of the replay.
+     */
+    long delayOf(Exchange exchange) {
+        if (exchange == null || speed == 0) {
+            return 0;
+        }
+        return (long) (exchange.latencyMillis / speed);
+    }
+
+    /**
+     * The answer recorded in {@code exchange}, right away.
+     *
+     * @throws IOException if it got none or the request was never recorded
+     */
+    static HttpResponse answer(Exchange exchange, String method, String path) throws IOException {
+        if (exchange == null) {
+            throw new IOException("Not in the recording: " + method + " " + path);
+        }
+        if (exchange.code == NETWORK_ERROR) {
+            throw new IOException("Recorded without an answer");
+        }
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, exchange.code, null);
+        if (exchange.retryAfter.length() > 0) {
+            response.addHeader("Retry-After", exchange.retryAfter);
+        }
+        if (exchange.content != null) {
+            response.setEntity(new ByteArrayEntity(exchange.content));
+        }
+        return response;
+    }
+
+    private static String key(String method, String path, String body) {
+        return method + " " + path + (body == null ? "" : " " + body);
+    }
+
+    private synchronized Exchange next(String key) {
+        List<Exchange> answers = byRequest.get(key);
+        if (answers == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (startedAt == 0) {
+            startedAt = now;
+        }
+        Integer next = served.get(key);
+        int index = next == null ? 0 : next;
+        if (speed > 0) {
+            // answers recorded before this time on the replay clock are overtaken
+            long clock = exchanges.get(0).sentAtMillis + (long) ((now - startedAt) * speed);
+            while (index + 1 < answers.size() && answers.get(index + 1).sentAtMillis <= clock) {
+                index++;
+            }
+        }
+        index = Math.min(index, answers.size() - 1);
+        served.put(key, index + 1);
+        return answers.get(index);
+    }
+
+    /**
+     * One recorded request and its answer.
+     */
+    public static final class Exchange {
+        // since the recording started
+        int sentAtMillis;
+        int latencyMillis;
+        String method;
+        String path;
+        // JSON sent, null for none
+        String body;
+        // NETWORK_ERROR if there was no answer
+        int code;
+        // empty if not sent
+        String retryAfter;
+        // null for no body
+        byte[] content;
+
+        public int getSentAtMillis() {
+            return sentAtMillis;
+        }
+
+        public int getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public int getContentLength() {
+            return content == null ? 0 : content.length;
+        }
+    }
+}
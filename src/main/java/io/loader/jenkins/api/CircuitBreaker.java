@@ -0,0 +1,97 @@
+package io.loader.jenkins.api;
+
+/**
+ * Stops calling the API for a while once it failed several times in a row, so
+ * an outage gives one clear message instead of every build timing out on it.
+ * After the pause a single call is let through to probe the API.
+ */
+class CircuitBreaker {
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private int failures;
+    private String lastFailure;
+    private long openUntil;
+    private boolean probing;
+
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    enum Permit {
+        DENIED,
+        GRANTED,
+        // the one call let through to see if the API is back, see endProbe()
+        PROBE
+    }
+
+    /**
+     * @return whether a call may go out now, and whether it is the probe
+     */
+    synchronized Permit allowRequest() {
+        if (failures < failureThreshold) {
+            return Permit.GRANTED;
+        }
+        if (System.currentTimeMillis() < openUntil || probing) {
+            return Permit.DENIED;
+        }
+        probing = true;
+        return Permit.PROBE;
+    }
+
+    /**
+     * Lets another call probe the API, to call once the probe is over however it ended.
+     * A probe that got no answer either way leaves the breaker open as it was.
+     */
+    synchronized void endProbe() {
+        probing = false;
+    }
+
+    /**
+     * The API asked to be called again no earlier than {@code time}: while open, the
+     * next probe waits for it.
+     */
+    synchronized void retryAt(long time) {
+        if (failures >= failureThreshold) {
+            openUntil = Math.max(openUntil, time);
+            probing = false;
+        }
+    }
+
+    synchronized void recordSuccess() {
+        failures = 0;
+        lastFailure = null;
+        probing = false;
+    }
+
+    synchronized void recordFailure(String reason) {
+        failures++;
+        lastFailure = reason;
+        if (failures >= failureThreshold) {
+            // a failed probe opens it again for a whole period
+            openUntil = System.currentTimeMillis() + openMillis;
+            probing = false;
+        }
+    }
+
+    synchronized boolean isOpen() {
+        return failures >= failureThreshold;
+    }
+
+    /**
+     * @return why calls are being held back, {@code null} while the API is considered up
+     */
+    synchronized String getOpenReason() {
+        if (failures < failureThreshold) {
+            return null;
+        }
+        long wait = Math.max(0, openUntil - System.currentTimeMillis()) / 1000;
+        return String.format("loader.io API unavailable after %d failed calls in a row (last: %s), next attempt in %d sec",
+                failures, lastFailure, wait);
+    }
+
+    synchronized long getOpenUntil() {
+        return openUntil;
+    }
+}
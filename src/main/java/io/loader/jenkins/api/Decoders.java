@@ -0,0 +1,348 @@
+package io.loader.jenkins.api;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Streaming decoders for the loader.io API responses.
+ */
+final class Decoders {
+    static final JsonFactory jsonFactory = new JsonFactory();
+
+    private Decoders() {
+    }
+
+    // [{"test_id": "...", "name": "...", "domain": "..."}, ...]
+    static final ResponseDecoder<List<TestIndex.Entry>> TESTS = new ResponseDecoder<List<TestIndex.Entry>>() {
+        public List<TestIndex.Entry> decode(JsonParser parser) throws IOException {
+            expect(parser, JsonToken.START_ARRAY);
+            List<TestIndex.Entry> tests = new ArrayList<TestIndex.Entry>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String id = null;
+                String name = null;
+                String domain = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("test_id".equals(field)) {
+                        id = text(parser);
+                    } else if ("name".equals(field)) {
+                        name = text(parser);
+                    } else if ("domain".equals(field)) {
+                        domain = text(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (id != null) {
+                    tests.add(new TestIndex.Entry(id, name, domain));
+                }
+            }
+            return tests;
+        }
+    };
+
+    // test id to title
+    static final ResponseDecoder<Map<String, String>> TEST_LIST = new ResponseDecoder<Map<String, String>>() {
+        public Map<String, String> decode(JsonParser parser) throws IOException {
+            Map<String, String> tests = new HashMap<String, String>();
+            for (TestIndex.Entry test : TESTS.decode(parser)) {
+                tests.put(test.id, test.title);
+            }
+            return tests;
+        }
+    };
+
+    // only checks that the body is a list, elements are skipped
+    static final ResponseDecoder<Integer> LIST_SIZE = new ResponseDecoder<Integer>() {
+        public Integer decode(JsonParser parser) throws IOException {
+            expect(parser, JsonToken.START_ARRAY);
+            int size = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (parser.getCurrentToken() == null) {
+                    throw new JsonParseException("Unexpected end of list", parser.getCurrentLocation());
+                }
+                parser.skipChildren();
+                size++;
+            }
+            return size;
+        }
+    };
+
+    static final ResponseDecoder<TestData> TEST_DATA = new ResponseDecoder<TestData>() {
+        public TestData decode(JsonParser parser) throws IOException {
+            expect(parser, JsonToken.START_OBJECT);
+            TestData data = new TestData();
+            boolean hasDuration = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (skipStructure(parser)) {
+                    continue;
+                }
+                if ("test_id".equals(field)) {
+                    data.testId = text(parser);
+                } else if ("status".equals(field)) {
+                    data.status = text(parser);
+                } else if ("duration".equals(field)) {
+                    data.duration = parser.getValueAsInt();
+                    hasDuration = true;
+                } else if ("initial".equals(field)) {
+                    data.initial = parser.getValueAsInt(-1);
+                } else if ("total".equals(field)) {
+                    data.total = parser.getValueAsInt(-1);
+                }
+            }
+            require(parser, data.testId, "test_id");
+            require(parser, data.status, "status");
+            require(parser, hasDuration ? "" : null, "duration");
+            return data;
+        }
+    };
+
+    // every field but the averages is optional, see SummaryData
+    static final ResponseDecoder<SummaryData> SUMMARY_DATA = new ResponseDecoder<SummaryData>() {
+        public SummaryData decode(JsonParser parser) throws IOException {
+            expect(parser, JsonToken.START_OBJECT);
+            SummaryData data = new SummaryData();
+            boolean hasResponseTime = false;
+            boolean hasErrorRate = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                if ("response_time_histogram".equals(field) && token == JsonToken.START_ARRAY) {
+                    data.histogram = histogram(parser);
+                    continue;
+                }
+                if (skipStructure(parser)) {
+                    continue;
+                }
+                if ("avg_response_time".equals(field)) {
+                    data.avgResponseTime = parser.getValueAsInt();
+                    hasResponseTime = true;
+                } else if ("avg_error_rate".equals(field)) {
+                    data.avgErrorRate = parser.getValueAsDouble();
+                    hasErrorRate = true;
+                } else if ("status".equals(field)) {
+                    data.status = text(parser);
+                } else if ("min_response_time".equals(field)) {
+                    data.minResponseTime = parser.getValueAsInt();
+                } else if ("max_response_time".equals(field)) {
+                    data.maxResponseTime = parser.getValueAsInt();
+                } else if ("p50_response_time".equals(field)) {
+                    data.p50ResponseTime = parser.getValueAsInt();
+                } else if ("p90_response_time".equals(field)) {
+                    data.p90ResponseTime = parser.getValueAsInt();
+                } else if ("p95_response_time".equals(field)) {
+                    data.p95ResponseTime = parser.getValueAsInt();
+                } else if ("p99_response_time".equals(field)) {
+                    data.p99ResponseTime = parser.getValueAsInt();
+                } else if ("requests_per_second".equals(field)) {
+                    data.requestsPerSecond = parser.getValueAsDouble();
+                } else if ("success".equals(field)) {
+                    data.successCount = parser.getValueAsLong();
+                } else if ("error".equals(field)) {
+                    data.errorCount = parser.getValueAsLong();
+                } else if ("timeout_error".equals(field)) {
+                    data.timeouts = parser.getValueAsLong();
+                } else if ("network_error".equals(field)) {
+                    data.networkErrors = parser.getValueAsLong();
+                } else if ("data_sent".equals(field)) {
+                    data.dataSent = parser.getValueAsLong();
+                } else if ("data_received".equals(field)) {
+                    data.dataReceived = parser.getValueAsLong();
+                }
+            }
+            if (data.isReady()) {
+                require(parser, hasResponseTime ? "" : null, "avg_response_time");
+                require(parser, hasErrorRate ? "" : null, "avg_error_rate");
+            }
+            data.hasMetrics = hasResponseTime && hasErrorRate;
+            data.fillFromHistogram();
+            return data;
+        }
+    };
+
+    // [[response_time_ms, count], ...], straight into the histogram
+    static LatencyHistogram histogram(JsonParser parser) throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        while (parser.nextToken() == JsonToken.START_ARRAY) {
+            parser.nextToken();
+            long value = parser.getValueAsLong();
+            parser.nextToken();
+            long count = parser.getValueAsLong();
+            if (parser.nextToken() != JsonToken.END_ARRAY) {
+                throw new JsonParseException("Expected [response_time, count]", parser.getCurrentLocation());
+            }
+            histogram.record(value, count);
+        }
+        if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+            throw new JsonParseException("Unexpected end of histogram", parser.getCurrentLocation());
+        }
+        return histogram;
+    }
+
+    // any JSON object, content is skipped
+    static final ResponseDecoder<Boolean> OBJECT = new ResponseDecoder<Boolean>() {
+        public Boolean decode(JsonParser parser) throws IOException {
+            expect(parser, JsonToken.START_OBJECT);
+            parser.skipChildren();
+            return Boolean.TRUE;
+        }
+    };
+
+    // {"message": "success", "result_id": "..."}
+    static final ResponseDecoder<String> RESULT_ID = stringField("result_id");
+
+    // {"message":"error","errors":["wrong api key(xxx)"]}
+    static final ResponseDecoder<List<String>> ERRORS = new ResponseDecoder<List<String>>() {
+        public List<String> decode(JsonParser parser) throws IOException {
+            expect(parser, JsonToken.START_OBJECT);
+            List<String> errors = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("errors".equals(field) && token == JsonToken.START_ARRAY) {
+                    errors = new ArrayList<String>();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        if (parser.getCurrentToken() == null) {
+                            throw new JsonParseException("Unexpected end of errors", parser.getCurrentLocation());
+                        }
+                        errors.add(text(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            require(parser, errors, "errors");
+            return errors;
+        }
+    };
+
+    /**
+     * Re-serializes the body as compact JSON text. Only used by the methods that
+     * still hand out whole {@code net.sf.json} trees.
+     */
+    static final ResponseDecoder<String> TEXT = new ResponseDecoder<String>() {
+        public String decode(JsonParser parser) throws IOException {
+            StringWriter out = new StringWriter();
+            JsonGenerator generator = jsonFactory.createJsonGenerator(out);
+            if (parser.nextToken() != null) {
+                copy(parser, generator);
+            }
+            generator.close();
+            return out.toString();
+        }
+    };
+
+    static ResponseDecoder<String> stringField(final String name) {
+        return new ResponseDecoder<String>() {
+            public String decode(JsonParser parser) throws IOException {
+                expect(parser, JsonToken.START_OBJECT);
+                String value = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if (name.equals(field)) {
+                        value = text(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                require(parser, value, name);
+                return value;
+            }
+        };
+    }
+
+    static void expect(JsonParser parser, JsonToken expected) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token != expected) {
+            throw new JsonParseException("Expected " + expected + " but got " + token, parser.getCurrentLocation());
+        }
+    }
+
+    static void require(JsonParser parser, Object value, String field) throws IOException {
+        if (value == null) {
+            throw new JsonParseException("Missing field " + field, parser.getCurrentLocation());
+        }
+    }
+
+    // null for anything but a scalar, a structure is skipped
+    static String text(JsonParser parser) throws IOException {
+        if (skipStructure(parser) || parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return parser.getText();
+    }
+
+    /**
+     * Skips the object or array the parser is at, where a field should have had a
+     * plain value; reading a number from it would leave the parser inside it.
+     *
+     * @return whether there was one
+     */
+    static boolean skipStructure(JsonParser parser) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return true;
+        }
+        return false;
+    }
+
+    private static void copy(JsonParser parser, JsonGenerator generator) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        switch (token) {
+        case START_OBJECT:
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                generator.writeFieldName(parser.getCurrentName());
+                parser.nextToken();
+                copy(parser, generator);
+            }
+            generator.writeEndObject();
+            break;
+        case START_ARRAY:
+            generator.writeStartArray();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (parser.getCurrentToken() == null) {
+                    throw new JsonParseException("Unexpected end of list", parser.getCurrentLocation());
+                }
+                copy(parser, generator);
+            }
+            generator.writeEndArray();
+            break;
+        case VALUE_STRING:
+            generator.writeString(parser.getText());
+            break;
+        case VALUE_NUMBER_INT:
+            generator.writeNumber(parser.getLongValue());
+            break;
+        case VALUE_NUMBER_FLOAT:
+            generator.writeNumber(parser.getDoubleValue());
+            break;
+        case VALUE_TRUE:
+            generator.writeBoolean(true);
+            break;
+        case VALUE_FALSE:
+            generator.writeBoolean(false);
+            break;
+        default:
+            generator.writeNull();
+        }
+    }
+}
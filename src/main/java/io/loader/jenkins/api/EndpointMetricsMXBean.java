@@ -0,0 +1,25 @@
+package io.loader.jenkins.api;
+
+/**
+ * Calls made to one loader.io endpoint, see {@link ApiMetrics.Endpoint}.
+ */
+public interface EndpointMetricsMXBean {
+
+    String getName();
+
+    long getRequests();
+
+    long getErrors();
+
+    long getRetries();
+
+    long getThrottled();
+
+    long getRejected();
+
+    long getLatencyMedian();
+
+    long getLatency99thPercentile();
+
+    long getLatencyMax();
+}
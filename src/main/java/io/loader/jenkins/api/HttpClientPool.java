@@ -0,0 +1,203 @@
+package io.loader.jenkins.api;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Process-wide pool of keep-alive HTTP connections, one per API endpoint.
+ *
+ * Every {@link LoaderAPI} instance talking to the same endpoint shares a single
+ * thread-safe client, so builds, config pages and credential checks reuse open
+ * TCP connections (and with them the TLS sessions cached by the default
+ * SSL context) instead of paying a handshake per request.
+ *
+ * Sizes and timeouts can be tuned with system properties, e.g.
+ * {@code -Dio.loader.jenkins.api.HttpClientPool.maxTotal=100}.
+ */
+public final class HttpClientPool {
+    static final String PROPERTY_PREFIX = HttpClientPool.class.getName() + ".";
+
+    static final int MAX_TOTAL = Integer.getInteger(PROPERTY_PREFIX + "maxTotal", 40);
+    static final int MAX_PER_ROUTE = Integer.getInteger(PROPERTY_PREFIX + "maxPerRoute", 20);
+    static final int CONNECT_TIMEOUT_MS = Integer.getInteger(PROPERTY_PREFIX + "connectTimeout", 10 * 1000);
+    static final int READ_TIMEOUT_MS = Integer.getInteger(PROPERTY_PREFIX + "readTimeout", 30 * 1000);
+    static final long KEEP_ALIVE_MS = Long.getLong(PROPERTY_PREFIX + "keepAlive", 60 * 1000L);
+    static final long IDLE_TIMEOUT_MS = Long.getLong(PROPERTY_PREFIX + "idleTimeout", 30 * 1000L);
+    static final long EVICTION_INTERVAL_MS = 10 * 1000L;
+
+    private static final ConcurrentMap<String, HttpClientPool> pools = new ConcurrentHashMap<String, HttpClientPool>();
+
+    private static final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "loader.io idle connection evictor");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final String endpoint;
+    private final ThreadSafeClientConnManager connectionManager;
+    private final DefaultHttpClient client;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile ScheduledFuture<?> eviction;
+
+    private HttpClientPool(String endpoint) {
+        this.endpoint = endpoint;
+        connectionManager = new ThreadSafeClientConnManager(SchemeRegistryFactory.createDefault(),
+                KEEP_ALIVE_MS, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(MAX_TOTAL);
+        connectionManager.setDefaultMaxPerRoute(MAX_PER_ROUTE);
+
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT_MS);
+        HttpConnectionParams.setSoTimeout(params, READ_TIMEOUT_MS);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        HttpConnectionParams.setTcpNoDelay(params, true);
+
+        client = new DefaultHttpClient(connectionManager, params);
+        client.setKeepAliveStrategy(new KeepAliveStrategy());
+    }
+
+    /**
+     * Returns the shared pool for the given API base URI, creating it on first use.
+     */
+    public static HttpClientPool forEndpoint(String endpoint) {
+        HttpClientPool pool = pools.get(endpoint);
+        if (pool != null) {
+            return pool;
+        }
+        pool = new HttpClientPool(endpoint);
+        HttpClientPool existing = pools.putIfAbsent(endpoint, pool);
+        if (existing != null) {
+            pool.shutdown();
+            return existing;
+        }
+        pool.scheduleEviction();
+        return pool;
+    }
+
+    /**
+     * Statistics of every pool created so far, keyed by endpoint.
+     */
+    public static Map<String, Stats> getAllStats() {
+        Map<String, Stats> stats = new TreeMap<String, Stats>();
+        for (HttpClientPool pool : pools.values()) {
+            stats.put(pool.endpoint, pool.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Closes every pooled connection, when Jenkins shuts down.
+     */
+    public static void shutdownAll() {
+        for (String endpoint : pools.keySet()) {
+            HttpClientPool pool = pools.remove(endpoint);
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    void recordRequest(boolean failed) {
+        requests.incrementAndGet();
+        if (failed) {
+            failures.incrementAndGet();
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(connectionManager.getConnectionsInPool(), connectionManager.getMaxTotal(),
+                connectionManager.getDefaultMaxPerRoute(), requests.get(), failures.get());
+    }
+
+    private void scheduleEviction() {
+        eviction = evictor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+        }, EVICTION_INTERVAL_MS, EVICTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void shutdown() {
+        if (eviction != null) {
+            eviction.cancel(false);
+        }
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Honours the server's {@code Keep-Alive: timeout=N} hint and falls back to
+     * {@link #KEEP_ALIVE_MS} instead of keeping connections open forever.
+     */
+    private static class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (it.hasNext()) {
+                HeaderElement element = it.nextElement();
+                if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Math.min(Long.parseLong(element.getValue()) * 1000, KEEP_ALIVE_MS);
+                    } catch (NumberFormatException ignore) {
+                        // fall through to the default
+                    }
+                }
+            }
+            return KEEP_ALIVE_MS;
+        }
+    }
+
+    public static class Stats {
+        public final int connections;
+        public final int maxTotal;
+        public final int maxPerRoute;
+        public final long requests;
+        public final long failures;
+
+        Stats(int connections, int maxTotal, int maxPerRoute, long requests, long failures) {
+            this.connections = connections;
+            this.maxTotal = maxTotal;
+            this.maxPerRoute = maxPerRoute;
+            this.requests = requests;
+            this.failures = failures;
+        }
+
+        public String toString() {
+            return String.format("#<PoolStats connections: %d/%d, maxPerRoute: %d, requests: %d, failures: %d>",
+                    connections, maxTotal, maxPerRoute, requests, failures);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package io.loader.jenkins.api;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed size log-linear histogram of response times in milliseconds.
+ *
+ * Values below {@link #SUB_BUCKETS} are counted exactly, larger ones in
+ * buckets whose width is 1/32 of their magnitude, so any percentile is known
+ * within about 3% while the whole int range fits in under a thousand counters.
+ */
+public class LatencyHistogram implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = SUB_BUCKETS * 2 + (31 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long totalCount;
+    private long min = Long.MAX_VALUE;
+    private long max = -1;
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    public void record(long value, long count) {
+        if (count <= 0) {
+            return;
+        }
+        long v = Math.max(0, Math.min(value, Integer.MAX_VALUE));
+        counts[indexOf(v)] += count;
+        totalCount += count;
+        min = Math.min(min, v);
+        max = Math.max(max, v);
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Removes samples added before with {@link #add}. Min and max fall back to
+     * the bounds of the remaining buckets.
+     */
+    public void subtract(LatencyHistogram other) {
+        int lowest = -1;
+        int highest = -1;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = Math.max(0, counts[i] - other.counts[i]);
+            if (counts[i] > 0) {
+                if (lowest < 0) {
+                    lowest = i;
+                }
+                highest = i;
+            }
+        }
+        totalCount = Math.max(0, totalCount - other.totalCount);
+        if (lowest < 0) {
+            totalCount = 0;
+            min = Long.MAX_VALUE;
+            max = -1;
+        } else {
+            min = Math.max(min, lowestValueAt(lowest));
+            max = Math.min(max, highestValueAt(highest));
+        }
+    }
+
+    /**
+     * Largest amount by which this distribution's cumulative share exceeds the
+     * other's at any bucket, i.e. how much slower {@code other} is. This is the
+     * one-sided Kolmogorov-Smirnov statistic.
+     */
+    public double maxCumulativeLead(LatencyHistogram other) {
+        if (isEmpty() || other.isEmpty()) {
+            return 0;
+        }
+        double lead = 0;
+        long seen = 0;
+        long otherSeen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            otherSeen += other.counts[i];
+            lead = Math.max(lead, (double) seen / totalCount - (double) otherSeen / other.totalCount);
+        }
+        return lead;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Number of samples up to {@code value}, counting the whole bucket it falls in.
+     */
+    public long getCountAtOrBelow(long value) {
+        if (value < 0) {
+            return 0;
+        }
+        int last = indexOf(Math.min(value, Integer.MAX_VALUE));
+        long seen = 0;
+        for (int i = 0; i <= last; i++) {
+            seen += counts[i];
+        }
+        return seen;
+    }
+
+    public boolean isEmpty() {
+        return totalCount == 0;
+    }
+
+    public long getMin() {
+        return isEmpty() ? -1 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile 0..100
+     * @return value below or at which the given percentage of the samples fall,
+     *         -1 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (isEmpty()) {
+            return -1;
+        }
+        double p = Math.max(0, Math.min(100, percentile));
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * totalCount));
+        if (rank >= totalCount) {
+            return max;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // middle of the bucket, but never outside what was actually recorded
+                long value = (lowestValueAt(i) + highestValueAt(i)) / 2;
+                return Math.max(min, Math.min(max, value));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Sparse binary form: min, max, number of used buckets, then index and count
+     * of each of them. Typical results take a few hundred bytes.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        int used = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                used++;
+            }
+        }
+        out.writeLong(getMin());
+        out.writeLong(max);
+        out.writeShort(used);
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] > 0) {
+                out.writeShort(i);
+                out.writeLong(counts[i]);
+            }
+        }
+    }
+
+    public static LatencyHistogram readFrom(ByteBuffer in) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long min = in.getLong();
+        long max = in.getLong();
+        int used = in.getShort() & 0xffff;
+        for (int i = 0; i < used; i++) {
+            int index = in.getShort() & 0xffff;
+            long count = in.getLong();
+            if (index < BUCKETS) {
+                histogram.counts[index] += count;
+                histogram.totalCount += count;
+            }
+        }
+        if (histogram.totalCount > 0) {
+            histogram.min = min;
+            histogram.max = max;
+        }
+        return histogram;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS * 2) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS * 2 + (shift - 1) * SUB_BUCKETS + (int) ((value >> shift) - SUB_BUCKETS);
+    }
+
+    static long lowestValueAt(int index) {
+        if (index < SUB_BUCKETS * 2) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS * 2) / SUB_BUCKETS + 1;
+        long sub = (index - SUB_BUCKETS * 2) % SUB_BUCKETS + SUB_BUCKETS;
+        return sub << shift;
+    }
+
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS * 2) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS * 2) / SUB_BUCKETS + 1;
+        return lowestValueAt(index) + (1L << shift) - 1;
+    }
+
+    public String toString() {
+        return String.format("#<LatencyHistogram count: %d, p50: %d, p99: %d, max: %d>",
+                totalCount, getValueAtPercentile(50), getValueAtPercentile(99), max);
+    }
+}
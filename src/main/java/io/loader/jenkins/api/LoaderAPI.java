@@ -1,180 +1,558 @@
 package io.loader.jenkins.api;
 
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import net.sf.json.JSONException;
 import net.sf.json.JSONSerializer;
 import net.sf.json.JSONObject;
 import net.sf.json.JSONArray;
 import net.sf.json.JSON;
 
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.codehaus.jackson.JsonParser;
 
 public class LoaderAPI {
+    private static final Logger LOGGER = Logger.getLogger(LoaderAPI.class.getName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     static final String baseApiUri = "https://api.loader.io/v2/";
 
-    PrintStream logger = new PrintStream(System.out);
+    // loader.io unless the system property points somewhere else, e.g. at a local simulator of the API
+    static final String DEFAULT_BASE_URI = withSlash(System.getProperty(ApiKeyGuard.PROPERTY_PREFIX + "baseUri", baseApiUri));
+
+    // where new instances send their requests
+    private static volatile String defaultBaseUri = DEFAULT_BASE_URI;
+
+    static final int MAX_RETRIES = Integer.getInteger(ApiKeyGuard.PROPERTY_PREFIX + "maxRetries", 3);
+    static final long RETRY_DELAY_MS = 500;
+    // throttling for longer than this is reported rather than waited out
+    static final long MAX_RETRY_DELAY_MS = 10 * 1000L;
+    static final long RATE_LIMIT_WAIT_MS = 60 * 1000L;
+    static final int THREADS = Integer.getInteger(ApiKeyGuard.PROPERTY_PREFIX + "threads", 8);
+    // longer error messages and bodies are cut in the log
+    static final int MAX_LOG_LENGTH = Integer.getInteger(ApiKeyGuard.PROPERTY_PREFIX + "maxLogLength", 500);
+
+    // threads are only held while a request is on the wire: waits for the rate
+    // limit, retry delays and the recorded time of replayed answers are scheduled,
+    // not slept. Requests are still blocking I/O, so no more than THREADS calls of
+    // the whole JVM are on the wire at once, the others wait in the queue of the
+    // executor
+    private static final ScheduledExecutorService executor = Executors.newScheduledThreadPool(THREADS, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "loader.io API");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
     String apiKey;
+    // ends with a slash, paths are appended to it
+    final String baseUri;
+    // where the calls of this instance are saved, null for nowhere
+    private volatile ApiRecorder recorder;
+    // answers the calls of this instance instead of loader.io, null to call loader.io
+    private volatile ApiReplay replay;
 
     public LoaderAPI(String apiKey) {
-        logger.println("in #LoaderAPI, apiKey: " + apiKey);
+        this(apiKey, defaultBaseUri);
+    }
+
+    public LoaderAPI(String apiKey, String baseUri) {
         this.apiKey = apiKey;
+        this.baseUri = normalizeBaseUri(baseUri);
     }
 
-    public Map<String, String> getTestList() {
-        JSONArray list = getTests();
-        if (list == null) {
-            return null;
-        }
-        Map<String, String> tests = new HashMap<String, String>();
-        for (Object test : list) {
-            JSONObject t = (JSONObject) test;
-            String title = prepareTestTitle(t);
-            tests.put(t.getString("test_id"), title);
+    public static String getBaseUri() {
+        return defaultBaseUri;
+    }
+
+    /**
+     * Points the instances created from now on at another endpoint, {@code null}
+     * or blank for the default one. Cached test lists of the previous one are dropped.
+     */
+    public static void setBaseUri(String baseUri) {
+        String uri = normalizeBaseUri(baseUri);
+        if (!uri.equals(defaultBaseUri)) {
+            defaultBaseUri = uri;
+            LoaderCache.invalidateAll();
         }
-        return tests;
+    }
+
+    /**
+     * Saves the calls made from now on, {@code null} to stop.
+     */
+    public void recordTo(ApiRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Answers the calls made from now on from a recording rather than loader.io,
+     * {@code null} to call loader.io again.
+     */
+    public void replayFrom(ApiReplay replay) {
+        this.replay = replay;
+    }
+
+    // threads of the executor running a call right now
+    static int getActiveThreads() {
+        return ((ThreadPoolExecutor) executor).getActiveCount();
+    }
+
+    // its calls have to go through this instance, another one would leave them unrecorded or answer them live
+    boolean recordsOrReplays() {
+        return recorder != null || replay != null;
+    }
+
+    static String normalizeBaseUri(String baseUri) {
+        return isBlank(baseUri) ? DEFAULT_BASE_URI : withSlash(baseUri);
+    }
+
+    // paths are appended to the base URI
+    private static String withSlash(String uri) {
+        uri = uri.trim();
+        return uri.endsWith("/") ? uri : uri + "/";
+    }
+
+    public Map<String, String> getTestList() {
+        return await(getTestListAsync());
+    }
+
+    public ApiFuture<Map<String, String>> getTestListAsync() {
+        return new Call<Map<String, String>, Map<String, String>>("GET", testsPath(), ApiMetrics.TESTS, Decoders.TEST_LIST) {
+            Map<String, String> complete(Result<Map<String, String>> result) {
+                return result.isFail() ? null : result.data;
+            }
+        }.submit();
+    }
+
+    /**
+     * One page of the active tests, {@code null} if it can't be read. Pages start at 1.
+     */
+    public List<TestIndex.Entry> getTestPage(int page, int perPage) {
+        return await(getTestPageAsync(page, perPage));
+    }
+
+    public ApiFuture<List<TestIndex.Entry>> getTestPageAsync(int page, int perPage) {
+        String path = testsPath() + "&page=" + page + "&per_page=" + perPage;
+        return new Call<List<TestIndex.Entry>, List<TestIndex.Entry>>("GET", path, ApiMetrics.TESTS, Decoders.TESTS) {
+            List<TestIndex.Entry> complete(Result<List<TestIndex.Entry>> result) {
+                return result.isFail() ? null : result.data;
+            }
+        }.submit();
     }
 
     protected String prepareTestTitle(JSONObject test) {
         String id = "";
         try {
             id = test.getString("test_id");
-            String title = test.getString("name");
-            String domain = test.getString("domain");
-            String asTitle = isEmptyString(title) ? domain : title;
-            return String.format("%s (%s)", asTitle, id);
+            return prepareTestTitle(id, test.getString("name"), test.getString("domain"));
         } catch (RuntimeException ex) {
-            logger.println("Got Exception: " + ex);
+            LOGGER.log(Level.FINE, "Test without a name or domain: " + bounded(test.toString()), ex);
             return id;
         }
     }
 
+    static String prepareTestTitle(String id, String title, String domain) {
+        String asTitle = isBlank(title) ? domain : title;
+        return String.format("%s (%s)", asTitle, id);
+    }
+
     protected boolean isEmptyString(String string) {
+        return isBlank(string);
+    }
+
+    static boolean isBlank(String string) {
         return string == null || string.trim().isEmpty();
     }
 
     public JSONArray getApps() {
-        logger.println("in #getApps");
-        return getListData("apps");
+        return await(getListData("apps", ApiMetrics.APPS));
     }
 
     public JSONArray getTests() {
-        logger.println("in #getTests");
-        return getListData("tests?status=active&fields[]=name&fields[]=domain");
+        return await(getTestsAsync());
     }
 
-    private JSONArray getListData(String path) {
-        Result result = doGetRequest(path);
-        logger.println("Result (max 1000 symbols):::" + result.code + "\n" +
-            (result.body.length() > 1000 ? result.body.substring(0, 1000) : result.body));
-        if (result.isFail()) {
-            return null;
-        }
-        try {
-            JSON list = JSONSerializer.toJSON(result.body);
-            if (list.isArray()) {
-                return (JSONArray) list;
-            } else {
-                return null;
+    public ApiFuture<JSONArray> getTestsAsync() {
+        return getListData(testsPath(), ApiMetrics.TESTS);
+    }
+
+    private String testsPath() {
+        return "tests?status=active&fields[]=name&fields[]=domain";
+    }
+
+    // Builds a whole net.sf.json tree, prefer the streaming decoders for new code
+    private ApiFuture<JSONArray> getListData(final String path, ApiMetrics.Endpoint endpoint) {
+        return new Call<String, JSONArray>("GET", path, endpoint, Decoders.TEXT) {
+            JSONArray complete(Result<String> result) {
+                if (result.isFail()) {
+                    return null;
+                }
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.finest("GET " + path + " answered " + bounded(result.data));
+                }
+                try {
+                    JSON list = JSONSerializer.toJSON(result.data);
+                    if (list.isArray()) {
+                        return (JSONArray) list;
+                    } else {
+                        return null;
+                    }
+                } catch (RuntimeException ex) {
+                    LOGGER.log(Level.FINE, "Can't parse the answer of GET " + path, ex);
+                    return null;
+                }
             }
-        } catch (RuntimeException ex) {
-            logger.println("Got Exception: " + ex);
-            return null;
-        }
+        }.submit();
     }
 
     public TestData getTest(String testId) {
-        logger.println("in #getTest");
-        Result result = doGetRequest("tests/" + testId);
-        logger.println("Result :::" + result.code + "\n" + result.body);
-        if (result.isFail()) {
-            return null;
-        }
-        return fetchTestData(result.body);
+        return await(getTestAsync(testId));
+    }
 
+    public ApiFuture<TestData> getTestAsync(String testId) {
+        return new Call<TestData, TestData>("GET", "tests/" + testId, ApiMetrics.TEST, Decoders.TEST_DATA) {
+            TestData complete(Result<TestData> result) {
+                return result.isFail() ? null : result.data;
+            }
+        }.submit();
     }
 
-    private TestData fetchTestData(String data) {
-        try {
-            JSONObject json = (JSONObject) JSONSerializer.toJSON(data);
-            return new TestData(json);
-        } catch (RuntimeException ex) {
-            logger.format("Got exception: %s", ex);
-            return null;
-        }
+    /**
+     * Sets the clients the test ends with; those it starts with are left as they are.
+     */
+    public boolean updateTestClients(String testId, int clients) {
+        return Boolean.TRUE.equals(await(updateTestClientsAsync(testId, clients)));
+    }
+
+    public ApiFuture<Boolean> updateTestClientsAsync(String testId, int clients) {
+        return new Call<Boolean, Boolean>("PUT", "tests/" + testId, "{\"total\": " + clients + "}", ApiMetrics.UPDATE,
+                Decoders.OBJECT) {
+            Boolean complete(Result<Boolean> result) {
+                return result.isOk();
+            }
+        }.submit();
     }
 
     public String runTest(String testId) {
-        logger.println("in #getTests");
-        Result result = doPutRequest("tests/" + testId + "/run?source=jenkins");
-        logger.println("Result :::" + result.code + "\n" + result.body);
-        if (result.isFail()) {
-            return null;
-        }
-        //TODO: check on exception
-        JSONObject body = (JSONObject) JSONSerializer.toJSON(result.body);
-        return body.getString("result_id");
+        return await(runTestAsync(testId));
+    }
+
+    public ApiFuture<String> runTestAsync(String testId) {
+        return new Call<String, String>("PUT", "tests/" + testId + "/run?source=jenkins", ApiMetrics.RUN, Decoders.RESULT_ID) {
+            String complete(Result<String> result) {
+                return result.isFail() ? null : result.data;
+            }
+        }.submit();
+    }
+
+    public boolean stopTest(String testId) {
+        return Boolean.TRUE.equals(await(stopTestAsync(testId)));
+    }
+
+    public ApiFuture<Boolean> stopTestAsync(String testId) {
+        return new Call<Boolean, Boolean>("PUT", "tests/" + testId + "/stop", ApiMetrics.STOP, Decoders.OBJECT) {
+            Boolean complete(Result<Boolean> result) {
+                return result.isOk();
+            }
+        }.submit();
     }
 
     public SummaryData getTestSummaryData(String testId, String summaryId) {
-        logger.println("in #getTestSummaryData");
-        Result result = doGetRequest("tests/" + testId + "/results/" + summaryId);
-        logger.println("Result :::" + result.code + "\n" + result.body);
-        if (result.isFail()) {
-            return null;
-        }
-        //TODO: check on exception
-        JSONObject json = (JSONObject) JSONSerializer.toJSON(result.body);
-        return new SummaryData(json);
+        return await(getTestSummaryDataAsync(testId, summaryId));
+    }
+
+    public ApiFuture<SummaryData> getTestSummaryDataAsync(String testId, String summaryId) {
+        return new Call<SummaryData, SummaryData>("GET", "tests/" + testId + "/results/" + summaryId, ApiMetrics.RESULTS,
+                Decoders.SUMMARY_DATA) {
+            SummaryData complete(Result<SummaryData> result) {
+                return result.isFail() ? null : result.data;
+            }
+        }.submit();
     }
 
     public boolean isValidApiKey() {
         if (isEmptyString(apiKey)) {
-            logger.println("getTestApi apiKey is empty");
             return false;
         }
-        JSON apps = getApps();
-        if (null == apps) {
-            logger.println("invalid ApiKey");
-            return false;
+        return Boolean.TRUE.equals(await(new Call<Integer, Boolean>("GET", "apps", ApiMetrics.APPS, Decoders.LIST_SIZE) {
+            Boolean complete(Result<Integer> apps) {
+                if (apps.isFail()) {
+                    return false;
+                }
+                return true;
+            }
+        }.submit()));
+    }
+
+    // off by default: FINE for failed calls, FINER for every call
+    private static void logResult(String method, String path, Result<?> result) {
+        if (result.isFail()) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(method + " " + path + ": " + result.code + " " + bounded(result.errorMessage));
+            }
+        } else if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer(method + " " + path + ": " + result.code + " (" + result.contentLength + " bytes)");
+        }
+    }
+
+    static String bounded(String message) {
+        if (message == null || message.length() <= MAX_LOG_LENGTH) {
+            return message;
+        }
+        return message.substring(0, MAX_LOG_LENGTH) + "... (" + message.length() + " chars)";
+    }
+
+    /**
+     * Blocks the caller for the synchronous methods, {@code null} if interrupted.
+     */
+    private static <R> R await(ApiFuture<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * One API call, run as a series of attempts on the shared executor. Within
+     * the rate limit of the key, GETs are retried on network and server errors;
+     * any request is retried when throttled, as the server didn't act on it.
+     *
+     * @param <T> decoded response
+     * @param <R> what the caller gets
+     */
+    private abstract class Call<T, R> implements Runnable {
+        final String method;
+        final String path;
+        // JSON sent with a PUT, null for none
+        final String body;
+        final ApiMetrics.Endpoint endpoint;
+        final ResponseDecoder<T> decoder;
+        final ApiFuture<R> future = new ApiFuture<R>();
+        private final long createdAt = System.currentTimeMillis();
+        private int attempt;
+
+        Call(String method, String path, ApiMetrics.Endpoint endpoint, ResponseDecoder<T> decoder) {
+            this(method, path, null, endpoint, decoder);
+        }
+
+        Call(String method, String path, String body, ApiMetrics.Endpoint endpoint, ResponseDecoder<T> decoder) {
+            this.method = method;
+            this.path = path;
+            this.body = body;
+            this.endpoint = endpoint;
+            this.decoder = decoder;
+        }
+
+        /**
+         * Turns the final result into what the caller gets, on an executor thread.
+         */
+        abstract R complete(Result<T> result);
+
+        ApiFuture<R> submit() {
+            executor.execute(this);
+            return future;
+        }
+
+        public void run() {
+            if (future.isDone()) {
+                // cancelled
+                return;
+            }
+            try {
+                attempt();
+            } catch (RuntimeException ex) {
+                future.setException(ex);
+            }
+        }
+
+        private void attempt() {
+            final boolean idempotent = "GET".equals(method);
+            final HttpRequestBase request = idempotent ? new HttpGet() : new HttpPut();
+            stuffHttpRequest(request, path);
+            if (body != null) {
+                ((HttpPut) request).setEntity(jsonEntity(body));
+            }
+            final ApiKeyGuard guard = ApiKeyGuard.forKey(apiKey);
+            long wait = guard.bucket.tryAcquire();
+            if (wait > 0) {
+                if (System.currentTimeMillis() + wait - createdAt > RATE_LIMIT_WAIT_MS) {
+                    endpoint.rejected();
+                    finish(new Result<T>("Rate limit of the API key reached, request not sent"));
+                } else {
+                    executor.schedule(this, wait, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+            final CircuitBreaker.Permit permit = guard.breaker.allowRequest();
+            if (permit == CircuitBreaker.Permit.DENIED) {
+                endpoint.rejected();
+                finish(new Result<T>(guard.breaker.getOpenReason()));
+                return;
+            }
+            final ApiReplay replaying = replay;
+            final ApiReplay.Exchange replayed = replaying == null ? null : replaying.next(method, path, body);
+            final long sentAt = System.currentTimeMillis();
+            Runnable send = new Runnable() {
+                public void run() {
+                    try {
+                        send(guard, request, idempotent, replaying, replayed, sentAt);
+                    } catch (RuntimeException ex) {
+                        future.setException(ex);
+                    } finally {
+                        // whatever happened to it, the probe must not hold back every later call
+                        if (permit == CircuitBreaker.Permit.PROBE) {
+                            guard.breaker.endProbe();
+                        }
+                    }
+                }
+            };
+            long latency = replaying == null ? 0 : replaying.delayOf(replayed);
+            if (latency > 0) {
+                executor.schedule(send, latency, TimeUnit.MILLISECONDS);
+            } else {
+                send.run();
+            }
+        }
+
+        // answered by replayed unless replaying is null
+        private void send(ApiKeyGuard guard, HttpRequestBase request, boolean idempotent,
+                ApiReplay replaying, ApiReplay.Exchange replayed, long sentAt) {
+            HttpClientPool pool = HttpClientPool.forEndpoint(baseUri);
+            Result<T> result;
+            boolean retry;
+            long delay = backoff(attempt);
+            HttpResponse response = null;
+            ApiRecorder recording = recorder;
+            try {
+                response = replaying != null ? ApiReplay.answer(replayed, method, path)
+                        : pool.getClient().execute(request);
+                if (recording != null) {
+                    response = recording.record(sentAt, method, path, body, response);
+                }
+            } catch (IOException ex) {
+                response = null;
+                if (recording != null) {
+                    recording.recordError(sentAt, method, path, body);
+                }
+                request.abort();
+                pool.recordRequest(true);
+                endpoint.requested(System.currentTimeMillis() - sentAt, true, false);
+                guard.breaker.recordFailure(ex.toString());
+                LOGGER.info("Error during remote call to API, " + method + " " + path + ": " + ex);
+            }
+            if (response == null) {
+                result = new Result<T>("Network error during remote call to API");
+                retry = idempotent;
+            } else {
+                int code = response.getStatusLine().getStatusCode();
+                if (code == 429) {
+                    delay = retryAfter(response, delay);
+                    guard.bucket.blockUntil(System.currentTimeMillis() + delay);
+                    guard.breaker.retryAt(System.currentTimeMillis() + delay);
+                    retry = true;
+                } else if (code >= 500) {
+                    guard.breaker.recordFailure("HTTP " + code);
+                    retry = idempotent;
+                } else {
+                    guard.breaker.recordSuccess();
+                    retry = false;
+                }
+                result = new Result<T>(response, decoder);
+                if (result.code == -1) {
+                    // body could not be read completely, don't hand the connection back to the pool
+                    request.abort();
+                }
+                pool.recordRequest(result.code == -1 || code >= 500);
+                endpoint.requested(System.currentTimeMillis() - sentAt, result.code != 200 && code != 429, code == 429);
+            }
+            if (!retry || attempt >= MAX_RETRIES || delay > MAX_RETRY_DELAY_MS) {
+                finish(result);
+                return;
+            }
+            attempt++;
+            endpoint.retried();
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Retrying " + method + " " + path + " in " + delay + " ms: " + bounded(result.errorMessage));
+            }
+            executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void finish(Result<T> result) {
+            logResult(method, path, result);
+            future.set(complete(result));
         }
-        return true;
     }
 
-    private Result doGetRequest(String path) {
-        return doRequest(new HttpGet(), path);
+    // the Content-Type header is already set
+    private static HttpEntity jsonEntity(String json) {
+        return new ByteArrayEntity(json.getBytes(UTF_8));
     }
 
-    private Result doPutRequest(String path) {
-        return doRequest(new HttpPut(), path);
+    private static long backoff(int attempt) {
+        return PollingStrategy.jitter(Math.min(MAX_RETRY_DELAY_MS, RETRY_DELAY_MS << attempt), 0.5);
     }
 
-    private Result doRequest(HttpRequestBase request, String path) {
-        stuffHttpRequest(request, path);
-        DefaultHttpClient client = new DefaultHttpClient();
-        HttpResponse response;
+    // Retry-After is either seconds or an HTTP date
+    private static long retryAfter(HttpResponse response, long fallback) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header == null || header.getValue() == null) {
+            return fallback;
+        }
+        String value = header.getValue().trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException ex) {
+            // not seconds
+        }
         try {
-            response = client.execute(request);
-        } catch (IOException ex) {
-            logger.format("Error during remote call to API. Exception received: %s", ex);
-            return new Result("Network error during remote call to API");
+            return Math.max(0, DateUtils.parseDate(value).getTime() - System.currentTimeMillis());
+        } catch (DateParseException ex) {
+            return fallback;
         }
-        return new Result(response);
+    }
+
+    /**
+     * Why calls with this key are currently held back, {@code null} while the API is considered up.
+     */
+    public String getUnavailableReason() {
+        return ApiKeyGuard.forKey(apiKey).breaker.getOpenReason();
     }
 
     private void stuffHttpRequest(HttpRequestBase request, String path) {
         URI fullUri = null;
         try {
-            fullUri = new URI(baseApiUri + path);
+            fullUri = new URI(baseUri + path);
         } catch (java.net.URISyntaxException ex) {
             throw new RuntimeException("Incorrect URI format: %s", ex);
         }
@@ -183,10 +561,11 @@ public class LoaderAPI {
         request.addHeader("loaderio-Auth", apiKey);
     }
 
-    static class Result {
+    static class Result<T> {
         public int code;
         public String errorMessage;
-        public String body;
+        public T data;
+        public long contentLength = -1;
 
         static final String badResponseError = "Bad response from API.";
         static final String formatError = "Invalid error format in response.";
@@ -196,18 +575,29 @@ public class LoaderAPI {
             errorMessage = error;
         }
 
-        public Result(HttpResponse response) {
+        public Result(HttpResponse response, ResponseDecoder<T> decoder) {
             code = response.getStatusLine().getStatusCode();
-            try {
-                body = EntityUtils.toString(response.getEntity());
-            } catch (IOException ex) {
-                code = -1;
-                errorMessage = badResponseError;
+            HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                contentLength = entity.getContentLength();
             }
             //TODO: add setup of error message depending on status code
             //      500, 404, etc
             if (code != 200) {
-                errorMessage = getErrorFromJson(body);
+                List<String> errors = null;
+                try {
+                    errors = decode(entity, Decoders.ERRORS);
+                } catch (IOException ex) {
+                    // ignore, body is only used for the message
+                }
+                errorMessage = errors == null ? formatError : badResponseError + join(errors);
+                return;
+            }
+            try {
+                data = decode(entity, decoder);
+            } catch (IOException ex) {
+                code = -1;
+                errorMessage = badResponseError + " " + ex.getMessage();
             }
         }
 
@@ -219,23 +609,29 @@ public class LoaderAPI {
             return !isOk();
         }
 
-        // format sample:
-        // {"message":"error","errors":["wrong api key(xxx)"]}
-        private String getErrorFromJson(String json) {
-            // parse json
-            JSON object;
-            try {
-                object = JSONSerializer.toJSON(json);
-            } catch (JSONException ex) {
-                return formatError;
+        // the decoder reads straight from the response stream; closing it
+        // drains whatever was skipped and releases the connection to the pool
+        private static <V> V decode(HttpEntity entity, ResponseDecoder<V> decoder) throws IOException {
+            if (entity == null) {
+                throw new IOException("Empty response body");
             }
-            if (!(object instanceof JSONObject)) {
-                return formatError;
+            InputStream in = entity.getContent();
+            try {
+                JsonParser parser = Decoders.jsonFactory.createJsonParser(in);
+                try {
+                    return decoder.decode(parser);
+                } finally {
+                    parser.close();
+                }
+            } finally {
+                in.close();
             }
-            StringBuilder error = new StringBuilder(badResponseError);
-            //TODO: check on error
-            for (Object message : ((JSONObject) object).getJSONArray("errors")) {
-                error.append(message.toString());
+        }
+
+        private static String join(List<String> messages) {
+            StringBuilder error = new StringBuilder();
+            for (String message : messages) {
+                error.append(message);
             }
             return error.toString();
         }
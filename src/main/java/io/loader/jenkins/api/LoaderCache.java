@@ -0,0 +1,73 @@
+package io.loader.jenkins.api;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per API key cache of the test index and of the key validity, used by the
+ * configuration pages so that rendering a job does not hit loader.io every time.
+ */
+public final class LoaderCache {
+    public static final int DEFAULT_TTL_SECONDS = 300;
+
+    static final int MAX_KEYS = Integer.getInteger(LoaderCache.class.getName() + ".maxKeys", 200);
+
+    private static final RefreshingCache<String, TestIndex> testIndexes =
+            new RefreshingCache<String, TestIndex>(new RefreshingCache.Loader<String, TestIndex>() {
+                public TestIndex load(String apiKey) {
+                    return TestIndex.load(new LoaderAPI(apiKey));
+                }
+            }, DEFAULT_TTL_SECONDS * 1000L, MAX_KEYS);
+
+    // only valid keys are cached, so an invalid key is checked again on every click
+    private static final RefreshingCache<String, Boolean> validKeys =
+            new RefreshingCache<String, Boolean>(new RefreshingCache.Loader<String, Boolean>() {
+                public Boolean load(String apiKey) {
+                    return new LoaderAPI(apiKey).isValidApiKey() ? Boolean.TRUE : null;
+                }
+            }, DEFAULT_TTL_SECONDS * 1000L, MAX_KEYS);
+
+    private LoaderCache() {
+    }
+
+    /**
+     * The tests of the key, {@code null} if they can't be listed. A stale index is
+     * answered right away and synced again in the background.
+     */
+    public static TestIndex getTestIndex(String apiKey) {
+        return testIndexes.get(apiKey);
+    }
+
+    public static boolean isValidApiKey(String apiKey) {
+        if (LoaderAPI.isBlank(apiKey)) {
+            return false;
+        }
+        return validKeys.get(apiKey) != null;
+    }
+
+    /**
+     * The caches by name, for their hit rates.
+     */
+    public static Map<String, RefreshingCache<?, ?>> getCaches() {
+        Map<String, RefreshingCache<?, ?>> caches = new LinkedHashMap<String, RefreshingCache<?, ?>>();
+        caches.put("testIndexes", testIndexes);
+        caches.put("validKeys", validKeys);
+        return caches;
+    }
+
+    public static void setTtlSeconds(int seconds) {
+        long ttl = Math.max(0, seconds) * 1000L;
+        testIndexes.setTtl(ttl);
+        validKeys.setTtl(ttl);
+    }
+
+    public static void invalidate(String apiKey) {
+        testIndexes.invalidate(apiKey);
+        validKeys.invalidate(apiKey);
+    }
+
+    public static void invalidateAll() {
+        testIndexes.invalidateAll();
+        validKeys.invalidateAll();
+    }
+}
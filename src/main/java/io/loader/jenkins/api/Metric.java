@@ -0,0 +1,37 @@
+package io.loader.jenkins.api;
+
+/**
+ * Values of a test result that rules can be set on.
+ */
+public enum Metric {
+    AVG_RESPONSE_TIME,
+    MIN_RESPONSE_TIME,
+    MAX_RESPONSE_TIME,
+    P50_RESPONSE_TIME,
+    P90_RESPONSE_TIME,
+    P95_RESPONSE_TIME,
+    P99_RESPONSE_TIME,
+    ERROR_RATE,
+    REQUESTS_PER_SECOND(true),
+    TIMEOUTS,
+    NETWORK_ERRORS,
+    DATA_SENT,
+    DATA_RECEIVED;
+
+    private final boolean lowerIsWorse;
+
+    private Metric() {
+        this(false);
+    }
+
+    private Metric(boolean lowerIsWorse) {
+        this.lowerIsWorse = lowerIsWorse;
+    }
+
+    /**
+     * Whether the threshold is a floor (throughput) rather than a ceiling.
+     */
+    public boolean isLowerWorse() {
+        return lowerIsWorse;
+    }
+}
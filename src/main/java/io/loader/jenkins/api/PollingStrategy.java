@@ -0,0 +1,141 @@
+package io.loader.jenkins.api;
+
+import java.io.Serializable;
+import java.util.Random;
+
+/**
+ * Decides how long to wait between two polls of a running test.
+ *
+ * {@link #fixed(long)} polls at a constant interval. {@link #adaptive(long, long)}
+ * uses the test duration reported by the API to sleep until the test is
+ * expected to end, then polls with a capped exponential backoff plus jitter
+ * until the status (or the result) is final.
+ */
+public abstract class PollingStrategy implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final Random random = new Random();
+
+    public static final String FIXED = "fixed";
+    public static final String ADAPTIVE = "adaptive";
+
+    public static PollingStrategy fixed(long intervalMillis) {
+        return new Fixed(intervalMillis);
+    }
+
+    public static PollingStrategy adaptive(long minIntervalMillis, long maxIntervalMillis) {
+        return new Adaptive(minIntervalMillis, maxIntervalMillis);
+    }
+
+    /**
+     * Builds a strategy from its job configuration name, falling back to adaptive.
+     */
+    public static PollingStrategy forName(String name, long intervalMillis, long maxIntervalMillis) {
+        if (FIXED.equals(name)) {
+            return fixed(intervalMillis);
+        }
+        return adaptive(intervalMillis, maxIntervalMillis);
+    }
+
+    /**
+     * State of one wait, created per watched run.
+     */
+    public abstract Schedule newSchedule();
+
+    public interface Schedule {
+        /**
+         * @param elapsedMillis time since the run was started
+         * @param last          most recent status, {@code null} before the first poll
+         * @return delay before the next poll in milliseconds
+         */
+        long nextDelay(long elapsedMillis, TestData last);
+    }
+
+    static long jitter(long delay, double ratio) {
+        double factor;
+        synchronized (random) {
+            factor = 1 + ratio * (2 * random.nextDouble() - 1);
+        }
+        return Math.max(0, (long) (delay * factor));
+    }
+
+    static long spread(long interval) {
+        synchronized (random) {
+            return (long) (random.nextDouble() * interval);
+        }
+    }
+
+    static class Fixed extends PollingStrategy {
+        private static final long serialVersionUID = 1L;
+
+        final long intervalMillis;
+
+        Fixed(long intervalMillis) {
+            this.intervalMillis = Math.max(1, intervalMillis);
+        }
+
+        public Schedule newSchedule() {
+            return new Schedule() {
+                private boolean first = true;
+
+                public long nextDelay(long elapsedMillis, TestData last) {
+                    if (first) {
+                        first = false;
+                        return spread(intervalMillis);
+                    }
+                    return intervalMillis;
+                }
+            };
+        }
+
+        public String toString() {
+            return String.format("fixed every %d ms", intervalMillis);
+        }
+    }
+
+    static class Adaptive extends PollingStrategy {
+        private static final long serialVersionUID = 1L;
+
+        static final double JITTER = 0.2;
+
+        final long minIntervalMillis;
+        final long maxIntervalMillis;
+
+        Adaptive(long minIntervalMillis, long maxIntervalMillis) {
+            this.minIntervalMillis = Math.max(1, minIntervalMillis);
+            this.maxIntervalMillis = Math.max(this.minIntervalMillis, maxIntervalMillis);
+        }
+
+        public Schedule newSchedule() {
+            return new Schedule() {
+                private int attempt = -1;
+
+                public long nextDelay(long elapsedMillis, TestData last) {
+                    if (last == null) {
+                        // first poll only learns the duration, do it soon
+                        return spread(minIntervalMillis);
+                    }
+                    long expectedEnd = last.duration * 1000L;
+                    if (last.duration > 0 && elapsedMillis < expectedEnd) {
+                        attempt = -1;
+                        return expectedEnd - elapsedMillis + spread(minIntervalMillis);
+                    }
+                    attempt = Math.min(attempt + 1, 30);
+                    return jitter(backoff(attempt), JITTER);
+                }
+            };
+        }
+
+        long backoff(int attempt) {
+            long delay = minIntervalMillis;
+            for (int i = 0; i < attempt && delay < maxIntervalMillis; i++) {
+                delay *= 2;
+            }
+            return Math.min(delay, maxIntervalMillis);
+        }
+
+        public String toString() {
+            return String.format("adaptive, backoff %d..%d ms", minIntervalMillis, maxIntervalMillis);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package io.loader.jenkins.api;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded LRU cache whose entries expire after a TTL.
+ *
+ * Expired entries are served stale while a single background reload replaces
+ * them (stale-while-revalidate), so callers only wait on the API the first
+ * time a key is requested or after an entry has been stale for a long time.
+ * Callers missing the same key meanwhile wait on that one load rather than each
+ * starting their own. {@code null} results are never cached.
+ */
+public class RefreshingCache<K, V> {
+
+    public interface Loader<K, V> {
+        V load(K key);
+    }
+
+    // one shared refresher for every cache, reloads are short API calls
+    private static final ExecutorService refresher = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(100), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "loader.io cache refresher");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private final Loader<K, V> loader;
+    private final int maxSize;
+    private volatile long ttlMillis;
+    private final Map<K, CacheEntry<V>> entries;
+    // synchronous loads under way, guarded by entries
+    private final Map<K, FutureTask<V>> loading = new HashMap<K, FutureTask<V>>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public RefreshingCache(Loader<K, V> loader, long ttlMillis, final int maxSize) {
+        this.loader = loader;
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                return size() > RefreshingCache.this.maxSize;
+            }
+        };
+    }
+
+    public void setTtl(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public long getTtl() {
+        return ttlMillis;
+    }
+
+    /**
+     * Returns the cached value, loading it synchronously when absent or when it
+     * has been stale for longer than ten TTLs, and scheduling a background reload
+     * when it is merely stale.
+     */
+    public V get(final K key) {
+        CacheEntry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        long now = System.currentTimeMillis();
+        if (entry == null || now - entry.loadedAt > 10 * ttlMillis) {
+            misses.incrementAndGet();
+            return loadOnce(key);
+        }
+        hits.incrementAndGet();
+        if (now - entry.loadedAt > ttlMillis) {
+            refreshInBackground(key, entry);
+        }
+        return entry.value;
+    }
+
+    /**
+     * Reloads the value now, bypassing the cache.
+     */
+    public V load(K key) {
+        V value = loader.load(key);
+        synchronized (entries) {
+            if (value == null) {
+                entries.remove(key);
+            } else {
+                entries.put(key, new CacheEntry<V>(value, System.currentTimeMillis()));
+            }
+        }
+        return value;
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Lookups of {@link #get} answered from the cache, stale values included.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Lookups of {@link #get} that waited on the loader.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // joins the load of key under way, or starts one
+    private V loadOnce(final K key) {
+        FutureTask<V> task;
+        boolean started = false;
+        synchronized (entries) {
+            CacheEntry<V> entry = entries.get(key);
+            // loaded while this caller was missing it
+            if (entry != null && System.currentTimeMillis() - entry.loadedAt <= 10 * ttlMillis) {
+                return entry.value;
+            }
+            task = loading.get(key);
+            if (task == null) {
+                task = new FutureTask<V>(new Callable<V>() {
+                    public V call() {
+                        return load(key);
+                    }
+                });
+                loading.put(key, task);
+                started = true;
+            }
+        }
+        if (started) {
+            try {
+                task.run();
+            } finally {
+                synchronized (entries) {
+                    loading.remove(key);
+                }
+            }
+        }
+        return await(task);
+    }
+
+    private static <V> V await(FutureTask<V> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException ex) {
+                    // the load can't be abandoned half way for the other callers
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void refreshInBackground(final K key, final CacheEntry<V> entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresher.execute(new Runnable() {
+                public void run() {
+                    try {
+                        V value = loader.load(key);
+                        synchronized (entries) {
+                            // keep the old value on failure, or if the entry was invalidated meanwhile
+                            if (value != null && entries.get(key) == entry) {
+                                entries.put(key, new CacheEntry<V>(value, System.currentTimeMillis()));
+                            }
+                        }
+                    } finally {
+                        entry.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    private static class CacheEntry<V> {
+        final V value;
+        final long loadedAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        CacheEntry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.loader.jenkins.api;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonParser;
+
+/**
+ * Turns a JSON response body into a value while it is being read from the wire.
+ *
+ * Implementations pull only the fields they need and skip everything else, so
+ * large responses never have to be buffered or turned into a full object tree.
+ */
+interface ResponseDecoder<T> {
+    T decode(JsonParser parser) throws IOException;
+}
@@ -0,0 +1,304 @@
+package io.loader.jenkins.api;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controller-wide poller for running loader.io tests.
+ *
+ * Every build waiting on a test registers a {@link Watch}; all watches of the
+ * same test (and API key) share one polling schedule, so there is never more
+ * than one status request in flight per test no matter how many builds wait
+ * on it. Builds that record or replay their API calls poll on their own. Each
+ * watch brings its own {@link PollingStrategy} and the next poll happens as
+ * soon as any of them asks for it. Strategies start at a random offset to
+ * spread requests out, and the watches complete once the test is neither
+ * {@code running} nor {@code pending}.
+ */
+public final class StatusPoller {
+    // polls run on the API executor, these threads only keep the schedule
+    static final int THREADS = Integer.getInteger(StatusPoller.class.getName() + ".threads", 1);
+    static final long DEFAULT_INTERVAL_MS = 5 * 1000L;
+    // how long an API outage is waited out before the watches fail
+    static final long MAX_UNAVAILABLE_MS = 10 * 60 * 1000L;
+
+    private static final StatusPoller INSTANCE = new StatusPoller();
+
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentMap<String, Subscription> subscriptions = new ConcurrentHashMap<String, Subscription>();
+    // numbers the subscriptions of instances that record or replay their calls
+    private final AtomicLong ownSubscriptions = new AtomicLong();
+
+    StatusPoller() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "loader.io status poller");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.scheduler = executor;
+    }
+
+    public static StatusPoller get() {
+        return INSTANCE;
+    }
+
+    public Watch watch(LoaderAPI api, String testId) {
+        return watch(api, testId, PollingStrategy.fixed(DEFAULT_INTERVAL_MS));
+    }
+
+    /**
+     * Starts waiting for the given test to finish. The returned watch completes
+     * with the final {@link TestData}, or with {@code null} if the API stopped
+     * returning valid test information. Cancelling it unregisters the caller.
+     */
+    public Watch watch(LoaderAPI api, String testId, PollingStrategy strategy) {
+        String key = api.apiKey + ":" + testId;
+        if (api.recordsOrReplays()) {
+            // polls through its own recorder or replay only, no other build shares them
+            key += "#" + ownSubscriptions.incrementAndGet();
+        }
+        Watch watch = new Watch(strategy.newSchedule());
+        while (true) {
+            Subscription subscription = subscriptions.get(key);
+            if (subscription == null) {
+                subscription = new Subscription(key, api, testId);
+                Subscription existing = subscriptions.putIfAbsent(key, subscription);
+                if (existing == null) {
+                    subscription.add(watch);
+                    return watch;
+                }
+                subscription = existing;
+            }
+            if (subscription.add(watch)) {
+                return watch;
+            }
+            // subscription finished concurrently, start a new one
+            subscriptions.remove(key, subscription);
+        }
+    }
+
+    /**
+     * Number of tests currently being polled.
+     */
+    public int getActiveTests() {
+        return subscriptions.size();
+    }
+
+    static boolean isRunning(TestData data) {
+        return data.status.equalsIgnoreCase("running") || data.status.equalsIgnoreCase("pending");
+    }
+
+    /**
+     * Completed by the poller with the final status of the test; once done, by
+     * the poller or by being cancelled, it leaves the subscription.
+     */
+    public final class Watch extends ApiFuture<TestData> {
+        private final PollingStrategy.Schedule schedule;
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicInteger polls = new AtomicInteger();
+        private final AtomicInteger wastedPolls = new AtomicInteger();
+        private volatile Subscription subscription;
+
+        Watch(PollingStrategy.Schedule schedule) {
+            this.schedule = schedule;
+            addListener(new Runnable() {
+                public void run() {
+                    Subscription subscription = Watch.this.subscription;
+                    if (subscription != null) {
+                        subscription.remove(Watch.this);
+                    }
+                }
+            });
+        }
+
+        long nextDelay(TestData last) {
+            return schedule.nextDelay(System.currentTimeMillis() - startedAt, last);
+        }
+
+        /**
+         * Status returned by the most recent poll, {@code null} before the first one.
+         */
+        public TestData getLastStatus() {
+            Subscription subscription = this.subscription;
+            return subscription == null ? null : subscription.lastStatus;
+        }
+
+        /**
+         * Status requests made while this watch was registered.
+         */
+        public int getPolls() {
+            return polls.get();
+        }
+
+        /**
+         * Of {@link #getPolls()}, those that found the test still running.
+         */
+        public int getWastedPolls() {
+            return wastedPolls.get();
+        }
+
+        void polled(boolean wasted) {
+            polls.incrementAndGet();
+            if (wasted) {
+                wastedPolls.incrementAndGet();
+            }
+        }
+
+        void complete(TestData data) {
+            set(data);
+        }
+
+        void fail(Throwable error) {
+            setException(error);
+        }
+    }
+
+    private final class Subscription implements Runnable {
+        final String key;
+        final LoaderAPI api;
+        final String testId;
+        final CopyOnWriteArrayList<Watch> watches = new CopyOnWriteArrayList<Watch>();
+        volatile TestData lastStatus;
+        private boolean finished;
+        private boolean polling;
+        private ScheduledFuture<?> pending;
+        private long nextPollAt;
+        // start of the current API outage, 0 while it answers
+        private long unavailableSince;
+
+        Subscription(String key, LoaderAPI api, String testId) {
+            this.key = key;
+            this.api = api;
+            this.testId = testId;
+        }
+
+        synchronized boolean add(Watch watch) {
+            if (finished) {
+                return false;
+            }
+            watches.add(watch);
+            watch.subscription = this;
+            scheduleWithin(watch.nextDelay(lastStatus));
+            return true;
+        }
+
+        // the last build that stops waiting stops the polling
+        synchronized void remove(Watch watch) {
+            if (watches.remove(watch) && watches.isEmpty()) {
+                finish();
+            }
+        }
+
+        private void finish() {
+            finished = true;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            subscriptions.remove(key, this);
+        }
+
+        // moves the next poll earlier if needed, never later
+        private synchronized void scheduleWithin(long delay) {
+            if (finished || polling) {
+                // run() picks the next delay once the poll in flight is done
+                return;
+            }
+            long at = System.currentTimeMillis() + delay;
+            if (pending != null && (at >= nextPollAt || !pending.cancel(false))) {
+                return;
+            }
+            nextPollAt = at;
+            pending = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
+
+        public void run() {
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                polling = true;
+                pending = null;
+            }
+            // the poller thread only schedules, the request runs on the API executor
+            final ApiFuture<TestData> poll = api.getTestAsync(testId);
+            poll.addListener(new Runnable() {
+                public void run() {
+                    try {
+                        polled(poll.get());
+                    } catch (ExecutionException ex) {
+                        completeAll(null, ex.getCause());
+                    } catch (InterruptedException ex) {
+                        // done already, can't happen
+                        completeAll(null, ex);
+                    } catch (CancellationException ex) {
+                        completeAll(null, ex);
+                    }
+                }
+            });
+        }
+
+        private void polled(TestData data) {
+            if (data == null && api.getUnavailableReason() != null) {
+                // the circuit breaker is open: wait for the API rather than failing every build on it
+                long now = System.currentTimeMillis();
+                if (unavailableSince == 0) {
+                    unavailableSince = now;
+                }
+                if (now - unavailableSince < MAX_UNAVAILABLE_MS) {
+                    synchronized (this) {
+                        polling = false;
+                        scheduleWithin(DEFAULT_INTERVAL_MS);
+                    }
+                    return;
+                }
+                completeAll(null, new IllegalStateException(api.getUnavailableReason()));
+                return;
+            }
+            unavailableSince = 0;
+            boolean running = data != null && isRunning(data);
+            ApiMetrics.get().statusPolled(running);
+            for (Watch watch : watches) {
+                watch.polled(running);
+            }
+            if (running) {
+                lastStatus = data;
+                synchronized (this) {
+                    long delay = Long.MAX_VALUE;
+                    for (Watch watch : watches) {
+                        delay = Math.min(delay, watch.nextDelay(data));
+                    }
+                    polling = false;
+                    scheduleWithin(delay);
+                }
+            } else {
+                completeAll(data, null);
+            }
+        }
+
+        private void completeAll(TestData data, Throwable error) {
+            synchronized (this) {
+                finish();
+            }
+            lastStatus = data;
+            for (Watch watch : watches) {
+                if (error != null) {
+                    watch.fail(error);
+                } else {
+                    watch.complete(data);
+                }
+            }
+        }
+    }
+}
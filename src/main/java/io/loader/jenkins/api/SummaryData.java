@@ -1,17 +1,326 @@
 package io.loader.jenkins.api;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 
-public class SummaryData {
+public class SummaryData implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     public int    avgResponseTime;
     public double avgErrorRate;
+    // "ready" once loader.io has aggregated the results, may be missing
+    public String status;
+    // false for interim results that don't carry averages yet
+    public boolean hasMetrics = true;
+
+    // optional in the payload, -1 when the API didn't report them
+    public int    minResponseTime = -1;
+    public int    maxResponseTime = -1;
+    public int    p50ResponseTime = -1;
+    public int    p90ResponseTime = -1;
+    public int    p95ResponseTime = -1;
+    public int    p99ResponseTime = -1;
+    public double requestsPerSecond = -1;
+    public long   successCount = -1;
+    public long   errorCount = -1;
+    public long   timeouts = -1;
+    public long   networkErrors = -1;
+    public long   dataSent = -1;
+    public long   dataReceived = -1;
+    // response time distribution, when the API sends one
+    public LatencyHistogram histogram;
+
+    SummaryData() {
+    }
 
     public SummaryData(JSONObject json) {
         avgResponseTime = json.getInt("avg_response_time");
         avgErrorRate    = json.getDouble("avg_error_rate");
+        status          = json.optString("status", null);
+        minResponseTime = json.optInt("min_response_time", -1);
+        maxResponseTime = json.optInt("max_response_time", -1);
+        p50ResponseTime = json.optInt("p50_response_time", -1);
+        p90ResponseTime = json.optInt("p90_response_time", -1);
+        p95ResponseTime = json.optInt("p95_response_time", -1);
+        p99ResponseTime = json.optInt("p99_response_time", -1);
+        requestsPerSecond = json.optDouble("requests_per_second", -1);
+        successCount    = json.optLong("success", -1);
+        errorCount      = json.optLong("error", -1);
+        timeouts        = json.optLong("timeout_error", -1);
+        networkErrors   = json.optLong("network_error", -1);
+        dataSent        = json.optLong("data_sent", -1);
+        dataReceived    = json.optLong("data_received", -1);
+        JSONArray distribution = json.optJSONArray("response_time_histogram");
+        if (distribution != null) {
+            histogram = new LatencyHistogram();
+            for (int i = 0; i < distribution.size(); i++) {
+                JSONArray bucket = distribution.getJSONArray(i);
+                histogram.record(bucket.getLong(0), bucket.getLong(1));
+            }
+        }
+        fillFromHistogram();
+    }
+
+    /**
+     * Combines the results of copies of a test run side by side, e.g. under several
+     * accounts, into those of one run with the clients of all of them.
+     *
+     * Counts, throughput and data add up; averages and the error percentage are
+     * weighted by requests. Percentiles are read from the combined distribution when
+     * every part has one. Otherwise the highest of the parts is kept: it is never
+     * below the combined percentile, so thresholds on it stay safe.
+     */
+    public static SummaryData merge(List<SummaryData> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        double[] weights = weights(parts);
+        double totalWeight = 0;
+        SummaryData merged = new SummaryData();
+        merged.status = "ready";
+        boolean histograms = true;
+        for (int i = 0; i < parts.size(); i++) {
+            SummaryData part = parts.get(i);
+            totalWeight += weights[i];
+            merged.hasMetrics &= part.hasMetrics;
+            if (!part.isReady()) {
+                merged.status = part.status;
+            }
+            histograms &= part.histogram != null;
+        }
+        double responseTime = 0;
+        double errorRate = 0;
+        merged.successCount = 0;
+        merged.errorCount = 0;
+        merged.timeouts = 0;
+        merged.networkErrors = 0;
+        merged.dataSent = 0;
+        merged.dataReceived = 0;
+        merged.requestsPerSecond = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            SummaryData part = parts.get(i);
+            responseTime += part.avgResponseTime * weights[i];
+            errorRate += part.avgErrorRate * weights[i];
+            merged.successCount = add(merged.successCount, part.successCount);
+            merged.errorCount = add(merged.errorCount, part.errorCount);
+            merged.timeouts = add(merged.timeouts, part.timeouts);
+            merged.networkErrors = add(merged.networkErrors, part.networkErrors);
+            merged.dataSent = add(merged.dataSent, part.dataSent);
+            merged.dataReceived = add(merged.dataReceived, part.dataReceived);
+            merged.requestsPerSecond = merged.requestsPerSecond < 0 || part.requestsPerSecond < 0
+                    ? -1 : merged.requestsPerSecond + part.requestsPerSecond;
+        }
+        merged.avgResponseTime = (int) Math.round(responseTime / totalWeight);
+        merged.avgErrorRate = errorRate / totalWeight;
+        if (merged.successCount >= 0 && merged.errorCount >= 0 && merged.successCount + merged.errorCount > 0) {
+            merged.avgErrorRate = merged.errorCount * 100.0 / (merged.successCount + merged.errorCount);
+        }
+        // the extremes of the parts are those of the whole, even without distributions
+        boolean extremes = true;
+        for (SummaryData part : parts) {
+            extremes &= part.minResponseTime >= 0 && part.maxResponseTime >= 0;
+        }
+        if (extremes) {
+            merged.minResponseTime = Integer.MAX_VALUE;
+            merged.maxResponseTime = 0;
+            for (SummaryData part : parts) {
+                merged.minResponseTime = Math.min(merged.minResponseTime, part.minResponseTime);
+                merged.maxResponseTime = Math.max(merged.maxResponseTime, part.maxResponseTime);
+            }
+        }
+        if (histograms) {
+            merged.histogram = new LatencyHistogram();
+            for (SummaryData part : parts) {
+                merged.histogram.add(part.histogram);
+            }
+            merged.fillFromHistogram();
+        } else {
+            merged.p50ResponseTime = highest(parts, Metric.P50_RESPONSE_TIME);
+            merged.p90ResponseTime = highest(parts, Metric.P90_RESPONSE_TIME);
+            merged.p95ResponseTime = highest(parts, Metric.P95_RESPONSE_TIME);
+            merged.p99ResponseTime = highest(parts, Metric.P99_RESPONSE_TIME);
+        }
+        return merged;
+    }
+
+    /**
+     * Requests of each part, or what they are proportional to when the API didn't count them:
+     * the distribution, the throughput, equal shares as a last resort.
+     */
+    private static double[] weights(List<SummaryData> parts) {
+        double[] weights = new double[parts.size()];
+        boolean counts = true;
+        boolean distributions = true;
+        boolean throughput = true;
+        for (SummaryData part : parts) {
+            counts &= part.successCount >= 0 && part.errorCount >= 0;
+            distributions &= part.histogram != null;
+            throughput &= part.requestsPerSecond >= 0;
+        }
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            SummaryData part = parts.get(i);
+            if (counts) {
+                weights[i] = part.successCount + part.errorCount;
+            } else if (distributions) {
+                weights[i] = part.histogram.getTotalCount();
+            } else if (throughput) {
+                weights[i] = part.requestsPerSecond;
+            }
+            total += weights[i];
+        }
+        if (total <= 0) {
+            Arrays.fill(weights, 1);
+        }
+        return weights;
+    }
+
+    // -1 unless every part has the metric
+    private static int highest(List<SummaryData> parts, Metric metric) {
+        double highest = -1;
+        for (SummaryData part : parts) {
+            double value = part.get(metric);
+            if (Double.isNaN(value)) {
+                return -1;
+            }
+            highest = Math.max(highest, value);
+        }
+        return (int) highest;
+    }
+
+    // -1 if either isn't known
+    private static long add(long a, long b) {
+        return a < 0 || b < 0 ? -1 : a + b;
+    }
+
+    /**
+     * Derives the response time figures the API left out from the distribution.
+     */
+    void fillFromHistogram() {
+        if (histogram == null || histogram.isEmpty()) {
+            return;
+        }
+        if (minResponseTime < 0) {
+            minResponseTime = (int) histogram.getMin();
+        }
+        if (maxResponseTime < 0) {
+            maxResponseTime = (int) histogram.getMax();
+        }
+        if (p50ResponseTime < 0) {
+            p50ResponseTime = (int) histogram.getValueAtPercentile(50);
+        }
+        if (p90ResponseTime < 0) {
+            p90ResponseTime = (int) histogram.getValueAtPercentile(90);
+        }
+        if (p95ResponseTime < 0) {
+            p95ResponseTime = (int) histogram.getValueAtPercentile(95);
+        }
+        if (p99ResponseTime < 0) {
+            p99ResponseTime = (int) histogram.getValueAtPercentile(99);
+        }
+    }
+
+    /**
+     * @return the value of the metric, {@link Double#NaN} if it wasn't reported
+     */
+    public double get(Metric metric) {
+        switch (metric) {
+        case AVG_RESPONSE_TIME:
+            return hasMetrics ? avgResponseTime : Double.NaN;
+        case ERROR_RATE:
+            return hasMetrics ? avgErrorRate : Double.NaN;
+        case MIN_RESPONSE_TIME:
+            return known(minResponseTime);
+        case MAX_RESPONSE_TIME:
+            return known(maxResponseTime);
+        case P50_RESPONSE_TIME:
+            return known(p50ResponseTime);
+        case P90_RESPONSE_TIME:
+            return known(p90ResponseTime);
+        case P95_RESPONSE_TIME:
+            return known(p95ResponseTime);
+        case P99_RESPONSE_TIME:
+            return known(p99ResponseTime);
+        case REQUESTS_PER_SECOND:
+            return known(requestsPerSecond);
+        case TIMEOUTS:
+            return known(timeouts);
+        case NETWORK_ERRORS:
+            return known(networkErrors);
+        case DATA_SENT:
+            return known(dataSent);
+        case DATA_RECEIVED:
+            return known(dataReceived);
+        default:
+            return Double.NaN;
+        }
+    }
+
+    private static double known(double value) {
+        return value < 0 ? Double.NaN : value;
+    }
+
+    /**
+     * Fixed binary layout used by the build snapshots, see {@link #readFrom(ByteBuffer)}.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(avgResponseTime);
+        out.writeDouble(avgErrorRate);
+        out.writeInt(minResponseTime);
+        out.writeInt(maxResponseTime);
+        out.writeInt(p50ResponseTime);
+        out.writeInt(p90ResponseTime);
+        out.writeInt(p95ResponseTime);
+        out.writeInt(p99ResponseTime);
+        out.writeDouble(requestsPerSecond);
+        out.writeLong(successCount);
+        out.writeLong(errorCount);
+        out.writeLong(timeouts);
+        out.writeLong(networkErrors);
+        out.writeLong(dataSent);
+        out.writeLong(dataReceived);
+        out.writeBoolean(histogram != null);
+        if (histogram != null) {
+            histogram.writeTo(out);
+        }
+    }
+
+    public static SummaryData readFrom(ByteBuffer in) {
+        SummaryData data = new SummaryData();
+        data.avgResponseTime = in.getInt();
+        data.avgErrorRate = in.getDouble();
+        data.minResponseTime = in.getInt();
+        data.maxResponseTime = in.getInt();
+        data.p50ResponseTime = in.getInt();
+        data.p90ResponseTime = in.getInt();
+        data.p95ResponseTime = in.getInt();
+        data.p99ResponseTime = in.getInt();
+        data.requestsPerSecond = in.getDouble();
+        data.successCount = in.getLong();
+        data.errorCount = in.getLong();
+        data.timeouts = in.getLong();
+        data.networkErrors = in.getLong();
+        data.dataSent = in.getLong();
+        data.dataReceived = in.getLong();
+        if (in.get() != 0) {
+            data.histogram = LatencyHistogram.readFrom(in);
+        }
+        return data;
+    }
+
+    public boolean isReady() {
+        return status == null || "ready".equalsIgnoreCase(status);
     }
 
     public String toString() {
-        return String.format("#<SummaryData avgResponseTime: %d, avgErrorRate: %f>", avgResponseTime, avgErrorRate);
+        return String.format("#<SummaryData avgResponseTime: %d, avgErrorRate: %f, p90ResponseTime: %d, p99ResponseTime: %d>",
+                avgResponseTime, avgErrorRate, p90ResponseTime, p99ResponseTime);
     }
 }
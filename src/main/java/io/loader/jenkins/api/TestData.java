@@ -6,11 +6,19 @@ public class TestData {
     public String testId;
     public String status;
     public int duration;
+    // clients at the start and at the end of the test, -1 if not reported
+    public int initial = -1;
+    public int total = -1;
+
+    TestData() {
+    }
 
     public TestData(JSONObject json) {
         testId = json.getString("test_id");
         status = json.getString("status");
         duration = json.getInt("duration");
+        initial = json.optInt("initial", -1);
+        total = json.optInt("total", -1);
     }
 
     public String toString() {
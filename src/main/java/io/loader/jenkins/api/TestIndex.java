@@ -0,0 +1,259 @@
+package io.loader.jenkins.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Sorted prefix index of the tests of one API key, for the test picker.
+ *
+ * Tests are kept ordered by title, then id, and every test is reachable by a
+ * prefix of its id, name, domain or any word of its name. A search walks the
+ * sorted keys from the first one matching, so it costs the number of matches
+ * rather than the size of the account. Instances are immutable; a sync builds
+ * a new one while the old one keeps answering.
+ */
+public final class TestIndex {
+    static final int PAGE_SIZE = Integer.getInteger(TestIndex.class.getName() + ".pageSize", 100);
+    // stops a server that keeps sending new pages
+    static final int MAX_PAGES = Integer.getInteger(TestIndex.class.getName() + ".maxPages", 1000);
+
+    private static final Comparator<Entry> BY_TITLE = new Comparator<Entry>() {
+        public int compare(Entry a, Entry b) {
+            int byTitle = a.title.compareToIgnoreCase(b.title);
+            return byTitle != 0 ? byTitle : a.id.compareTo(b.id);
+        }
+    };
+
+    private final Entry[] entries;
+    private final Map<String, Entry> byId;
+    // lower case search keys, sorted, and the position in entries of the test of each
+    private final String[] keys;
+    private final int[] owners;
+
+    TestIndex(Collection<Entry> tests) {
+        entries = tests.toArray(new Entry[tests.size()]);
+        Arrays.sort(entries, BY_TITLE);
+        byId = new HashMap<String, Entry>();
+        List<Key> all = new ArrayList<Key>();
+        for (int i = 0; i < entries.length; i++) {
+            Entry entry = entries[i];
+            byId.put(entry.id, entry);
+            for (String key : entry.keys()) {
+                all.add(new Key(key, i));
+            }
+        }
+        Collections.sort(all);
+        keys = new String[all.size()];
+        owners = new int[all.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = all.get(i).key;
+            owners[i] = all.get(i).owner;
+        }
+    }
+
+    /**
+     * Lists every active test of the key, page after page, {@code null} if a page can't be read.
+     */
+    public static TestIndex load(LoaderAPI api) {
+        Map<String, Entry> tests = new LinkedHashMap<String, Entry>();
+        for (int page = 1; page <= MAX_PAGES; page++) {
+            List<Entry> batch = api.getTestPage(page, PAGE_SIZE);
+            if (batch == null) {
+                return null;
+            }
+            int added = 0;
+            for (Entry entry : batch) {
+                if (tests.put(entry.id, entry) == null) {
+                    added++;
+                }
+            }
+            // an API that doesn't page sends every test at once, or the same ones again
+            if (batch.size() != PAGE_SIZE || added == 0) {
+                break;
+            }
+        }
+        return new TestIndex(tests.values());
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * @return the test, {@code null} if the key has no such active test
+     */
+    public Entry get(String id) {
+        return id == null ? null : byId.get(id.trim());
+    }
+
+    /**
+     * Tests with a key starting with {@code query}, in title order.
+     *
+     * @param query blank for every test
+     * @param offset matches to skip, for the next pages
+     * @param limit most tests returned
+     */
+    public Page search(String query, int offset, int limit) {
+        String prefix = query == null ? "" : query.trim().toLowerCase(Locale.ENGLISH);
+        List<Entry> found = new ArrayList<Entry>(Math.max(0, Math.min(limit, entries.length)));
+        if (prefix.length() == 0) {
+            for (int i = Math.max(0, offset); i < entries.length && found.size() < limit; i++) {
+                found.add(entries[i]);
+            }
+            return new Page(found, entries.length);
+        }
+        BitSet matches = new BitSet(entries.length);
+        for (int i = lowerBound(prefix); i < keys.length && keys[i].startsWith(prefix); i++) {
+            matches.set(owners[i]);
+        }
+        int skipped = 0;
+        for (int i = matches.nextSetBit(0); i >= 0 && found.size() < limit; i = matches.nextSetBit(i + 1)) {
+            if (skipped++ >= offset) {
+                found.add(entries[i]);
+            }
+        }
+        return new Page(found, matches.cardinality());
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The test id in {@code value}, which is either an id or a title as the picker shows it.
+     */
+    public static String idOf(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        int open = trimmed.lastIndexOf(" (");
+        if (open >= 0 && trimmed.endsWith(")")) {
+            String id = trimmed.substring(open + 2, trimmed.length() - 1).trim();
+            if (id.length() > 0 && id.indexOf(' ') < 0 && id.indexOf('(') < 0) {
+                return id;
+            }
+        }
+        return trimmed;
+    }
+
+    /**
+     * Whether {@code id} has the form of a loader.io test id, letters and digits.
+     * Test ids end up in file names and API paths, nothing else is used as one.
+     */
+    public static boolean isValidId(String id) {
+        if (id == null || id.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@link #idOf(String)}, refusing anything but a test id or an empty value.
+     *
+     * @throws IllegalArgumentException if the value isn't a test id
+     */
+    public static String checkedIdOf(String value) {
+        String id = idOf(value);
+        return id == null || id.length() == 0 ? id : checkedId(id);
+    }
+
+    /**
+     * {@code id} itself, checked before it goes into a file name.
+     *
+     * @throws IllegalArgumentException if it isn't a test id
+     */
+    public static String checkedId(String id) {
+        if (!isValidId(id)) {
+            throw new IllegalArgumentException("Not a loader.io test id: " + id);
+        }
+        return id;
+    }
+
+    public static final class Entry {
+        public final String id;
+        public final String name;
+        public final String domain;
+        public final String title;
+
+        Entry(String id, String name, String domain) {
+            this.id = id;
+            this.name = name;
+            this.domain = domain;
+            this.title = LoaderAPI.prepareTestTitle(id, name, domain);
+        }
+
+        List<String> keys() {
+            List<String> keys = new ArrayList<String>();
+            keys.add(id.toLowerCase(Locale.ENGLISH));
+            if (!LoaderAPI.isBlank(domain)) {
+                keys.add(domain.trim().toLowerCase(Locale.ENGLISH));
+            }
+            if (!LoaderAPI.isBlank(name)) {
+                String lower = name.trim().toLowerCase(Locale.ENGLISH);
+                keys.add(lower);
+                // later words too, "checkout" finds "Shop checkout"
+                for (int i = 1; i < lower.length(); i++) {
+                    if (!Character.isLetterOrDigit(lower.charAt(i - 1)) && Character.isLetterOrDigit(lower.charAt(i))) {
+                        keys.add(lower.substring(i));
+                    }
+                }
+            }
+            return keys;
+        }
+
+        public String toString() {
+            return title;
+        }
+    }
+
+    private static final class Key implements Comparable<Key> {
+        final String key;
+        final int owner;
+
+        Key(String key, int owner) {
+            this.key = key;
+            this.owner = owner;
+        }
+
+        public int compareTo(Key other) {
+            return key.compareTo(other.key);
+        }
+    }
+
+    public static final class Page {
+        public final List<Entry> tests;
+        // matches in all, beyond this page
+        public final int total;
+
+        Page(List<Entry> tests, int total) {
+            this.tests = Collections.unmodifiableList(tests);
+            this.total = total;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package io.loader.jenkins.api;
+
+/**
+ * Token bucket refilled at a constant rate, shared by everything using one API key.
+ * The server can also close it for a while, as told by {@code Retry-After}.
+ */
+class TokenBucket {
+    private final double permitsPerMilli;
+    private final double capacity;
+    private double tokens;
+    private long refilledAt;
+    // nothing is handed out before this time
+    private long blockedUntil;
+
+    TokenBucket(double permitsPerSecond, int burst) {
+        this.permitsPerMilli = permitsPerSecond / 1000;
+        this.capacity = Math.max(1, burst);
+        this.tokens = capacity;
+        this.refilledAt = now();
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @return 0 if a token was taken, otherwise how many milliseconds until one might be
+     */
+    synchronized long tryAcquire() {
+        long now = now();
+        refill(now);
+        if (now >= blockedUntil && tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        long tokenAt = now + (long) Math.ceil((1 - tokens) / permitsPerMilli);
+        return Math.max(1, Math.max(blockedUntil, tokenAt) - now);
+    }
+
+    /**
+     * Hands out nothing before {@code time}, and starts again with an empty bucket.
+     */
+    synchronized void blockUntil(long time) {
+        if (time > blockedUntil) {
+            blockedUntil = time;
+            tokens = 0;
+            refilledAt = time;
+        }
+    }
+
+    synchronized long getBlockedUntil() {
+        return blockedUntil;
+    }
+
+    // the clock of the bucket, tests run it by hand
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private void refill(long now) {
+        if (now > refilledAt) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * permitsPerMilli);
+            refilledAt = now;
+        }
+    }
+}
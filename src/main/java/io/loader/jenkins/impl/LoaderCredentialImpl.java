@@ -8,7 +8,7 @@ import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import hudson.util.Secret;
 import io.loader.jenkins.AbstractLoaderioCredential;
-import io.loader.jenkins.api.LoaderAPI;
+import io.loader.jenkins.api.LoaderCache;
 import net.sf.json.JSONException;
 
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -73,8 +73,7 @@ public class LoaderCredentialImpl extends AbstractLoaderioCredential {
         }
         
         private FormValidation checkLoaderKey(final String apiKey) throws JSONException, IOException, ServletException {
-        	LoaderAPI ldr = new LoaderAPI(apiKey);
-            if (ldr.isValidApiKey()) {
+            if (LoaderCache.isValidApiKey(apiKey)) {
                 return FormValidation.ok("API Key is Valid.");
             } else {
                 return FormValidation.errorWithMarkup("API Key is Invalid");
@@ -0,0 +1,146 @@
+package io.loader.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.loader.jenkins.api.SummaryData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import hudson.model.Result;
+import net.sf.json.JSONObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BaselineTest {
+
+    private File dir;
+    private File file;
+    private ByteArrayOutputStream output;
+    private RunLog log;
+
+    @Before
+    public void createDir() throws IOException {
+        dir = File.createTempFile("loaderio-baseline", "");
+        dir.delete();
+        dir.mkdirs();
+        file = new File(dir, "abc123.bin");
+        output = new ByteArrayOutputStream();
+        log = new RunLog(new PrintStream(output, true));
+    }
+
+    @After
+    public void deleteDir() {
+        delete(dir);
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+
+    private static SummaryData summary(int avgResponseTime, int p95ResponseTime, long success, long errors) {
+        JSONObject json = new JSONObject();
+        json.put("avg_response_time", avgResponseTime);
+        json.put("avg_error_rate", errors * 100.0 / (success + errors));
+        json.put("p95_response_time", p95ResponseTime);
+        json.put("success", success);
+        json.put("error", errors);
+        return new SummaryData(json);
+    }
+
+    // builds 1..count with a little noise around 200 ms and 1% of errors
+    private void recordSteadyBuilds(int count, int size) throws IOException {
+        for (int build = 1; build <= count; build++) {
+            int noise = (build % 3) * 5;
+            Baseline.record(file, size, build, summary(200 + noise, 300 + noise, 9900, 100));
+        }
+    }
+
+    private String[] runFiles() {
+        String[] names = new File(dir, "abc123").list();
+        return names == null ? new String[0] : names;
+    }
+
+    @Test
+    public void doesNotCompareUntilItHasEnoughBuilds() throws IOException {
+        recordSteadyBuilds(Baseline.MIN_BUILDS - 1, 10);
+        assertEquals(Result.SUCCESS, Baseline.load(file).compare(summary(5000, 9000, 5000, 5000), 10, log));
+        assertTrue(output.toString().contains("not compared yet"));
+    }
+
+    @Test
+    public void keepsTheLastBuildsOnly() throws IOException {
+        recordSteadyBuilds(15, 10);
+        assertEquals(10, Baseline.load(file).size());
+        assertEquals(10, runFiles().length);
+        assertFalse(new File(new File(dir, "abc123"), "5.run").exists());
+        assertTrue(new File(new File(dir, "abc123"), "6.run").exists());
+        // a smaller window drops the oldest at the next build
+        Baseline.record(file, 4, 16, summary(200, 300, 9900, 100));
+        assertEquals(4, Baseline.load(file).size());
+        assertEquals(4, runFiles().length);
+    }
+
+    @Test
+    public void acceptsARunLikeTheWindow() throws IOException {
+        recordSteadyBuilds(10, 10);
+        assertEquals(Result.SUCCESS, Baseline.load(file).compare(summary(210, 310, 9900, 100), 10, log));
+    }
+
+    @Test
+    public void ignoresRegressionsWithinTheTolerance() throws IOException {
+        recordSteadyBuilds(10, 10);
+        assertEquals(Result.SUCCESS, Baseline.load(file).compare(summary(215, 320, 9900, 100), 10, log));
+    }
+
+    @Test
+    public void failsOnAMuchSlowerRun() throws IOException {
+        recordSteadyBuilds(10, 10);
+        assertEquals(Result.FAILURE, Baseline.load(file).compare(summary(400, 600, 9900, 100), 10, log));
+        assertTrue(output.toString().contains("regression of average response time"));
+    }
+
+    @Test
+    public void failsOnSignificantlyMoreErrors() throws IOException {
+        recordSteadyBuilds(10, 10);
+        assertEquals(Result.FAILURE, Baseline.load(file).compare(summary(205, 305, 9700, 300), 10, log));
+        assertTrue(output.toString().contains("regression of error percentage"));
+    }
+
+    @Test
+    public void keepsTheSumsOfTheWindowAsRunsComeAndGo() throws IOException {
+        // slow builds, then as many fast ones as the window holds: only the fast ones count
+        for (int build = 1; build <= 5; build++) {
+            Baseline.record(file, 5, build, summary(1000, 2000, 9000, 1000));
+        }
+        for (int build = 6; build <= 10; build++) {
+            Baseline.record(file, 5, build, summary(200 + build, 300 + build, 9900, 100));
+        }
+        assertEquals(Result.FAILURE, Baseline.load(file).compare(summary(500, 700, 9900, 100), 10, log));
+    }
+
+    @Test
+    public void recountsTheWindowWhenARunIsLost() throws IOException {
+        for (int build = 1; build <= 5; build++) {
+            Baseline.record(file, 5, build, summary(build == 1 ? 1000 : 200, 300, 9900, 100));
+        }
+        assertTrue(new File(new File(dir, "abc123"), "1.run").delete());
+        Baseline.record(file, 5, 6, summary(200, 300, 9900, 100));
+        Baseline baseline = Baseline.load(file);
+        assertEquals(5, baseline.size());
+        // the slow build left with its run, the fast ones are all that is left
+        assertEquals(Result.FAILURE, baseline.compare(summary(260, 300, 9900, 100), 10, log));
+    }
+}
@@ -0,0 +1,141 @@
+package io.loader.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.loader.jenkins.api.SummaryData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import hudson.model.Result;
+import net.sf.json.JSONObject;
+
+import org.junit.Test;
+
+public class CapacitySearchTest {
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final RunLog log = new RunLog(new PrintStream(output, true));
+
+    /**
+     * A test whose 95th percentile is 200 ms up to {@code knee} clients and 5 s past it.
+     */
+    private static class Knee implements CapacitySearch.Probe {
+        final int knee;
+        final List<Integer> runs = new ArrayList<Integer>();
+        // runs from this one on don't end, 0 for none
+        int failingFrom;
+        boolean percentiles = true;
+
+        Knee(int knee) {
+            this.knee = knee;
+        }
+
+        public SummaryData run(int clients) {
+            runs.add(clients);
+            if (failingFrom > 0 && runs.size() >= failingFrom) {
+                return null;
+            }
+            int responseTime = clients <= knee ? 200 : 5000;
+            JSONObject json = new JSONObject();
+            json.put("avg_response_time", responseTime);
+            json.put("avg_error_rate", 0);
+            if (percentiles) {
+                json.put("p95_response_time", responseTime);
+            }
+            return new SummaryData(json);
+        }
+    }
+
+    private static CapacitySearch search(int minClients, int maxClients, int tolerance, int maxRuns) {
+        return new CapacitySearch(minClients, maxClients, 1000, 1, tolerance, maxRuns);
+    }
+
+    private static List<Integer> clients(CapacitySearch.Outcome outcome) {
+        List<Integer> clients = new ArrayList<Integer>();
+        for (CapacitySearch.Sample sample : outcome.getSamples()) {
+            clients.add(sample.getClients());
+        }
+        return clients;
+    }
+
+    @Test
+    public void rampsThenBisectsToTheKnee() throws InterruptedException {
+        Knee probe = new Knee(300);
+        CapacitySearch.Outcome outcome = search(10, 1000, 10, 20).search(probe, log);
+        assertEquals("[10, 20, 40, 80, 160, 320, 240, 280, 300]", clients(outcome).toString());
+        assertEquals(300, outcome.getCapacity());
+        assertEquals(320, outcome.getLimit());
+        assertEquals(Result.SUCCESS, outcome.getResult());
+        assertTrue(outcome.getSamples().get(0).isPercentile());
+    }
+
+    @Test
+    public void stopsBisectingWithinTheTolerance() throws InterruptedException {
+        CapacitySearch.Outcome outcome = search(10, 1000, 50, 20).search(new Knee(300), log);
+        assertEquals("[10, 20, 40, 80, 160, 320, 240]", clients(outcome).toString());
+        assertEquals(240, outcome.getCapacity());
+        assertEquals(320, outcome.getLimit());
+    }
+
+    @Test
+    public void bisectsDownToOneClient() throws InterruptedException {
+        CapacitySearch.Outcome outcome = search(1, 8, 1, 20).search(new Knee(5), log);
+        assertEquals("[1, 2, 4, 8, 6, 5]", clients(outcome).toString());
+        assertEquals(5, outcome.getCapacity());
+        assertEquals(6, outcome.getLimit());
+    }
+
+    @Test
+    public void makesNoMoreThanMaxRuns() throws InterruptedException {
+        CapacitySearch.Outcome outcome = search(10, 1000, 10, 4).search(new Knee(300), log);
+        assertEquals("[10, 20, 40, 80]", clients(outcome).toString());
+        assertEquals(80, outcome.getCapacity());
+        assertEquals(0, outcome.getLimit());
+        assertTrue(output.toString().contains("Stopped after 4 runs, objective held up to 80 clients"));
+
+        output.reset();
+        outcome = search(10, 1000, 10, 7).search(new Knee(300), log);
+        assertEquals(7, outcome.getSamples().size());
+        assertTrue(output.toString().contains("the knee is between 240 and 320 clients"));
+    }
+
+    @Test
+    public void endsAtTheMaximumWhenTheObjectiveHolds() throws InterruptedException {
+        CapacitySearch.Outcome outcome = search(10, 100, 10, 20).search(new Knee(10000), log);
+        assertEquals("[10, 20, 40, 80, 100]", clients(outcome).toString());
+        assertEquals(100, outcome.getCapacity());
+        assertTrue(output.toString().contains("held up to the maximum of 100 clients"));
+    }
+
+    @Test
+    public void isUnstableWhenEvenTheMinimumBreaches() throws InterruptedException {
+        CapacitySearch.Outcome outcome = search(10, 1000, 10, 20).search(new Knee(5), log);
+        assertEquals("[10]", clients(outcome).toString());
+        assertEquals(0, outcome.getCapacity());
+        assertEquals(Result.UNSTABLE, outcome.getResult());
+    }
+
+    @Test
+    public void failsWhenARunDoesNotEnd() throws InterruptedException {
+        Knee probe = new Knee(300);
+        probe.failingFrom = 3;
+        CapacitySearch.Outcome outcome = search(10, 1000, 10, 20).search(probe, log);
+        assertEquals("[10, 20]", clients(outcome).toString());
+        assertTrue(outcome.isFailed());
+        assertEquals(Result.FAILURE, outcome.getResult());
+    }
+
+    @Test
+    public void usesTheAverageWithoutPercentiles() throws InterruptedException {
+        Knee probe = new Knee(15);
+        probe.percentiles = false;
+        CapacitySearch.Outcome outcome = search(10, 1000, 10, 20).search(probe, log);
+        assertFalse(outcome.getSamples().get(0).isPercentile());
+        assertEquals(15, outcome.getCapacity());
+    }
+}
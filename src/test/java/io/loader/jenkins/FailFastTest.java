@@ -0,0 +1,116 @@
+package io.loader.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.loader.jenkins.api.ApiSimulator;
+import io.loader.jenkins.api.LoaderAPI;
+import io.loader.jenkins.api.PollingStrategy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+import hudson.model.Result;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Fail-fast tests run against an {@link ApiSimulator}, whose tests answer with an
+ * average response time of 180 ms.
+ */
+public class FailFastTest {
+
+    private ApiSimulator simulator;
+    private LoaderAPI api;
+    private ByteArrayOutputStream output;
+    private RunLog log;
+    private final PollingStrategy strategy = PollingStrategy.fixed(200);
+
+    @Before
+    public void startSimulator() throws Exception {
+        ApiSimulator.Script script = new ApiSimulator.Script();
+        script.latencyMillis = 0;
+        script.latencyJitterMillis = 0;
+        script.pendingMillis = 100;
+        script.summaryDelayMillis = 100;
+        script.testDurationSeconds = 60;
+        simulator = new ApiSimulator(script);
+        simulator.start(0);
+        api = new LoaderAPI("fail-fast-key", simulator.getBaseUri());
+        output = new ByteArrayOutputStream();
+        log = new RunLog(new PrintStream(output, true));
+    }
+
+    @After
+    public void stopSimulator() {
+        simulator.stop();
+    }
+
+    private LoadTest test(int index, String rules, boolean failFast) {
+        return new LoadTest(simulator.getTestId(index), rules, failFast, 1, false, false, LoadTest.DEFAULT_BASELINE_BUILDS,
+                LoadTest.DEFAULT_BASELINE_TOLERANCE, null, null);
+    }
+
+    @Test(timeout = 30000)
+    public void stopsTheTestOnceAFailureRuleKeepsHolding() throws Exception {
+        TestRun watched = new TestRun(test(0, "fail: avg_response_time > 100", true), log);
+        TestRun other = new TestRun(test(1, "", false), log);
+        TestWaves.run(Arrays.asList(watched, other), 0, api, strategy, log);
+
+        assertTrue(watched.isAborted());
+        assertEquals(Result.FAILURE, watched.result);
+        assertNotNull(watched.summary);
+        assertTrue(simulator.isStopped(simulator.getTestId(0)));
+        // the other test of the wave doesn't spend credits on a failed build
+        assertTrue(other.isAborted());
+        assertNotNull(other.failure);
+        assertTrue(simulator.isStopped(simulator.getTestId(1)));
+        assertTrue(output.toString("UTF-8").contains("Stopping test: fail: avg_response_time > 100"));
+    }
+
+    @Test(timeout = 30000)
+    public void laterWavesAreNotStartedAfterAStop() throws Exception {
+        TestRun watched = new TestRun(test(0, "fail: avg_response_time > 100", true), log);
+        TestRun next = new TestRun(test(1, "", false), log);
+        TestWaves.run(Arrays.asList(watched, next), 1, api, strategy, log);
+
+        assertTrue(watched.isAborted());
+        assertNull(next.resultId);
+        assertTrue(next.failure.startsWith("Not started"));
+        assertFalse(simulator.isStopped(simulator.getTestId(1)));
+    }
+
+    @Test(timeout = 30000)
+    public void runsToTheEndWithinTheRules() throws Exception {
+        simulator.getScript().testDurationSeconds = 2;
+        TestRun run = new TestRun(test(0, "fail: avg_response_time > 1000", true), log);
+        List<TestRun> runs = Arrays.asList(run);
+        TestWaves.run(runs, 0, api, strategy, log);
+
+        assertFalse(run.isAborted());
+        assertNull(run.failure);
+        assertTrue(run.summary.isReady());
+        assertFalse(simulator.isStopped(simulator.getTestId(0)));
+        run.evaluate();
+        assertEquals(Result.SUCCESS, run.result);
+    }
+
+    @Test
+    public void aBriefBreachDoesNotStopTheTest() throws Exception {
+        FailFastMonitor monitor = new FailFastMonitor(10000);
+        assertNull(monitor.offer(0, "slow"));
+        assertNull(monitor.offer(5000, "slow"));
+        // back within the rules, the window starts over
+        assertNull(monitor.offer(6000, null));
+        assertNull(monitor.offer(7000, "slow"));
+        assertNull(monitor.offer(16000, "slow"));
+        assertEquals("slow for 10 sec", monitor.offer(17000, "slow"));
+    }
+}
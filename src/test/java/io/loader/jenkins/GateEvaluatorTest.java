@@ -0,0 +1,182 @@
+package io.loader.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.loader.jenkins.api.SummaryData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.text.ParseException;
+
+import hudson.model.Result;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.junit.Test;
+
+public class GateEvaluatorTest {
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final RunLog log = new RunLog(new PrintStream(output, true));
+
+    /**
+     * Cumulative results of a test, 100 requests every 10 seconds, fast and clean
+     * except for the steps in [from, to) which have errors and slow responses.
+     */
+    private static class Run {
+        final int from;
+        final int to;
+        final int errorsPerStep;
+
+        Run(int from, int to, int errorsPerStep) {
+            this.from = from;
+            this.to = to;
+            this.errorsPerStep = errorsPerStep;
+        }
+
+        boolean isBad(int step) {
+            return step >= from && step < to;
+        }
+
+        // after step steps
+        SummaryData at(int step) {
+            long errors = 0;
+            long fast = 0;
+            long slow = 0;
+            for (int s = 0; s < step; s++) {
+                if (isBad(s)) {
+                    errors += errorsPerStep;
+                    slow += 100;
+                } else {
+                    fast += 100;
+                }
+            }
+            long requests = step * 100L;
+            JSONObject json = new JSONObject();
+            json.put("avg_response_time", requests == 0 ? 0 : (fast * 100 + slow * 1000) / requests);
+            json.put("avg_error_rate", requests == 0 ? 0 : errors * 100.0 / requests);
+            json.put("success", requests - errors);
+            json.put("error", errors);
+            JSONArray histogram = new JSONArray();
+            histogram.add(bucket(100, fast));
+            histogram.add(bucket(1000, slow));
+            json.put("response_time_histogram", histogram);
+            return new SummaryData(json);
+        }
+
+        private static JSONArray bucket(long value, long count) {
+            JSONArray bucket = new JSONArray();
+            bucket.add(value);
+            bucket.add(count);
+            return bucket;
+        }
+    }
+
+    private static GateEvaluator evaluator(String rules) throws ParseException {
+        return new GateEvaluator(GatingRules.parse(rules));
+    }
+
+    // offers steps 1..steps, returns the first failure reported
+    private static String offer(GateEvaluator gate, Run run, int steps) {
+        String breach = null;
+        for (int step = 1; step <= steps; step++) {
+            String b = gate.offer(step * 10000L, run.at(step));
+            if (breach == null) {
+                breach = b;
+            }
+        }
+        return breach;
+    }
+
+    @Test
+    public void checksWholeTestRulesOnTheSummary() throws ParseException {
+        GateEvaluator gate = evaluator("fail: avg_response_time > 500\nunstable: error_rate > 1\n"
+                + "unstable: timeouts > 100");
+        Run run = new Run(0, 2, 5);
+        // 2 slow steps out of 4: 550 ms on average, 2.5% errors
+        assertEquals(Result.FAILURE, gate.evaluate(run.at(4), 40000, log));
+        assertTrue(output.toString().contains("Test ended with FAILURE on rule 'fail: avg_response_time > 500'"));
+        assertTrue(output.toString().contains("Test ended with UNSTABLE on rule 'unstable: error_rate > 1'"));
+        // timeouts aren't reported
+        assertTrue(output.toString().contains("Rule 'unstable: timeouts > 100' ignored, timeouts not reported"));
+
+        output.reset();
+        assertEquals(Result.SUCCESS, evaluator("fail: avg_response_time > 500").evaluate(run.at(10), 100000, log));
+    }
+
+    @Test
+    public void catchesABurstTheWholeTestHides() throws ParseException {
+        GateEvaluator gate = evaluator("fail: error_rate > 10 over 30s");
+        // steps 6 and 7, 60 to 80 sec, have half errors: 5% of the whole test
+        Run run = new Run(6, 8, 50);
+        String breach = offer(gate, run, 20);
+        assertNotNull(breach);
+        assertTrue(breach, breach.startsWith("fail: error_rate > 10 over 30s (error_rate 16.667)"));
+        assertEquals(Result.FAILURE, gate.evaluate(run.at(20), 200000, log));
+        assertTrue(output.toString(), output.toString().contains("error_rate 16.667 at 70 sec"));
+
+        output.reset();
+        assertEquals(Result.SUCCESS, evaluator("fail: error_rate > 10").evaluate(run.at(20), 200000, log));
+    }
+
+    @Test
+    public void measuresTheWindowFromTheTotalsAtItsStart() throws ParseException {
+        GateEvaluator gate = evaluator("fail: error_rate > 40 over 20s");
+        Run run = new Run(6, 8, 50);
+        // 60 to 80 sec are both bad steps: 50%, one step either side of them dilutes it to 25%
+        assertNull(offer(gate, run, 7));
+        assertNotNull(gate.offer(80000, run.at(8)));
+        assertNull(gate.offer(90000, run.at(9)));
+    }
+
+    @Test
+    public void takesWindowedPercentilesFromTheDistributions() throws ParseException {
+        GateEvaluator gate = evaluator("unstable: p95_response_time > 500 over 20s\n"
+                + "unstable: apdex(200) < 0.5 over 20s");
+        Run run = new Run(6, 8, 0);
+        // unstable rules don't stop the test
+        assertNull(offer(gate, run, 20));
+        assertEquals(Result.UNSTABLE, gate.evaluate(run.at(20), 200000, log));
+        // a slow step out of two already
+        assertTrue(output.toString(), output.toString().contains(" at 70 sec"));
+        assertTrue(output.toString(), output.toString().contains("apdex(200) 0 at 80 sec"));
+    }
+
+    @Test
+    public void doesNotCheckAWindowLongerThanTheTest() throws ParseException {
+        GateEvaluator gate = evaluator("fail: error_rate > 10 over 5m");
+        Run run = new Run(0, 20, 50);
+        assertNull(offer(gate, run, 20));
+        assertEquals(Result.SUCCESS, gate.evaluate(run.at(20), 200000, log));
+        assertTrue(output.toString().contains("not checked, the test was shorter than its window"));
+    }
+
+    @Test
+    public void ignoresResultsOutOfOrder() throws ParseException {
+        GateEvaluator gate = evaluator("fail: error_rate > 10");
+        Run run = new Run(0, 20, 50);
+        assertNotNull(gate.offer(20000, run.at(2)));
+        assertNull(gate.offer(20000, run.at(2)));
+        assertNull(gate.offer(10000, run.at(1)));
+    }
+
+    @Test
+    public void takesOverWhatAnotherRunFound() throws ParseException {
+        String rules = "fail: error_rate > 10 over 30s";
+        GateEvaluator polled = evaluator(rules);
+        Run run = new Run(6, 8, 50);
+        offer(polled, run, 20);
+
+        GateEvaluator reported = evaluator(rules);
+        reported.takeOver(polled.getState());
+        assertEquals(Result.FAILURE, reported.evaluate(run.at(20), 200000, log));
+        // nor what was found on other rules
+        GateEvaluator other = evaluator(rules + "\nfail: error_rate > 10");
+        other.takeOver(polled.getState());
+        output.reset();
+        assertEquals(Result.SUCCESS, other.evaluate(run.at(20), 200000, log));
+    }
+}
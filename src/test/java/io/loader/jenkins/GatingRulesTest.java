@@ -0,0 +1,163 @@
+package io.loader.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.loader.jenkins.api.Metric;
+
+import java.text.ParseException;
+
+import hudson.model.Result;
+
+import org.junit.Test;
+
+public class GatingRulesTest {
+
+    // every comparison has the same value
+    private static GatingRules.Values all(final double value) {
+        return new GatingRules.Values() {
+            public double get(GatingRules.Comparison comparison) {
+                return value;
+            }
+        };
+    }
+
+    private static void assertRefused(String text, String message) {
+        try {
+            GatingRules.parse(text);
+            fail("parsed " + text);
+        } catch (ParseException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void hasNoRulesForBlankText() throws ParseException {
+        assertSame(GatingRules.NONE, GatingRules.parse(null));
+        assertSame(GatingRules.NONE, GatingRules.parse(" \n "));
+        assertTrue(GatingRules.parse("# only a comment\n").isEmpty());
+    }
+
+    @Test
+    public void readsLevelsAndComparisons() throws ParseException {
+        GatingRules rules = GatingRules.parse("fail: error_rate > 5\n\n# slow\nUNSTABLE: P95_Response_Time >= 800");
+        assertEquals(2, rules.rules.size());
+        GatingRules.Rule fail = rules.rules.get(0);
+        assertEquals(Result.FAILURE, fail.level);
+        assertEquals(1, fail.line);
+        GatingRules.Comparison errors = (GatingRules.Comparison) fail.condition;
+        assertSame(GatingRules.Measure.ERROR_RATE, errors.measure);
+        assertEquals(">", errors.op);
+        assertEquals(5, errors.limit, 0);
+        GatingRules.Rule unstable = rules.rules.get(1);
+        assertEquals(Result.UNSTABLE, unstable.level);
+        assertEquals(4, unstable.line);
+        assertSame(GatingRules.Measure.P95_RESPONSE_TIME, ((GatingRules.Comparison) unstable.condition).measure);
+        assertFalse(rules.isWindowed());
+    }
+
+    @Test
+    public void bindsAndTighterThanOr() throws ParseException {
+        GatingRules.Condition condition = GatingRules.parse("fail: error_rate > 5 or avg_response_time > 1 and timeouts > 1")
+                .rules.get(0).condition;
+        GatingRules.Junction or = (GatingRules.Junction) condition;
+        assertFalse(or.and);
+        assertEquals(2, or.parts.size());
+        assertTrue(((GatingRules.Junction) or.parts.get(1)).and);
+
+        GatingRules.Junction grouped = (GatingRules.Junction) GatingRules.parse(
+                "fail: (error_rate > 5 or avg_response_time > 1) and timeouts > 1").rules.get(0).condition;
+        assertTrue(grouped.and);
+    }
+
+    @Test
+    public void comparesWithinTheTolerance() throws ParseException {
+        GatingRules.Condition above = GatingRules.parse("fail: error_rate > 5").rules.get(0).condition;
+        assertEquals(Boolean.FALSE, above.holds(all(5)));
+        assertEquals(Boolean.FALSE, above.holds(all(5 + LoadTest.thresholdTolerance / 2)));
+        assertEquals(Boolean.TRUE, above.holds(all(5.001)));
+        GatingRules.Condition atLeast = GatingRules.parse("fail: error_rate >= 5").rules.get(0).condition;
+        assertEquals(Boolean.TRUE, atLeast.holds(all(5)));
+        GatingRules.Condition below = GatingRules.parse("fail: requests_per_second < 100").rules.get(0).condition;
+        assertEquals(Boolean.TRUE, below.holds(all(99)));
+        assertEquals(Boolean.FALSE, below.holds(all(100)));
+    }
+
+    @Test
+    public void leavesUnknownValuesUndecidedUnlessTheOthersDecide() throws ParseException {
+        final GatingRules rules = GatingRules.parse("fail: error_rate > 5 or timeouts > 10\n"
+                + "fail: error_rate > 5 and timeouts > 10");
+        // error rate unknown, 20 timeouts
+        GatingRules.Values values = new GatingRules.Values() {
+            public double get(GatingRules.Comparison comparison) {
+                return comparison.measure == GatingRules.Measure.ERROR_RATE ? Double.NaN : 20;
+            }
+        };
+        assertEquals(Boolean.TRUE, rules.rules.get(0).condition.holds(values));
+        assertNull(rules.rules.get(1).condition.holds(values));
+        assertEquals("error_rate not reported, timeouts 20", rules.rules.get(1).describe(values));
+    }
+
+    @Test
+    public void sharesApdexTargetsAndWindows() throws ParseException {
+        GatingRules rules = GatingRules.parse("unstable: apdex(500) < 0.85 over 1m\n"
+                + "fail: apdex(500) < 0.5 or apdex(200) < 0.2 over 60s\n"
+                + "fail: requests_per_second < 100 over 30s");
+        assertEquals(2, rules.apdexMillis.length);
+        assertEquals(500, rules.apdexMillis[0]);
+        assertEquals(200, rules.apdexMillis[1]);
+        assertEquals(2, rules.windowSeconds.length);
+        assertEquals(60, rules.windowSeconds[0]);
+        assertEquals(30, rules.windowSeconds[1]);
+        assertTrue(rules.isWindowed());
+        assertFalse(rules.windowedPercentiles);
+        assertTrue(rules.rules.get(0).windowed);
+        // a rule is windowed as soon as one of its comparisons is
+        assertTrue(rules.rules.get(1).windowed);
+        assertEquals("apdex(200)", ((GatingRules.Comparison) ((GatingRules.Junction) rules.rules.get(1).condition)
+                .parts.get(1)).operand);
+    }
+
+    @Test
+    public void keepsDistributionsForWindowedPercentilesOnly() throws ParseException {
+        assertFalse(GatingRules.parse("fail: p95_response_time > 800").windowedPercentiles);
+        assertTrue(GatingRules.parse("fail: p95_response_time > 800 over 30s").windowedPercentiles);
+    }
+
+    @Test
+    public void reportsTheLineOfAnError() {
+        try {
+            GatingRules.parse("fail: error_rate > 5\n\nfail: latency > 5");
+            fail();
+        } catch (ParseException ex) {
+            assertEquals(3, ex.getErrorOffset());
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith("line 3: unknown metric latency"));
+        }
+    }
+
+    @Test
+    public void refusesMalformedRules() {
+        assertRefused("error_rate > 5", "a rule starts with fail: or unstable:");
+        assertRefused("fail error_rate > 5", "expected :");
+        assertRefused("fail: error_rate = 5", "unexpected '='");
+        assertRefused("fail: error_rate > five", "expected a number after >");
+        assertRefused("fail: error_rate > 5 timeouts > 1", "unexpected timeouts");
+        assertRefused("fail: (error_rate > 5", "expected )");
+        assertRefused("fail: apdex(0) < 0.5", "the apdex target should be greater than 0 ms");
+        assertRefused("fail: error_rate > 5 over 30", "a duration needs a unit");
+        assertRefused("fail: error_rate > 5 over 0s", "greater than 0");
+        assertRefused("fail: max_response_time > 5 over 30s", "max_response_time can't be taken over a window");
+    }
+
+    @Test
+    public void writesTheRuleOfAnOlderThreshold() {
+        assertEquals("fail: error_rate > 5",
+                GatingRules.thresholdRule(Result.FAILURE, Metric.ERROR_RATE, "5"));
+        assertEquals("unstable: requests_per_second < 100",
+                GatingRules.thresholdRule(Result.UNSTABLE, Metric.REQUESTS_PER_SECOND, "100"));
+    }
+}
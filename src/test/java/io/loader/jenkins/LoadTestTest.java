@@ -0,0 +1,48 @@
+package io.loader.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import hudson.model.Result;
+
+import org.junit.Test;
+
+public class LoadTestTest {
+
+    @Test
+    public void turnsTheThresholdsOfEarlierJobsIntoRules() {
+        assertEquals("fail: error_rate > 5\nunstable: error_rate > 2\n"
+                + "fail: avg_response_time > 1000\nunstable: avg_response_time > 0\n",
+                LoadTest.thresholdRules(5, 2, 1000, 0));
+        LoadTest test = new LoadTest("abc123", 5, 2, 1000, 0);
+        assertEquals(4, test.getGatingRules().rules.size());
+    }
+
+    @Test
+    public void leavesOutThresholdsThatWereNeverSet() {
+        assertEquals("fail: error_rate > 5\n", LoadTest.thresholdRules(5, null, -1, null));
+        assertEquals("", LoadTest.thresholdRules(null, null, null, null));
+    }
+
+    private static LoadTest test(String testId, FanOutAccount... fanOut) {
+        return new LoadTest(testId, "", false, 0, false, false, 0, 0, null, Arrays.asList(fanOut));
+    }
+
+    @Test
+    public void refusesATestListedTwice() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RunLog log = new RunLog(new PrintStream(output, true));
+        assertEquals(Result.SUCCESS, LoadTest.validateIds(Arrays.asList(test("abc"), test("def")), log));
+        assertEquals(Result.SUCCESS, LoadTest.validateIds(Collections.<LoadTest>emptyList(), log));
+        assertEquals(Result.NOT_BUILT, LoadTest.validateIds(Arrays.asList(test("abc"), test("def"), test("abc")), log));
+        assertTrue(output.toString().contains("ERROR! test abc is listed more than once"));
+        // copies in other accounts are run too
+        assertEquals(Result.NOT_BUILT, LoadTest.validateIds(Arrays.asList(test("abc"),
+                test("def", new FanOutAccount("other", "abc"))), log));
+    }
+}
@@ -0,0 +1,98 @@
+package io.loader.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.loader.jenkins.api.LatencyHistogram;
+import io.loader.jenkins.api.SummaryData;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.junit.Test;
+
+public class TimelineSampleTest {
+
+    // running totals: fast requests, then slow ones with errors
+    private static SummaryData interim(long fast, long slow, long errors) {
+        long requests = fast + slow;
+        JSONObject json = new JSONObject();
+        json.put("avg_response_time", (fast * 100 + slow * 1000) / requests);
+        json.put("avg_error_rate", errors * 100.0 / requests);
+        json.put("success", requests - errors);
+        json.put("error", errors);
+        JSONArray histogram = new JSONArray();
+        histogram.add(JSONArray.fromObject(new long[] {100, fast}));
+        histogram.add(JSONArray.fromObject(new long[] {1000, slow}));
+        json.put("response_time_histogram", histogram);
+        return new SummaryData(json);
+    }
+
+    @Test
+    public void showsASpikeTheRunningAveragesHide() {
+        SummaryData early = interim(9000, 0, 0);
+        TimelineSample first = TimelineSample.of(90000, early, new LatencyHistogram());
+        TimelineSample second = TimelineSample.of(100000, interim(9000, 1000, 500), early.histogram);
+        assertEquals(100, first.avgResponseTimeSince(null), 0);
+        assertEquals(0, first.errorRateSince(null), 0);
+        assertEquals(100, first.p99ResponseTime, 100 / 32);
+        // the last interval only had slow requests, half of them errors
+        assertEquals(1000, second.avgResponseTimeSince(first), 0);
+        assertEquals(50, second.errorRateSince(first), 0);
+        assertEquals(1000, second.p99ResponseTime, 1000 / 32);
+        // while the whole test looks fine
+        assertEquals(190, second.avgResponseTimeSince(null), 0);
+        assertEquals(5, second.errorRateSince(null), 0);
+    }
+
+    @Test
+    public void leavesOutWhatWasNotReported() {
+        JSONObject json = new JSONObject();
+        json.put("avg_response_time", 200);
+        json.put("avg_error_rate", 1);
+        TimelineSample unknown = TimelineSample.of(10000, new SummaryData(json), new LatencyHistogram());
+        assertEquals(-1, unknown.requests);
+        assertEquals(-1, unknown.p99ResponseTime);
+        assertTrue(Double.isNaN(unknown.avgResponseTimeSince(null)));
+        TimelineSample known = TimelineSample.of(20000, interim(100, 0, 0), null);
+        assertTrue(Double.isNaN(known.errorRateSince(unknown)));
+        // no distribution of the previous sample to take the interval's from
+        assertEquals(-1, known.p99ResponseTime);
+        // no request in the interval
+        assertTrue(Double.isNaN(known.avgResponseTimeSince(known)));
+    }
+
+    @Test
+    public void keepsTheTotalsInTheSnapshot() throws IOException {
+        File file = File.createTempFile("loaderio", ".snapshot");
+        try {
+            SnapshotWriter writer = SnapshotWriter.create(file);
+            writer.append(new TimelineSample(10000, 1000, 10, 200000, 300));
+            writer.append(new TimelineSample(20000, 3000000000L, 20, 600000000000L, -1));
+            ResultSnapshot unfinished = ResultSnapshot.open(file);
+            assertFalse(unfinished.isComplete());
+            assertEquals(2, unfinished.getSampleCount());
+            writer.finish(interim(10, 0, 0));
+
+            ResultSnapshot snapshot = ResultSnapshot.open(file);
+            assertTrue(snapshot.isComplete());
+            TimelineSample first = snapshot.getSample(0);
+            assertEquals(10000, first.elapsedMillis);
+            assertEquals(1000, first.requests);
+            assertEquals(10, first.errors);
+            assertEquals(200000, first.responseTimeSum);
+            assertEquals(300, first.p99ResponseTime);
+            TimelineSample second = snapshot.getTimeline().get(1);
+            assertEquals(3000000000L, second.requests);
+            assertEquals(600000000000L, second.responseTimeSum);
+            assertEquals(-1, second.p99ResponseTime);
+            assertEquals(10, snapshot.getSummary().successCount);
+        } finally {
+            file.delete();
+        }
+    }
+}
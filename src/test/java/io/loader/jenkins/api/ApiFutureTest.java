@@ -0,0 +1,30 @@
+package io.loader.jenkins.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ApiFutureTest {
+
+    @Test
+    public void runsEveryListenerWhenOneFails() throws Exception {
+        final AtomicInteger ran = new AtomicInteger();
+        ApiFuture<String> future = new ApiFuture<String>();
+        future.addListener(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("listener failed");
+            }
+        });
+        future.addListener(new Runnable() {
+            public void run() {
+                ran.incrementAndGet();
+            }
+        });
+        assertTrue(future.set("done"));
+        assertEquals(1, ran.get());
+        assertEquals("done", future.get());
+    }
+}
@@ -0,0 +1,87 @@
+package io.loader.jenkins.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ApiReplayTest {
+
+    private static ApiReplay.Exchange stopped(String testId, int latencyMillis) throws Exception {
+        ApiReplay.Exchange exchange = new ApiReplay.Exchange();
+        exchange.latencyMillis = latencyMillis;
+        exchange.method = "PUT";
+        exchange.path = "tests/" + testId + "/stop";
+        exchange.code = 200;
+        exchange.retryAfter = "";
+        exchange.content = "{}".getBytes("UTF-8");
+        return exchange;
+    }
+
+    private static LoaderAPI replaying(String apiKey, ApiReplay replay) {
+        // nothing listens there, every answer has to come from the replay
+        LoaderAPI api = new LoaderAPI(apiKey, "http://127.0.0.1:9/");
+        api.replayFrom(replay);
+        return api;
+    }
+
+    @Test(timeout = 10000)
+    public void answersAfterTheRecordedTime() throws Exception {
+        List<ApiReplay.Exchange> exchanges = new ArrayList<ApiReplay.Exchange>();
+        exchanges.add(stopped("abc", 400));
+        long started = System.currentTimeMillis();
+        assertTrue(replaying("replay-timed", new ApiReplay(exchanges, 2)).stopTest("abc"));
+        assertTrue(System.currentTimeMillis() - started >= 200);
+    }
+
+    @Test(timeout = 10000)
+    public void holdsNoThreadWhileAnswersAreDue() throws Exception {
+        int calls = LoaderAPI.THREADS * 4;
+        List<ApiReplay.Exchange> exchanges = new ArrayList<ApiReplay.Exchange>();
+        for (int i = 0; i < calls; i++) {
+            exchanges.add(stopped("t" + i, 500));
+        }
+        ApiReplay replay = new ApiReplay(exchanges, 1);
+        // the executor is shared, let calls left over from other tests finish first
+        while (LoaderAPI.getActiveThreads() > 0) {
+            Thread.sleep(10);
+        }
+        List<ApiFuture<Boolean>> stops = new ArrayList<ApiFuture<Boolean>>();
+        for (int i = 0; i < calls; i++) {
+            // a key each, out of reach of the rate limit
+            stops.add(replaying("replay-concurrent-" + i, replay).stopTestAsync("t" + i));
+        }
+        // sleeping on the executor would keep every one of its threads busy
+        int busiest = 0;
+        while (!stops.get(calls - 1).isDone()) {
+            busiest = Math.max(busiest, LoaderAPI.getActiveThreads());
+            Thread.sleep(5);
+        }
+        assertTrue("threads busy: " + busiest, busiest < LoaderAPI.THREADS);
+        for (ApiFuture<Boolean> stop : stops) {
+            assertTrue(stop.get());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void onlyAnswersTheInstancesItIsGivenTo() throws Exception {
+        List<ApiReplay.Exchange> exchanges = new ArrayList<ApiReplay.Exchange>();
+        exchanges.add(stopped("abc", 0));
+        replaying("replay-given", new ApiReplay(exchanges, 0));
+        assertFalse(new LoaderAPI("replay-other", "http://127.0.0.1:9/").stopTest("abc"));
+    }
+
+    @Test(timeout = 10000)
+    public void failsARequestNeverRecorded() throws Exception {
+        List<ApiReplay.Exchange> exchanges = new ArrayList<ApiReplay.Exchange>();
+        exchanges.add(stopped("abc", 0));
+        LoaderAPI api = replaying("replay-unknown", new ApiReplay(exchanges, 0));
+        assertFalse(api.stopTest("xyz"));
+        assertTrue(api.stopTest("abc"));
+        assertEquals(0, new ApiReplay(exchanges, 0).delayOf(exchanges.get(0)));
+    }
+}
@@ -0,0 +1,406 @@
+package io.loader.jenkins.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the loader.io API, for running the plugin without an account,
+ * in the tests and in the benchmarks.
+ *
+ * Serves {@code /v2/apps}, {@code /v2/tests}, {@code /v2/tests/{id}} (GET, and PUT
+ * of the {@code total} clients), {@code /v2/tests/{id}/run}, {@code /v2/tests/{id}/stop}
+ * and {@code /v2/tests/{id}/results/{id}}. How it answers is set by a {@link Script},
+ * which can be changed while it runs. A test that is started is pending, then
+ * running for its duration, then complete; its results are ready a little later.
+ * Past {@link Script#kneeClients} its results get worse with the clients it runs with.
+ *
+ * Run it on its own and set the plugin's API URL to the one it prints:
+ * <pre>
+ * java -cp benchmarks.jar -Dsimulator.port=8089 -Dsimulator.errorRate=0.01 io.loader.jenkins.api.ApiSimulator
+ * </pre>
+ */
+public class ApiSimulator {
+
+    static {
+        // responses are written in two parts, don't let Nagle hold the body back; read once by the JDK server
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    /**
+     * Behaviour of the simulator, read on every request.
+     */
+    public static class Script {
+        // added to every response, plus up to latencyJitterMillis
+        public volatile int latencyMillis = 20;
+        public volatile int latencyJitterMillis = 10;
+        // share of requests answered with a 500
+        public volatile double errorRate = 0;
+        // per API key, requests over it are answered with a 429, 0 for no limit
+        public volatile int requestsPerSecond = 0;
+        public volatile int tests = 20;
+        public volatile int testDurationSeconds = 10;
+        public volatile int pendingMillis = 1000;
+        // after the test ends, until then results are not ready
+        public volatile int summaryDelayMillis = 2000;
+        // results of every test
+        public volatile int avgResponseTime = 180;
+        public volatile double avgErrorRate = 0.5;
+        // clients of tests not set through the API
+        public volatile int clients = 10;
+        // response time grows with the square of the load past it, errors with the cube; 0 for no limit
+        public volatile int kneeClients = 0;
+
+        /**
+         * Script from {@code simulator.*} system properties, e.g. {@code -Dsimulator.latency=50}.
+         */
+        public static Script fromSystemProperties() {
+            Script script = new Script();
+            script.latencyMillis = Integer.getInteger("simulator.latency", script.latencyMillis);
+            script.latencyJitterMillis = Integer.getInteger("simulator.latencyJitter", script.latencyJitterMillis);
+            script.errorRate = Double.parseDouble(System.getProperty("simulator.errorRate", String.valueOf(script.errorRate)));
+            script.requestsPerSecond = Integer.getInteger("simulator.requestsPerSecond", script.requestsPerSecond);
+            script.tests = Integer.getInteger("simulator.tests", script.tests);
+            script.testDurationSeconds = Integer.getInteger("simulator.testDuration", script.testDurationSeconds);
+            script.pendingMillis = Integer.getInteger("simulator.pending", script.pendingMillis);
+            script.summaryDelayMillis = Integer.getInteger("simulator.summaryDelay", script.summaryDelayMillis);
+            script.avgResponseTime = Integer.getInteger("simulator.avgResponseTime", script.avgResponseTime);
+            script.avgErrorRate = Double.parseDouble(System.getProperty("simulator.avgErrorRate", String.valueOf(script.avgErrorRate)));
+            script.clients = Integer.getInteger("simulator.clients", script.clients);
+            script.kneeClients = Integer.getInteger("simulator.kneeClients", script.kneeClients);
+            return script;
+        }
+    }
+
+    /**
+     * One started test. Ids of unknown tests are accepted too, so every simulated
+     * build can run a test of its own.
+     */
+    private class Run {
+        final String resultId;
+        final long startedAt = System.currentTimeMillis();
+        final int durationSeconds = script.testDurationSeconds;
+        final int clients;
+        volatile long stoppedAt = -1;
+
+        Run(String resultId, int clients) {
+            this.resultId = resultId;
+            this.clients = clients;
+        }
+
+        long endsAt() {
+            long end = startedAt + script.pendingMillis + durationSeconds * 1000L;
+            return stoppedAt < 0 ? end : Math.min(end, stoppedAt);
+        }
+
+        String status(long now) {
+            if (now >= endsAt()) {
+                return "complete";
+            }
+            return now < startedAt + script.pendingMillis ? "pending" : "running";
+        }
+    }
+
+    private final Script script;
+    private final Random random = new Random();
+    private final ConcurrentMap<String, Run> runs = new ConcurrentHashMap<String, Run>();
+    // set through the API, per test
+    private final ConcurrentMap<String, Integer> clients = new ConcurrentHashMap<String, Integer>();
+    // requests of the current second, per API key
+    private final ConcurrentMap<String, AtomicInteger> window = new ConcurrentHashMap<String, AtomicInteger>();
+    private volatile long windowSecond;
+    private final AtomicInteger nextResult = new AtomicInteger();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService threads;
+
+    public ApiSimulator(Script script) {
+        this.script = script;
+    }
+
+    public Script getScript() {
+        return script;
+    }
+
+    /**
+     * Starts serving on the loopback interface, {@code port} 0 for any free one.
+     */
+    public synchronized void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 512);
+        server.createContext("/v2/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        // scripted latency sleeps, every request gets its own thread
+        threads = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "loader.io API simulator");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        server.setExecutor(threads);
+        server.start();
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            threads.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * @return the URL to give to {@link LoaderAPI}, ending with {@code /v2/}
+     */
+    public String getBaseUri() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v2/";
+    }
+
+    public String getTestId(int index) {
+        return String.format("%032x", index);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    /**
+     * Whether the test was stopped through the API since it was last started.
+     */
+    public boolean isStopped(String testId) {
+        Run run = runs.get(testId);
+        return run != null && run.stoppedAt >= 0;
+    }
+
+    /**
+     * Clients the test ends with, as last set through the API.
+     */
+    public int getClients(String testId) {
+        Integer set = clients.get(testId);
+        return set == null ? script.clients : set;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String body = read(exchange.getRequestBody());
+        int latency = script.latencyMillis;
+        int jitter = script.latencyJitterMillis;
+        double errorRate = script.errorRate;
+        boolean fail;
+        synchronized (random) {
+            latency += jitter > 0 ? random.nextInt(jitter + 1) : 0;
+            fail = errorRate > 0 && random.nextDouble() < errorRate;
+        }
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (isThrottled(exchange.getRequestHeaders().getFirst("loaderio-Auth"))) {
+            throttled.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 429, error("rate limit exceeded"));
+            return;
+        }
+        if (fail) {
+            errors.incrementAndGet();
+            send(exchange, 500, error("simulated failure"));
+            return;
+        }
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().substring("/v2/".length()).split("/");
+        long now = System.currentTimeMillis();
+        if (path.length == 1 && "apps".equals(path[0]) && "GET".equals(method)) {
+            send(exchange, 200, "[{\"app_id\": \"0123456789abcdef\", \"app\": \"shop.example.com\", \"status\": \"verified\"}]");
+        } else if (path.length == 1 && "tests".equals(path[0]) && "GET".equals(method)) {
+            send(exchange, 200, testList(exchange.getRequestURI().getQuery()));
+        } else if (path.length == 2 && "tests".equals(path[0]) && "GET".equals(method)) {
+            Run run = runs.get(path[1]);
+            send(exchange, 200, test(path[1], run == null ? "complete" : run.status(now)));
+        } else if (path.length == 2 && "tests".equals(path[0]) && "PUT".equals(method)) {
+            int total = jsonInt(body, "total");
+            if (total <= 0) {
+                send(exchange, 422, error("total should be greater than 0"));
+            } else {
+                clients.put(path[1], total);
+                send(exchange, 200, test(path[1], "complete"));
+            }
+        } else if (path.length == 3 && "run".equals(path[2]) && "PUT".equals(method)) {
+            String resultId = String.format("%016x", nextResult.incrementAndGet());
+            runs.put(path[1], new Run(resultId, getClients(path[1])));
+            send(exchange, 200, "{\"message\": \"success\", \"result_id\": \"" + resultId + "\"}");
+        } else if (path.length == 3 && "stop".equals(path[2]) && "PUT".equals(method)) {
+            Run run = runs.get(path[1]);
+            if (run == null) {
+                send(exchange, 404, error("test not running"));
+            } else {
+                run.stoppedAt = now;
+                send(exchange, 200, "{\"message\": \"success\"}");
+            }
+        } else if (path.length == 4 && "results".equals(path[2]) && "GET".equals(method)) {
+            Run run = runs.get(path[1]);
+            if (run == null || !run.resultId.equals(path[3])) {
+                send(exchange, 404, error("no such result"));
+            } else {
+                send(exchange, 200, summary(run, now));
+            }
+        } else {
+            send(exchange, 404, error("not found"));
+        }
+    }
+
+    private boolean isThrottled(String apiKey) {
+        int limit = script.requestsPerSecond;
+        if (limit <= 0) {
+            return false;
+        }
+        long second = System.currentTimeMillis() / 1000;
+        if (second != windowSecond) {
+            windowSecond = second;
+            window.clear();
+        }
+        String key = apiKey == null ? "" : apiKey;
+        AtomicInteger count = window.get(key);
+        if (count == null) {
+            AtomicInteger created = new AtomicInteger();
+            count = window.putIfAbsent(key, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        return count.incrementAndGet() > limit;
+    }
+
+    // paged with page (from 1) and per_page, every test at once without them
+    private String testList(String query) {
+        int perPage = queryInt(query, "per_page", script.tests);
+        int from = Math.max(0, (queryInt(query, "page", 1) - 1) * perPage);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = from; i < Math.min(script.tests, from + perPage); i++) {
+            if (i > from) {
+                json.append(',');
+            }
+            json.append("{\"test_id\": \"").append(getTestId(i)).append("\", \"name\": \"Simulated test ")
+                .append(i).append("\", \"domain\": \"shop.example.com\", \"status\": \"active\"}");
+        }
+        return json.append(']').toString();
+    }
+
+    private static int queryInt(String query, String name, int defaultValue) {
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith(name + "=")) {
+                    try {
+                        return Integer.parseInt(param.substring(name.length() + 1));
+                    } catch (NumberFormatException ex) {
+                        return defaultValue;
+                    }
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    private String test(String testId, String status) {
+        return "{\"test_id\": \"" + testId + "\", \"name\": \"Simulated test\", \"domain\": \"shop.example.com\","
+                + " \"status\": \"" + status + "\", \"duration\": " + script.testDurationSeconds + ","
+                + " \"initial\": 0, \"total\": " + getClients(testId) + "}";
+    }
+
+    // interim results while the test runs, not ready until summaryDelayMillis after it ended
+    private String summary(Run run, long now) {
+        long end = run.endsAt();
+        boolean ready = now >= end + script.summaryDelayMillis;
+        long elapsed = Math.max(0, Math.min(now, end) - run.startedAt - script.pendingMillis);
+        long requestCount = elapsed / 10;
+        int knee = script.kneeClients;
+        double overload = knee > 0 && run.clients > knee ? run.clients / (double) knee : 1;
+        int avg = (int) (script.avgResponseTime * overload * overload);
+        double errorRate = Math.min(100, script.avgErrorRate * overload * overload * overload);
+        long errorCount = (long) (requestCount * errorRate / 100);
+        return "{\"status\": \"" + (ready ? "ready" : "not_ready") + "\","
+                + " \"avg_response_time\": " + avg + ", \"avg_error_rate\": " + errorRate + ","
+                + " \"min_response_time\": " + (avg / 4) + ", \"max_response_time\": " + (avg * 8) + ","
+                + " \"p50_response_time\": " + (avg * 9 / 10) + ", \"p90_response_time\": " + (avg * 2) + ","
+                + " \"p95_response_time\": " + (avg * 5 / 2) + ", \"p99_response_time\": " + (avg * 4) + ","
+                + " \"requests_per_second\": " + (elapsed == 0 ? 0 : requestCount * 1000.0 / elapsed) + ","
+                + " \"success\": " + (requestCount - errorCount) + ", \"error\": " + errorCount + "}";
+    }
+
+    private static String error(String message) {
+        return "{\"message\": \"error\", \"errors\": [\"" + message + "\"]}";
+    }
+
+    private static void send(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            body.write(buffer, 0, n);
+        }
+        in.close();
+        return body.toString("UTF-8");
+    }
+
+    // a number field of a flat JSON object, -1 if there is none
+    private static int jsonInt(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\"\\s*:\\s*(\\d+)").matcher(json);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    public static void main(String[] args) throws Exception {
+        ApiSimulator simulator = new ApiSimulator(Script.fromSystemProperties());
+        simulator.start(Integer.getInteger("simulator.port", 8089));
+        System.out.println("loader.io API simulator at " + simulator.getBaseUri() + ", Ctrl-C to stop");
+        Thread.sleep(Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,83 @@
+package io.loader.jenkins.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.loader.jenkins.api.CircuitBreaker.Permit;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterFailuresInARow() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000);
+        breaker.recordFailure("HTTP 500");
+        breaker.recordFailure("HTTP 500");
+        breaker.recordSuccess();
+        breaker.recordFailure("HTTP 500");
+        breaker.recordFailure("HTTP 500");
+        assertEquals(Permit.GRANTED, breaker.allowRequest());
+        assertNull(breaker.getOpenReason());
+        breaker.recordFailure("HTTP 503");
+        assertTrue(breaker.isOpen());
+        assertEquals(Permit.DENIED, breaker.allowRequest());
+        assertTrue(breaker.getOpenReason().contains("HTTP 503"));
+    }
+
+    @Test
+    public void letsOneProbeThroughAfterThePause() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.recordFailure("HTTP 500");
+        assertEquals(Permit.PROBE, breaker.allowRequest());
+        assertEquals(Permit.DENIED, breaker.allowRequest());
+        breaker.recordSuccess();
+        breaker.endProbe();
+        assertFalse(breaker.isOpen());
+        assertEquals(Permit.GRANTED, breaker.allowRequest());
+    }
+
+    @Test
+    public void probesAgainAfterAFailedProbe() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.recordFailure("HTTP 500");
+        assertEquals(Permit.PROBE, breaker.allowRequest());
+        breaker.recordFailure("HTTP 500");
+        breaker.endProbe();
+        assertTrue(breaker.isOpen());
+        assertEquals(Permit.PROBE, breaker.allowRequest());
+    }
+
+    @Test
+    public void releasesAProbeThatGotNoAnswer() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.recordFailure("HTTP 500");
+        assertEquals(Permit.PROBE, breaker.allowRequest());
+        // e.g. the call threw before any answer
+        breaker.endProbe();
+        assertTrue(breaker.isOpen());
+        assertEquals(Permit.PROBE, breaker.allowRequest());
+    }
+
+    @Test
+    public void waitsForTheServerAfterAThrottledProbe() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.recordFailure("HTTP 500");
+        assertEquals(Permit.PROBE, breaker.allowRequest());
+        long retryAt = System.currentTimeMillis() + 60000;
+        breaker.retryAt(retryAt);
+        breaker.endProbe();
+        assertEquals(retryAt, breaker.getOpenUntil());
+        assertEquals(Permit.DENIED, breaker.allowRequest());
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    public void ignoresThrottlingWhileClosed() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        breaker.retryAt(System.currentTimeMillis() + 60000);
+        assertEquals(Permit.GRANTED, breaker.allowRequest());
+    }
+}
@@ -0,0 +1,120 @@
+package io.loader.jenkins.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.junit.Test;
+
+public class DecodersTest {
+
+    private static <T> T decode(ResponseDecoder<T> decoder, String body) throws IOException {
+        JsonParser parser = Decoders.jsonFactory.createJsonParser(body.replace('\'', '"'));
+        try {
+            return decoder.decode(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    @Test
+    public void readsATest() throws IOException {
+        TestData data = decode(Decoders.TEST_DATA,
+                "{'test_id': 'abc', 'name': 'home', 'status': 'running', 'duration': 60, 'initial': 0, 'total': 250,"
+                + " 'urls': [{'url': 'http://example.com/', 'variables': {}}]}");
+        assertEquals("abc", data.testId);
+        assertEquals("running", data.status);
+        assertEquals(60, data.duration);
+        assertEquals(0, data.initial);
+        assertEquals(250, data.total);
+    }
+
+    @Test
+    public void leavesOutAStructureInPlaceOfAValue() throws IOException {
+        TestData data = decode(Decoders.TEST_DATA,
+                "{'test_id': 'abc', 'total': {'clients': 250}, 'status': 'running', 'duration': 60}");
+        assertEquals(-1, data.total);
+        assertEquals("running", data.status);
+        SummaryData summary = decode(Decoders.SUMMARY_DATA,
+                "{'status': 'ready', 'p95_response_time': [400, 410], 'avg_response_time': 200,"
+                + " 'success': {'count': 99}, 'avg_error_rate': 1.0, 'error': 1}");
+        assertEquals(-1, summary.p95ResponseTime);
+        assertEquals(-1, summary.successCount);
+        assertEquals(200, summary.avgResponseTime);
+        assertEquals(1, summary.errorCount);
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void refusesATestWithoutItsDuration() throws IOException {
+        decode(Decoders.TEST_DATA, "{'test_id': 'abc', 'status': 'running', 'duration': {'seconds': 60}}");
+    }
+
+    @Test
+    public void readsASummary() throws IOException {
+        SummaryData data = decode(Decoders.SUMMARY_DATA,
+                "{'status': 'ready', 'avg_response_time': 200, 'avg_error_rate': 0.5, 'p95_response_time': 400,"
+                + " 'success': 995, 'error': 5, 'timeout_error': null, 'data_sent': 12000, 'extra': {'a': [1]}}");
+        assertTrue(data.hasMetrics);
+        assertEquals(200, data.avgResponseTime);
+        assertEquals(0.5, data.avgErrorRate, 0);
+        assertEquals(400, data.p95ResponseTime);
+        assertEquals(995, data.successCount);
+        assertEquals(5, data.errorCount);
+        assertEquals(-1, data.timeouts);
+        assertEquals(12000, data.dataSent);
+        assertNull(data.histogram);
+        assertEquals(-1, data.p99ResponseTime);
+    }
+
+    @Test
+    public void readsTheDistributionOfASummary() throws IOException {
+        SummaryData data = decode(Decoders.SUMMARY_DATA,
+                "{'avg_response_time': 118, 'avg_error_rate': 0, 'response_time_histogram': [[100, 980], [1000, 20]]}");
+        assertEquals(1000, data.histogram.getTotalCount());
+        assertEquals(100, data.minResponseTime, 100 / 32);
+        assertEquals(1000, data.p99ResponseTime, 1000 / 32);
+    }
+
+    @Test
+    public void waitsForTheAveragesOfASummaryInProgress() throws IOException {
+        SummaryData data = decode(Decoders.SUMMARY_DATA, "{'status': 'not_ready'}");
+        assertFalse(data.isReady());
+        assertFalse(data.hasMetrics);
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void refusesAReadySummaryWithoutItsAverages() throws IOException {
+        decode(Decoders.SUMMARY_DATA, "{'status': 'ready', 'avg_response_time': 200}");
+    }
+
+    @Test
+    public void readsTheTests() throws IOException {
+        List<TestIndex.Entry> tests = decode(Decoders.TESTS,
+                "[{'test_id': 'abc', 'name': 'home', 'domain': 'example.com', 'urls': [{'url': '/'}]},"
+                + " {'name': 'no id'}, {'test_id': 'def', 'name': {'en': 'cart'}}]");
+        assertEquals(2, tests.size());
+        assertEquals("abc", tests.get(0).id);
+        assertEquals("home", tests.get(0).name);
+        assertEquals("example.com", tests.get(0).domain);
+        assertEquals("def", tests.get(1).id);
+        assertNull(tests.get(1).name);
+    }
+
+    @Test
+    public void readsTheErrors() throws IOException {
+        assertEquals(Arrays.asList("wrong api key(xxx)", "slow down"), decode(Decoders.ERRORS,
+                "{'message': 'error', 'errors': ['wrong api key(xxx)', 'slow down'], 'code': {'id': 401}}"));
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void refusesAnErrorBodyWithoutErrors() throws IOException {
+        decode(Decoders.ERRORS, "{'message': 'error'}");
+    }
+}
@@ -0,0 +1,112 @@
+package io.loader.jenkins.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void countsSmallValuesExactly() {
+        for (int value = 0; value < LatencyHistogram.SUB_BUCKETS * 2; value++) {
+            int index = LatencyHistogram.indexOf(value);
+            assertEquals(value, index);
+            assertEquals(value, LatencyHistogram.lowestValueAt(index));
+            assertEquals(value, LatencyHistogram.highestValueAt(index));
+        }
+    }
+
+    @Test
+    public void bucketsCoverEveryValueOnce() {
+        long expected = 0;
+        for (int index = 0; index < LatencyHistogram.BUCKETS; index++) {
+            long lowest = LatencyHistogram.lowestValueAt(index);
+            long highest = LatencyHistogram.highestValueAt(index);
+            assertEquals("bucket " + index, expected, lowest);
+            assertEquals(index, LatencyHistogram.indexOf(lowest));
+            assertEquals(index, LatencyHistogram.indexOf(highest));
+            // within 1/32 of the magnitude
+            assertTrue(highest - lowest <= Math.max(0, lowest / LatencyHistogram.SUB_BUCKETS));
+            expected = highest + 1;
+        }
+        assertEquals((long) Integer.MAX_VALUE + 1, expected);
+    }
+
+    @Test
+    public void readsPercentilesWithinTheBucketWidth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(10000, histogram.getTotalCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000, histogram.getValueAtPercentile(50), 5000 / 32);
+        assertEquals(9900, histogram.getValueAtPercentile(99), 9900 / 32);
+        assertEquals(10000, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void clampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(7, 0);
+        assertEquals(2, histogram.getTotalCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(Integer.MAX_VALUE, histogram.getMax());
+        assertEquals(-1, new LatencyHistogram().getValueAtPercentile(50));
+    }
+
+    @Test
+    public void subtractsWhatWasAdded() {
+        LatencyHistogram early = new LatencyHistogram();
+        early.record(10, 100);
+        LatencyHistogram total = new LatencyHistogram();
+        total.add(early);
+        total.record(200, 50);
+        total.subtract(early);
+        assertEquals(50, total.getTotalCount());
+        assertEquals(50, total.getCountAtOrBelow(200));
+        assertEquals(0, total.getCountAtOrBelow(100));
+        assertEquals(200, total.getMin(), 200 / 32);
+        assertEquals(200, total.getMax());
+        total.subtract(total);
+        assertTrue(total.isEmpty());
+        assertEquals(-1, total.getMin());
+    }
+
+    @Test
+    public void measuresHowMuchSlowerAnotherDistributionIs() {
+        LatencyHistogram fast = new LatencyHistogram();
+        fast.record(100, 1000);
+        LatencyHistogram slow = new LatencyHistogram();
+        slow.record(100, 600);
+        slow.record(300, 400);
+        assertEquals(0.4, fast.maxCumulativeLead(slow), 1e-9);
+        assertEquals(0, slow.maxCumulativeLead(fast), 1e-9);
+        assertEquals(0, fast.maxCumulativeLead(fast), 1e-9);
+        assertEquals(0, fast.maxCumulativeLead(new LatencyHistogram()), 1e-9);
+    }
+
+    @Test
+    public void readsBackWhatItWrote() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3, 4);
+        histogram.record(1500, 2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        histogram.writeTo(new DataOutputStream(bytes));
+        LatencyHistogram read = LatencyHistogram.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+        assertEquals(6, read.getTotalCount());
+        assertEquals(3, read.getMin());
+        assertEquals(1500, read.getMax());
+        assertEquals(4, read.getCountAtOrBelow(3));
+        assertEquals(0, read.maxCumulativeLead(histogram), 1e-9);
+    }
+}
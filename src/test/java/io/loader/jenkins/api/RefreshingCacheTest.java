@@ -0,0 +1,85 @@
+package io.loader.jenkins.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class RefreshingCacheTest {
+
+    @Test(timeout = 10000)
+    public void loadsAMissedKeyOnceForEveryCaller() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final RefreshingCache<String, String> cache = new RefreshingCache<String, String>(
+                new RefreshingCache.Loader<String, String>() {
+                    public String load(String key) {
+                        loads.incrementAndGet();
+                        try {
+                            release.await();
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return key + "-value";
+                    }
+                }, 60000, 10);
+        final List<String> values = new ArrayList<String>();
+        List<Thread> callers = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread caller = new Thread(new Runnable() {
+                public void run() {
+                    String value = cache.get("abc");
+                    synchronized (values) {
+                        values.add(value);
+                    }
+                }
+            });
+            caller.start();
+            callers.add(caller);
+        }
+        while (loads.get() == 0) {
+            Thread.sleep(10);
+        }
+        // give the others time to miss the key too
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(8, values.size());
+        for (String value : values) {
+            assertEquals("abc-value", value);
+        }
+        assertEquals(8, cache.getMisses());
+    }
+
+    @Test(timeout = 10000)
+    public void letsEveryCallerSeeAFailedLoad() {
+        final AtomicInteger loads = new AtomicInteger();
+        RefreshingCache<String, String> cache = new RefreshingCache<String, String>(
+                new RefreshingCache.Loader<String, String>() {
+                    public String load(String key) {
+                        if (loads.incrementAndGet() == 1) {
+                            throw new IllegalStateException("unreachable");
+                        }
+                        return null;
+                    }
+                }, 60000, 10);
+        try {
+            cache.get(null);
+            fail("the load failed");
+        } catch (IllegalStateException expected) {
+            assertEquals("unreachable", expected.getMessage());
+        }
+        // nothing is kept from a failed load
+        assertEquals(null, cache.get(null));
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,91 @@
+package io.loader.jenkins.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatusPollerTest {
+
+    private ApiSimulator simulator;
+    private StatusPoller poller;
+    private String testId;
+
+    @Before
+    public void startTest() throws Exception {
+        ApiSimulator.Script script = new ApiSimulator.Script();
+        script.latencyMillis = 0;
+        script.latencyJitterMillis = 0;
+        script.pendingMillis = 0;
+        script.testDurationSeconds = 60;
+        simulator = new ApiSimulator(script);
+        simulator.start(0);
+        poller = new StatusPoller();
+        testId = simulator.getTestId(0);
+        assertTrue(live().runTest(testId) != null);
+    }
+
+    @After
+    public void stopSimulator() {
+        simulator.stop();
+    }
+
+    private LoaderAPI live() {
+        return new LoaderAPI("poller-key", simulator.getBaseUri());
+    }
+
+    // the test as recorded once it was over
+    private LoaderAPI replayingTheEnd() throws Exception {
+        ApiReplay.Exchange exchange = new ApiReplay.Exchange();
+        exchange.method = "GET";
+        exchange.path = "tests/" + testId;
+        exchange.code = 200;
+        exchange.retryAfter = "";
+        exchange.content = ("{\"test_id\":\"" + testId + "\",\"status\":\"complete\",\"duration\":60}").getBytes("UTF-8");
+        List<ApiReplay.Exchange> exchanges = new ArrayList<ApiReplay.Exchange>();
+        exchanges.add(exchange);
+        LoaderAPI api = live();
+        api.replayFrom(new ApiReplay(exchanges, 0));
+        return api;
+    }
+
+    @Test(timeout = 10000)
+    public void aReplayedEndDoesNotEndALiveWatch() throws Exception {
+        StatusPoller.Watch replayed = poller.watch(replayingTheEnd(), testId, PollingStrategy.fixed(100));
+        StatusPoller.Watch watched = poller.watch(live(), testId, PollingStrategy.fixed(100));
+        assertEquals("complete", replayed.get().status);
+        Thread.sleep(300);
+        assertFalse(watched.isDone());
+        assertEquals("running", watched.getLastStatus().status);
+        watched.cancel(false);
+    }
+
+    @Test(timeout = 10000)
+    public void aRecordingBuildPollsItself() throws Exception {
+        StatusPoller.Watch watched = poller.watch(live(), testId, PollingStrategy.fixed(100));
+        File file = File.createTempFile("api-calls", ".rec");
+        ApiRecorder recorder = ApiRecorder.create(file);
+        try {
+            LoaderAPI recording = live();
+            recording.recordTo(recorder);
+            StatusPoller.Watch recorded = poller.watch(recording, testId, PollingStrategy.fixed(100));
+            assertEquals(2, poller.getActiveTests());
+            while (recorder.getExchanges() == 0) {
+                Thread.sleep(50);
+            }
+            recorded.cancel(false);
+            watched.cancel(false);
+        } finally {
+            recorder.close();
+        }
+        assertEquals("tests/" + testId, ApiReplay.read(file).get(0).getPath());
+        file.delete();
+    }
+}
@@ -0,0 +1,102 @@
+package io.loader.jenkins.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class SummaryDataTest {
+
+    private static SummaryData part(int avgResponseTime, long success, long errors) {
+        SummaryData data = new SummaryData();
+        data.avgResponseTime = avgResponseTime;
+        data.avgErrorRate = success + errors > 0 ? errors * 100.0 / (success + errors) : 0;
+        data.successCount = success;
+        data.errorCount = errors;
+        return data;
+    }
+
+    @Test
+    public void keepsASinglePart() {
+        SummaryData only = part(100, 10, 0);
+        assertSame(only, SummaryData.merge(Arrays.asList(only)));
+    }
+
+    @Test
+    public void weightsAveragesByRequests() {
+        SummaryData small = part(100, 90, 10);
+        SummaryData large = part(200, 300, 0);
+        small.requestsPerSecond = 10;
+        large.requestsPerSecond = 30;
+        SummaryData merged = SummaryData.merge(Arrays.asList(small, large));
+        assertEquals(175, merged.avgResponseTime);
+        assertEquals(2.5, merged.avgErrorRate, 1e-9);
+        assertEquals(390, merged.successCount);
+        assertEquals(10, merged.errorCount);
+        assertEquals(40, merged.requestsPerSecond, 1e-9);
+        // not reported by every part
+        assertEquals(-1, merged.timeouts);
+        assertEquals(-1, merged.minResponseTime);
+    }
+
+    @Test
+    public void fallsBackToEqualWeights() {
+        SummaryData a = part(100, -1, -1);
+        SummaryData b = part(300, -1, -1);
+        a.avgErrorRate = 1;
+        b.avgErrorRate = 3;
+        SummaryData merged = SummaryData.merge(Arrays.asList(a, b));
+        assertEquals(200, merged.avgResponseTime);
+        assertEquals(2, merged.avgErrorRate, 1e-9);
+        assertEquals(-1, merged.requestsPerSecond, 1e-9);
+    }
+
+    @Test
+    public void readsPercentilesFromTheCombinedDistribution() {
+        SummaryData fast = part(10, 900, 0);
+        fast.histogram = new LatencyHistogram();
+        fast.histogram.record(10, 900);
+        fast.fillFromHistogram();
+        SummaryData slow = part(1000, 100, 0);
+        slow.histogram = new LatencyHistogram();
+        slow.histogram.record(1000, 100);
+        slow.fillFromHistogram();
+        SummaryData merged = SummaryData.merge(Arrays.asList(fast, slow));
+        assertEquals(1000, merged.histogram.getTotalCount());
+        assertEquals(10, merged.p50ResponseTime);
+        assertEquals(10, merged.p90ResponseTime);
+        assertEquals(1000, merged.p95ResponseTime, 1000 / 32);
+        assertEquals(10, merged.minResponseTime);
+        assertEquals(1000, merged.maxResponseTime);
+    }
+
+    @Test
+    public void keepsTheHighestPercentileWithoutDistributions() {
+        SummaryData a = part(100, 10, 0);
+        a.p90ResponseTime = 150;
+        a.p99ResponseTime = 400;
+        SummaryData b = part(100, 10, 0);
+        b.p90ResponseTime = 180;
+        b.p99ResponseTime = 300;
+        SummaryData merged = SummaryData.merge(Arrays.asList(a, b));
+        assertNull(merged.histogram);
+        assertEquals(180, merged.p90ResponseTime);
+        assertEquals(400, merged.p99ResponseTime);
+        assertEquals(-1, merged.p50ResponseTime);
+    }
+
+    @Test
+    public void isNotReadyUntilEveryPartIs() {
+        SummaryData ready = part(100, 10, 0);
+        SummaryData pending = part(100, 10, 0);
+        pending.status = "pending";
+        pending.hasMetrics = false;
+        SummaryData merged = SummaryData.merge(Arrays.asList(ready, pending));
+        assertFalse(merged.isReady());
+        assertFalse(merged.hasMetrics);
+    }
+}
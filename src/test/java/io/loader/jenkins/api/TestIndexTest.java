@@ -0,0 +1,48 @@
+package io.loader.jenkins.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestIndexTest {
+
+    @Test
+    public void readsTheIdOfATitle() {
+        assertEquals("9b0e4b7d2e3c", TestIndex.idOf("  checkout (shop.example.com) (9b0e4b7d2e3c) "));
+        assertEquals("9b0e4b7d2e3c", TestIndex.idOf("9b0e4b7d2e3c"));
+    }
+
+    @Test
+    public void acceptsLettersAndDigitsOnly() {
+        assertTrue(TestIndex.isValidId("9b0e4b7d2e3cAZ"));
+        assertFalse(TestIndex.isValidId(""));
+        assertFalse(TestIndex.isValidId(null));
+        assertFalse(TestIndex.isValidId("../../secrets/x"));
+        assertFalse(TestIndex.isValidId("a.b"));
+        assertFalse(TestIndex.isValidId("a\\b"));
+        assertFalse(TestIndex.isValidId("caf\u00e9"));
+    }
+
+    @Test
+    public void leavesAnEmptyValueToTheBuild() {
+        assertEquals("", TestIndex.checkedIdOf(" "));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesAPath() {
+        TestIndex.checkedIdOf("../../../secrets/x");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesAPathForAFileName() {
+        assertEquals("abc123", TestIndex.checkedId("abc123"));
+        TestIndex.checkedId("abc/../../x");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesAPathInATitle() {
+        TestIndex.checkedIdOf("innocent (example.com) (..%2F..)");
+    }
+}
@@ -0,0 +1,61 @@
+package io.loader.jenkins.api;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    // runs on a clock moved by the test, from 0
+    private static class Clocked extends TokenBucket {
+        long time;
+
+        Clocked(double permitsPerSecond, int burst) {
+            super(permitsPerSecond, burst);
+        }
+
+        long now() {
+            return time;
+        }
+    }
+
+    @Test
+    public void handsOutTheBurstAtOnce() {
+        TokenBucket bucket = new Clocked(1, 3);
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(1000, bucket.tryAcquire());
+    }
+
+    @Test
+    public void refillsAtItsRate() {
+        Clocked bucket = new Clocked(100, 1);
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(10, bucket.tryAcquire());
+        bucket.time += 4;
+        assertEquals(6, bucket.tryAcquire());
+        bucket.time += 6;
+        assertEquals(0, bucket.tryAcquire());
+        // no more than the burst builds up
+        bucket.time += 1000;
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(10, bucket.tryAcquire());
+    }
+
+    @Test
+    public void holdsEverythingBackWhileBlocked() {
+        Clocked bucket = new Clocked(1000, 10);
+        bucket.time = 1000;
+        bucket.blockUntil(6000);
+        // an earlier time doesn't shorten it
+        bucket.blockUntil(2000);
+        assertEquals(6000, bucket.getBlockedUntil());
+        assertEquals(5000, bucket.tryAcquire());
+        bucket.time = 6000;
+        // and it starts again empty
+        assertEquals(1, bucket.tryAcquire());
+        bucket.time = 6001;
+        assertEquals(0, bucket.tryAcquire());
+    }
+}